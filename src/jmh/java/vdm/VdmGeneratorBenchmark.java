@@ -0,0 +1,84 @@
+package vdm;
+
+import lwrt.SettingsManager;
+import org.openjdk.jmh.annotations.*;
+import vdm.Tick.ExecRecord;
+import vdm.Tick.Record;
+import vdm.Tick.Tick;
+import vdm.Tick.TickFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Time to generate the VDM and CFG files of 1k and 10k segments, spread over demos of 100 segments each, where every
+ * other segment is an exec_record using one of a few templates. Run with <code>gradlew jmh</code>.
+ * <p>
+ * The benchmark only uses the constructor and <code>generate()</code>, so the numbers from before the template cache
+ * can be taken by running it on the parent of that commit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VdmGeneratorBenchmark {
+
+    private static final int TICKS_PER_DEMO = 100;
+    private static final String[] TEMPLATES = {
+        "mirv_camimport start \"{{BVH_PATH}}\"{{NEW_LINE}}echo {{DEMO_NAME}}",
+        "exec spec_player",
+        "echo {{TF_PATH}}"
+    };
+
+    @Param({"1000", "10000"})
+    public int ticks;
+
+    private Path root;
+    private List<Tick> ticklist;
+    private SettingsManager settings;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        root = Files.createTempDirectory("vdmbench");
+        Path tf = root.resolve("tf");
+        Files.createDirectories(tf);
+        settings = new SettingsManager(root.resolve("settings.lwf").toString());
+        settings.setTfPath(tf);
+        settings.setMoviePath(root.resolve("movies"));
+        ticklist = new ArrayList<>();
+        for (int i = 0; i < ticks; i++) {
+            String name = "demo" + i / TICKS_PER_DEMO + ".dem";
+            File demo = tf.resolve(name).toFile();
+            int start = 1000 + i % TICKS_PER_DEMO * 2000;
+            if (i % 2 == 0) {
+                ticklist.add(TickFactory.makeTick(demo, name, start, start + 500, Record.Segment));
+            } else {
+                ticklist.add(TickFactory.makeTick(demo, name, start, start + 500, ExecRecord.Segment,
+                    TEMPLATES[i / 2 % TEMPLATES.length]));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Path> generate() throws IOException {
+        return new VDMGenerator(ticklist, settings).generate();
+    }
+}
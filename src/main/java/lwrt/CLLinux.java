@@ -2,9 +2,11 @@ package lwrt;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.logging.Level;
 
 public class CLLinux extends CommandLine {
@@ -92,15 +94,43 @@ public class CLLinux extends CommandLine {
 
     @Override
     public boolean isRunningTF2() {
-        boolean found = false;
-        try {
-            ProcessBuilder pb = new ProcessBuilder("pgrep", "hl2_linux");
-            Process pr = pb.start();
-            found = processOutputHasLine(pr);
+        long pid = findTF2Pid();
+        if (pid >= 0) {
+            return pid > 0;
+        }
+        return commandHasOutput("pgrep", "hl2_linux");
+    }
+
+    /**
+     * Search the game process in <code>/proc</code>, matching the executable name like <code>pgrep</code> does.
+     */
+    @Override
+    protected long findTF2Pid() {
+        Path proc = Paths.get("/proc");
+        if (!Files.isDirectory(proc.resolve("self"))) {
+            return -1;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(proc, "[0-9]*")) {
+            for (Path dir : stream) {
+                try {
+                    List<String> comm = Files.readAllLines(dir.resolve("comm"));
+                    if (!comm.isEmpty() && comm.get(0).equals("hl2_linux")) {
+                        return Long.parseLong(dir.getFileName().toString());
+                    }
+                } catch (IOException | NumberFormatException e) {
+                    // the process exited while reading it, or is not a process
+                }
+            }
+            return 0;
         } catch (IOException e) {
-            log.log(Level.INFO, "", e);
+            log.log(Level.FINE, "Could not read process list", e);
+            return -1;
         }
-        return found;
+    }
+
+    @Override
+    protected boolean isProcessAlive(long pid) {
+        return Files.exists(Paths.get("/proc", Long.toString(pid)));
     }
 
     @Override
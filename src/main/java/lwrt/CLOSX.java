@@ -92,15 +92,7 @@ public class CLOSX extends CommandLine {
 
     @Override
     public boolean isRunningTF2() {
-        boolean found = false;
-        try {
-            ProcessBuilder pb = new ProcessBuilder("pgrep", "hl2_osx");
-            Process pr = pb.start();
-            found = processOutputHasLine(pr);
-        } catch (IOException e) {
-            log.log(Level.INFO, "", e);
-        }
-        return found;
+        return commandHasOutput("pgrep", "hl2_osx");
     }
 
     @Override
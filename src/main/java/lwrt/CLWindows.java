@@ -1,11 +1,16 @@
 package lwrt;
 
-import java.io.BufferedReader;
+import util.ProcessRunner;
+
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 
 public class CLWindows extends CommandLine {
@@ -94,9 +99,13 @@ public class CLWindows extends CommandLine {
         regedit("HKEY_CURRENT_USER\\Software\\Valve\\Source\\tf\\Settings", "DXLevel_V1", dxlevel);
     }
 
+    @Override
+    protected boolean isGameProcess(String mode) {
+        return mode.equals("hl2");
+    }
+
     @Override
     public boolean isRunningTF2() {
-        String line;
         ProcessBuilder[] builders =
             {
                 new ProcessBuilder("tasklist", "/fi", "\"imagename eq " + hl2 + "\"", "/nh", "/fo",
@@ -104,18 +113,19 @@ public class CLWindows extends CommandLine {
                 new ProcessBuilder("cscript", "//NoLogo", new File("batch\\procchk.vbs").getPath(), hl2)};
         for (ProcessBuilder pb : builders) {
             try {
-                Process p = pb.start();
-                try (BufferedReader input = newProcessReader(p)) {
-                    while ((line = input.readLine()) != null) {
-                        log.finest("[" + pb.command().get(0) + "] " + line);
-                        if (line.contains(hl2)) {
-                            log.finer("TF2 process detected by " + pb.command().get(0));
-                            return true;
-                        }
+                ProcessRunner.Result result = new ProcessRunner(pb).timeout(COMMAND_TIMEOUT_MILLIS).run();
+                for (String line : result.getOutput()) {
+                    log.finest("[" + pb.command().get(0) + "] " + line);
+                    if (line.contains(hl2)) {
+                        log.finer("TF2 process detected by " + pb.command().get(0));
+                        return true;
                     }
                 }
             } catch (IOException e) {
                 log.log(Level.INFO, "Problem while finding if TF2 is running", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
             }
         }
         log.finer("TF2 process not detected");
@@ -124,9 +134,7 @@ public class CLWindows extends CommandLine {
 
     private void regedit(String key, String value, String content) {
         try {
-            ProcessBuilder pb = new ProcessBuilder("batch\\rg.bat", key, value, content);
-            Process pr = pb.start();
-            pr.waitFor();
+            new ProcessRunner("batch\\rg.bat", key, value, content).timeout(COMMAND_TIMEOUT_MILLIS).run();
         } catch (InterruptedException | IOException e) {
             log.log(Level.INFO, "", e);
         }
@@ -135,15 +143,10 @@ public class CLWindows extends CommandLine {
     private String regQuery(String key, String value) {
         StringBuilder result = new StringBuilder();
         try {
-            ProcessBuilder pb = new ProcessBuilder("reg", "query", key, "/v", value);
-            Process pr = pb.start();
-            try (BufferedReader input = newProcessReader(pr)) {
-                String line;
-                while ((line = input.readLine()) != null) {
-                    result.append(line).append('\n');
-                }
+            for (String line : new ProcessRunner("reg", "query", key, "/v", value).timeout(COMMAND_TIMEOUT_MILLIS)
+                .run().getOutput()) {
+                result.append(line).append('\n');
             }
-            pr.waitFor();
         } catch (InterruptedException | IOException e) {
             log.log(Level.INFO, "", e);
         }
@@ -180,49 +183,35 @@ public class CLWindows extends CommandLine {
         }
     }
 
-    private void closeHandle(String pid, String handle) {
-        try {
-            ProcessBuilder pb = new ProcessBuilder("batch\\handle.exe", "-c", handle, "-p", pid, "-y");
-            Process pr = pb.start();
-            try (BufferedReader input = newProcessReader(pr)) {
-                String line;
-                int count = 0;
-                while ((line = input.readLine()) != null) {
-                    if (count > 7) {
-                        log.info("[handle] " + line);
-                    }
-                    count++;
-                }
-            }
-            pr.waitFor();
-        } catch (InterruptedException | IOException e) {
-            log.log(Level.INFO, "", e);
-        }
+    private Future<ProcessRunner.Result> closeHandle(String pid, String handle) {
+        return new ProcessRunner("batch\\handle.exe", "-c", handle, "-p", pid, "-y")
+            .timeout(COMMAND_TIMEOUT_MILLIS).start();
     }
 
     @Override
     public void closeHandles(Path path) {
         try {
-            ProcessBuilder pb = new ProcessBuilder("batch\\handle.exe", path.toString());
-            Process pr = pb.start();
-            try (BufferedReader input = newProcessReader(pr)) {
-                String line;
-                int count = 0;
-                while ((line = input.readLine()) != null) {
-                    if (count > 4) {
-                        String[] columns = line.split("[ ]+type: [A-Za-z]+[ ]+|: |[ ]+pid: ");
-                        if (columns.length == 4) {
-                            log.info("[handle] Closing handle " + columns[3] + " opened by " + columns[0]);
-                            closeHandle(columns[1], columns[2]);
-                        } else {
-                            log.info("[handle] " + line);
-                        }
-                    }
-                    count++;
+            List<String> lines = new ProcessRunner("batch\\handle.exe", path.toString())
+                .timeout(COMMAND_TIMEOUT_MILLIS).run().getOutput();
+            // handles are closed concurrently since each one needs its own process
+            List<Future<ProcessRunner.Result>> closing = new ArrayList<>();
+            for (int i = 5; i < lines.size(); i++) {
+                String line = lines.get(i);
+                String[] columns = line.split("[ ]+type: [A-Za-z]+[ ]+|: |[ ]+pid: ");
+                if (columns.length == 4) {
+                    log.info("[handle] Closing handle " + columns[3] + " opened by " + columns[0]);
+                    closing.add(closeHandle(columns[1], columns[2]));
+                } else {
+                    log.info("[handle] " + line);
                 }
             }
-            pr.waitFor();
-        } catch (InterruptedException | IOException e) {
+            for (Future<ProcessRunner.Result> future : closing) {
+                List<String> output = future.get().getOutput();
+                for (int i = 8; i < output.size(); i++) {
+                    log.info("[handle] " + output.get(i));
+                }
+            }
+        } catch (InterruptedException | IOException | ExecutionException e) {
             log.log(Level.INFO, "", e);
         }
     }
@@ -230,15 +219,8 @@ public class CLWindows extends CommandLine {
     @Override
     public void delete(Path path) {
         try {
-            ProcessBuilder pb = new ProcessBuilder("del", "/f", "/s", "/q", "/a", path.toString());
-            Process pr = pb.start();
-            try (BufferedReader input = newProcessReader(pr)) {
-                String line;
-                while ((line = input.readLine()) != null) {
-                    log.info("[delete] " + line);
-                }
-            }
-            pr.waitFor();
+            new ProcessRunner("del", "/f", "/s", "/q", "/a", path.toString()).timeout(COMMAND_TIMEOUT_MILLIS)
+                .onOutput(line -> log.info("[delete] " + line)).run();
         } catch (InterruptedException | IOException e) {
             log.log(Level.INFO, "", e);
         }
@@ -249,8 +231,7 @@ public class CLWindows extends CommandLine {
         try {
             ProcessBuilder pb = new ProcessBuilder("batch\\FontReg.exe", "/copy");
             pb.directory(path.toAbsolutePath().toFile());
-            Process pr = pb.start();
-            int code = pr.waitFor();
+            int code = new ProcessRunner(pb).timeout(TOOL_TIMEOUT_MILLIS).run().getExitCode();
             if (code != 0) {
                 log.warning("[FontReg] Process at " + pb.directory() + " returned with exit code: " + code);
             } else {
@@ -1,20 +1,21 @@
 package lwrt;
 
 import lwrt.SettingsManager.Key;
+import util.ProcessRunner;
+import util.VpkArchive;
 
 import javax.swing.*;
 import java.awt.*;
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
 import java.nio.file.attribute.PosixFilePermission;
 import java.util.*;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -45,6 +46,35 @@ public abstract class CommandLine {
         ALL_PERMISSIONS.add(PosixFilePermission.OTHERS_EXECUTE);
     }
 
+    /**
+     * Maximum time given to short commands like process queries, kills and registry edits.
+     */
+    static final long COMMAND_TIMEOUT_MILLIS = 30000;
+    /**
+     * Maximum time given to tools processing game files, like VTFCmd and the VPK tool.
+     */
+    static final long TOOL_TIMEOUT_MILLIS = 120000;
+
+    /**
+     * How often the game process is checked when it can be done without running other processes.
+     */
+    private static final long FAST_POLL_MILLIS = 250;
+    /**
+     * How often the game process is checked when it requires running a helper process like <code>tasklist</code>.
+     */
+    private static final long SLOW_POLL_MILLIS = 5000;
+    /**
+     * Where the output of the game or HLAE goes, replaced on each launch. They are not waited for, so their output
+     * can't be read by a {@link ProcessRunner}, and a pipe nobody reads could block them once full.
+     */
+    private static final File GAME_OUTPUT = new File("game-output.log");
+
+    /**
+     * The last process started by {@link #startTf(SettingsManager)} if it's the game itself, so its exit can be
+     * awaited directly.
+     */
+    private volatile Process gameProcess;
+
     /**
      * Returns the necessary {@link ProcessBuilder} to launch TF2. It will be used when {@link
      * #startTf(SettingsManager)} is called.
@@ -113,83 +143,143 @@ public abstract class CommandLine {
     public abstract boolean isRunningTF2();
 
     /**
-     * Returns the {@link Path} where the VPK included with TF2 is located. This will be used to extract skyboxes for
-     * preview generation and loading, and could be used for other features like packing, extracting, listing, etc.
+     * Finds the id of the TF2 process without running any helper process, for example by reading the process table
+     * from the filesystem. Systems that can't do this should return <code>-1</code> so the slower {@link
+     * #isRunningTF2()} is used instead.
      *
-     * @param tfpath the path where the HL2 executable for TF2 is located
-     * @return The <code>Path</code> to the VPK tool resolved from the tfpath.
+     * @return the process id of TF2, <code>0</code> if it's not running or <code>-1</code> if it can't be found
+     * this way
      */
-    protected abstract Path resolveVpkToolPath(Path tfpath);
+    protected long findTF2Pid() {
+        return -1;
+    }
 
     /**
-     * Closes all open handles matching this path. This is useful to unlock files that some process can hold preventing
-     * the restore/replace file mechanism to work correctly.
+     * Checks if a process found by {@link #findTF2Pid()} is still running, without running any helper process.
      *
-     * @param path the directory where handles are being closed
+     * @param pid the process id
+     * @return <code>true</code> if the process still exists
      */
-    public abstract void closeHandles(Path path);
+    protected boolean isProcessAlive(long pid) {
+        return findTF2Pid() == pid;
+    }
 
     /**
-     * Deletes a file using OS-level commands.
+     * Returns whether the process started for a launch mode is the game itself, instead of a launcher that starts the
+     * game and exits, like Steam or HLAE.
      *
-     * @param path the path to delete
+     * @param mode the launch mode
+     * @return <code>true</code> if the game process can be awaited directly
      */
-    public abstract void delete(Path path);
+    protected boolean isGameProcess(String mode) {
+        return false;
+    }
 
     /**
-     * Extracts VPK-packed files to a specified path only if they not exist in the destination path.
+     * Wait until TF2 is running. The game process launched by this tool is checked first, then the process table is
+     * searched if the system allows it, and only if none of them is available the slower {@link #isRunningTF2()} is
+     * polled.
      *
-     * @param tfpath  The {@link Path} where HL2 main executable for TF2 is located
-     * @param vpkname The name of the VPK file to possibly extract the files
-     * @param dest    The <code>Path</code> where the files will be extracted to
-     * @param files   The filenames included in the VPK that might be extracted
-     * @throws IOException If an error occurred while creating the destination folder
-     * @deprecated VPK utility might crash so this method is not completely reliable.
+     * @param timeoutMillis the maximum time to wait in milliseconds, or <code>0</code> to wait forever
+     * @param progress      receives the percentage of the timeout that has passed, can be <code>null</code>
+     * @return <code>true</code> if TF2 is running or <code>false</code> if the timeout expired
+     * @throws InterruptedException if the thread was interrupted while waiting
      */
-    @Deprecated
-    public void extractIfNeeded(Path tfpath, String vpkname, Path dest, Iterable<String> files)
-        throws IOException {
-        List<String> fileList = new ArrayList<>();
-        for (String file : files) {
-            if (!Files.exists(dest.resolve(file))) {
-                if (Files.exists(Paths.get(vpkname))) {
-                    if (!Files.exists(dest) || !Files.isDirectory(dest)) {
-                        Files.createDirectory(dest);
-                    }
-                    fileList.add(file);
-                } else {
-                    log.info("Required file was not found: " + file);
+    public boolean waitForTF2Start(long timeoutMillis, IntConsumer progress) throws InterruptedException {
+        long start = System.nanoTime();
+        while (true) {
+            Process game = gameProcess;
+            long pid;
+            if (game != null && game.isAlive()) {
+                log.finer("TF2 process detected as launched process");
+                return true;
+            } else if ((pid = findTF2Pid()) > 0) {
+                log.finer("TF2 process detected with pid " + pid);
+                return true;
+            } else if (pid < 0 && isRunningTF2()) {
+                return true;
+            }
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (timeoutMillis > 0) {
+                if (elapsed >= timeoutMillis) {
+                    return false;
+                }
+                if (progress != null) {
+                    progress.accept((int) (100 * elapsed / timeoutMillis));
                 }
             }
-        }
-        if (!fileList.isEmpty()) {
-            extractVpkFile(tfpath, vpkname, dest, fileList);
+            Thread.sleep(pid < 0 ? SLOW_POLL_MILLIS : FAST_POLL_MILLIS);
         }
     }
 
-    private void extractVpkFile(Path tfpath, String vpkname, Path dest, List<String> files) {
-        List<String> cmds = new ArrayList<>();
-        try {
-            Path vpktool = resolveVpkToolPath(tfpath);
-            cmds.add(vpktool.toString());
-            cmds.add("x");
-            cmds.add(Paths.get(vpkname).toAbsolutePath().toString());
-            cmds.addAll(files);
-            ProcessBuilder pb = new ProcessBuilder(cmds);
-            pb.directory(dest.toFile());
-            Process pr = pb.start();
-            try (BufferedReader input = newProcessReader(pr)) {
-                String line;
-                while ((line = input.readLine()) != null) {
-                    log.fine("[vpk] " + line);
+    /**
+     * Wait until TF2 is no longer running. If the game was launched directly its exit is awaited without polling,
+     * otherwise the process found in the process table is watched, and only if that is not possible {@link
+     * #isRunningTF2()} is polled.
+     *
+     * @param timeoutMillis the maximum time to wait in milliseconds, or <code>0</code> to wait forever
+     * @return <code>true</code> if TF2 is not running or <code>false</code> if the timeout expired
+     * @throws InterruptedException if the thread was interrupted while waiting
+     */
+    public boolean waitForTF2Exit(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Process game = gameProcess;
+        if (game != null) {
+            if (timeoutMillis > 0) {
+                if (!game.waitFor(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                    return false;
                 }
+            } else {
+                game.waitFor();
             }
-            pr.waitFor();
-        } catch (InterruptedException | IOException e) {
-            log.info("Problem extracting contents from VPK file: " + vpkname);
+            gameProcess = null;
+            log.finer("Launched TF2 process exited with code " + game.exitValue());
         }
+        // the game could have been restarted by Steam, check again the slower ways
+        long pid = findTF2Pid();
+        while (pid != 0) {
+            if (timeoutMillis > 0 && System.nanoTime() >= deadline) {
+                return false;
+            }
+            if (pid > 0) {
+                Thread.sleep(FAST_POLL_MILLIS);
+                if (!isProcessAlive(pid)) {
+                    log.finer("TF2 process with pid " + pid + " exited");
+                    pid = findTF2Pid();
+                }
+            } else if (isRunningTF2()) {
+                Thread.sleep(SLOW_POLL_MILLIS);
+            } else {
+                pid = 0;
+            }
+        }
+        return true;
     }
 
+    /**
+     * Returns the {@link Path} where the VPK included with TF2 is located. This will be used to extract skyboxes for
+     * preview generation and loading, and could be used for other features like packing, extracting, listing, etc.
+     *
+     * @param tfpath the path where the HL2 executable for TF2 is located
+     * @return The <code>Path</code> to the VPK tool resolved from the tfpath.
+     */
+    protected abstract Path resolveVpkToolPath(Path tfpath);
+
+    /**
+     * Closes all open handles matching this path. This is useful to unlock files that some process can hold preventing
+     * the restore/replace file mechanism to work correctly.
+     *
+     * @param path the directory where handles are being closed
+     */
+    public abstract void closeHandles(Path path);
+
+    /**
+     * Deletes a file using OS-level commands.
+     *
+     * @param path the path to delete
+     */
+    public abstract void delete(Path path);
+
     /**
      * Generate an preview image representing a specified skybox.
      *
@@ -200,39 +290,42 @@ public abstract class CommandLine {
         try {
             ProcessBuilder pb = getBuilderVTFCmd(skyboxFilename);
             log.finer("generatePreview: " + pb.command());
-            Process pr = pb.start();
-            try (BufferedReader input = newProcessReader(pr)) {
-                String line;
-                while ((line = input.readLine()) != null) {
-                    log.finer("[vtfcmd] " + line);
-                }
-            }
-            pr.waitFor();
+            new ProcessRunner(pb).timeout(TOOL_TIMEOUT_MILLIS).onOutput(line -> log.finer("[vtfcmd] " + line)).run();
         } catch (InterruptedException | IOException e) {
             log.log(Level.INFO, "Problem while generating png from vtf file", e);
         }
     }
 
     /**
-     * List the files of a specified VPK file.
+     * List the files of a specified VPK file. The directory tree is read in-process and the VPK tool is only invoked
+     * if the file could not be parsed.
      *
      * @param tfpath  The {@link Path} where HL2 main executable for TF2 is located
      * @param vpkpath The <code>Path</code> where the VPK file to search is located
      * @return A {@link List} of <code>String</code>s of all the files inside the specified VPK file.
      */
     public List<String> getVpkContents(Path tfpath, Path vpkpath) {
+        try {
+            List<String> files = VpkArchive.open(vpkpath).getFileNames();
+            log.finer("[" + vpkpath.getFileName() + "] Contents read: " + files.size() + " file(s)");
+            return files;
+        } catch (IOException e) {
+            log.fine("Could not read VPK directory, falling back to VPK tool: " + e);
+        }
+        return listVpkContents(tfpath, vpkpath);
+    }
+
+    private List<String> listVpkContents(Path tfpath, Path vpkpath) {
         List<String> files = new ArrayList<>();
         try {
             Path vpktool = resolveVpkToolPath(tfpath);
-            ProcessBuilder pb = new ProcessBuilder(vpktool.toString(), "l", vpkpath.toString());
-            Process pr = pb.start();
-            try (BufferedReader input = newProcessReader(pr)) {
-                String line;
-                while ((line = input.readLine()) != null) {
-                    files.add(line);
-                }
+            ProcessRunner.Result result = new ProcessRunner(vpktool.toString(), "l", vpkpath.toString())
+                .timeout(TOOL_TIMEOUT_MILLIS).run();
+            if (result.isTimedOut()) {
+                log.info("VPK tool did not finish listing contents of VPK file: " + vpkpath);
+                return files;
             }
-            pr.waitFor();
+            files.addAll(result.getOutput());
             log.finer("[" + vpkpath.getFileName() + "] Contents scanned: " + files.size() + " file(s)");
         } catch (InterruptedException | IOException e) {
             log.info("Problem retrieving contents of VPK file: " + vpkpath);
@@ -247,15 +340,8 @@ public abstract class CommandLine {
      */
     public void killTF2Process() {
         try {
-            ProcessBuilder pb = getBuilderTF2ProcessKiller();
-            Process pr = pb.start();
-            try (BufferedReader input = newProcessReader(pr)) {
-                String line;
-                while ((line = input.readLine()) != null) {
-                    log.fine("[TF2 Process Killer] " + line);
-                }
-            }
-            pr.waitFor();
+            new ProcessRunner(getBuilderTF2ProcessKiller()).timeout(COMMAND_TIMEOUT_MILLIS)
+                .onOutput(line -> log.fine("[TF2 Process Killer] " + line)).run();
         } catch (InterruptedException | IOException e) {
             log.info("Problem stopping TF2 process");
         }
@@ -263,15 +349,8 @@ public abstract class CommandLine {
 
     public void killHLAEProcess() {
         try {
-            ProcessBuilder pb = getBuilderHLAEProcessKiller();
-            Process pr = pb.start();
-            try (BufferedReader input = newProcessReader(pr)) {
-                String line;
-                while ((line = input.readLine()) != null) {
-                    log.fine("[HLAE Process Killer] " + line);
-                }
-            }
-            pr.waitFor();
+            new ProcessRunner(getBuilderHLAEProcessKiller()).timeout(COMMAND_TIMEOUT_MILLIS)
+                .onOutput(line -> log.fine("[HLAE Process Killer] " + line)).run();
         } catch (InterruptedException | IOException e) {
             log.info("Problem stopping HLAE process");
         }
@@ -378,15 +457,15 @@ public abstract class CommandLine {
             log.info("Launching: " + pb.command().toString()
                 .replaceAll("[\\[\\],]", "")
                 .replaceAll("\\s\\s+", " "));
-            Process pr = pb.start();
             if (mode.equals("steam")) {
-                try (BufferedReader input = newProcessReader(pr)) {
-                    String line;
-                    while ((line = input.readLine()) != null) {
-                        log.finer("[steam] " + line);
-                    }
-                }
-                pr.waitFor();
+                gameProcess = null;
+                // no timeout, Steam could be starting up or updating before it hands the launch off
+                new ProcessRunner(pb).onOutput(line -> log.finer("[steam] " + line)).run();
+            } else {
+                pb.redirectErrorStream(true);
+                pb.redirectOutput(ProcessBuilder.Redirect.to(GAME_OUTPUT));
+                Process pr = pb.start();
+                gameProcess = isGameProcess(mode) ? pr : null;
             }
         } catch (InterruptedException | IOException e) {
             log.warning("Process was interrupted: " + e);
@@ -430,19 +509,19 @@ public abstract class CommandLine {
         }
     }
 
-    BufferedReader newProcessReader(Process p) {
-        return new BufferedReader(new InputStreamReader(p.getInputStream(), Charset.forName("UTF-8")));
-    }
-
-    boolean processOutputHasLine(Process p) {
-        try (BufferedReader input = newProcessReader(p)) {
-            String line;
-            line = input.readLine();
-            if (line != null) {
-                return true;
-            }
+    /**
+     * Run a short command and check if it printed anything, like <code>pgrep</code> does when it finds a process.
+     *
+     * @param command the command and its arguments
+     * @return <code>true</code> if the command wrote at least one line to its standard output
+     */
+    boolean commandHasOutput(String... command) {
+        try {
+            return !new ProcessRunner(command).timeout(COMMAND_TIMEOUT_MILLIS).run().getOutput().isEmpty();
         } catch (IOException e) {
-            log.log(Level.WARNING, "Could not read process output", e);
+            log.log(Level.WARNING, "Could not run " + command[0], e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
         }
         return false;
     }
@@ -0,0 +1,274 @@
+package lwrt;
+
+import lwrt.CustomPath.PathContents;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Persistent index of custom resource classifications, so unchanged VPKs and folders don't need to be listed again
+ * every time the custom paths are scanned. Each record is keyed by the canonical path of the resource along with its
+ * size and last modified time.
+ * <p>
+ * For folders the size is not meaningful and the modified time of the folder alone does not change when nested files
+ * do. Classification only depends on the names of the files under <code>cfg</code>, <code>scripts</code>,
+ * <code>resource/ui</code> and <code>materials/skybox</code>, and adding, removing or renaming a file changes the
+ * modified time of its parent folder, so the key uses the latest modified time among the folder, the parents of those
+ * subfolders and every folder inside them. The walk is bounded to {@link #MAX_DEPTH} levels and {@link #MAX_FOLDERS}
+ * folders per resource, so changes below that are not noticed until the resource changes elsewhere.
+ */
+class CustomPathCache {
+
+    private static final Logger log = Logger.getLogger("lawena");
+    private static final int MAGIC = 0x4c575043;
+    private static final int VERSION = 3;
+    private static final int MAX_DEPTH = 8;
+    private static final int MAX_FOLDERS = 4096;
+    private static final String[] parents = {"resource", "materials"};
+    private static final String[] markers = {
+        "resource" + File.separator + "ui", "scripts", "cfg", "materials" + File.separator + "skybox"};
+
+    private final Path file;
+    private final Map<String, Record> records = new ConcurrentHashMap<>();
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+    private volatile boolean dirty = false;
+
+    public CustomPathCache(Path file) {
+        this.file = file;
+    }
+
+    private static long lastModified(Path dir) {
+        long latest = 0;
+        for (String parent : parents) {
+            try {
+                latest = Math.max(latest, Files.getLastModifiedTime(dir.resolve(parent)).toMillis());
+            } catch (IOException ignored) {
+                // this folder does not exist
+            }
+        }
+        LatestFolderVisitor visitor = new LatestFolderVisitor();
+        for (String marker : markers) {
+            Path start = dir.resolve(marker);
+            if (Files.isDirectory(start)) {
+                try {
+                    Files.walkFileTree(start, EnumSet.noneOf(FileVisitOption.class), MAX_DEPTH, visitor);
+                } catch (IOException e) {
+                    log.finer("Could not walk " + start + ": " + e);
+                }
+            }
+        }
+        return Math.max(latest, visitor.latest);
+    }
+
+    /**
+     * Compute the key identifying the current state of a custom resource.
+     *
+     * @param path the VPK or folder to identify
+     * @return the key for this resource or <code>null</code> if its attributes could not be read
+     */
+    public Key keyOf(Path path) {
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            String canonical;
+            try {
+                canonical = path.toRealPath().toString();
+            } catch (IOException e) {
+                canonical = path.toAbsolutePath().toString();
+            }
+            if (attrs.isDirectory()) {
+                return new Key(canonical, 0, Math.max(attrs.lastModifiedTime().toMillis(), lastModified(path)));
+            } else {
+                return new Key(canonical, attrs.size(), attrs.lastModifiedTime().toMillis());
+            }
+        } catch (IOException e) {
+            log.finer("Could not read attributes of " + path + ": " + e);
+            return null;
+        }
+    }
+
+    /**
+     * Retrieve the cached classification of a resource, only if it hasn't changed since it was stored.
+     *
+     * @param key the current key of the resource
+     * @return the cached record or <code>null</code> if there is no valid record for this key
+     */
+    public Record get(Key key) {
+        if (key != null) {
+            Record record = records.get(key.path);
+            if (record != null && record.key.equals(key)) {
+                hits.incrementAndGet();
+                return record;
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    public void put(Key key, EnumSet<PathContents> contents) {
+        if (key != null) {
+            records.put(key.path, new Record(key, EnumSet.copyOf(contents)));
+            dirty = true;
+        }
+    }
+
+    /**
+     * Log the hit and miss counters accumulated since the last call and reset them.
+     *
+     * @param context a short description of the operation that used the cache
+     */
+    public void logStats(String context) {
+        int hit = hits.getAndSet(0);
+        int miss = misses.getAndSet(0);
+        if (hit + miss > 0) {
+            log.fine("[" + context + "] Custom path cache: " + hit + " hit(s), " + miss + " miss(es) - "
+                + (100 * hit / (hit + miss)) + "% of the custom resources were not rescanned");
+        }
+    }
+
+    public void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                log.fine("Discarding custom path cache with unknown format");
+                return;
+            }
+            int count = in.readInt();
+            PathContents[] values = PathContents.values();
+            for (int i = 0; i < count; i++) {
+                Key key = new Key(in.readUTF(), in.readLong(), in.readLong());
+                int mask = in.readInt();
+                EnumSet<PathContents> contents = EnumSet.noneOf(PathContents.class);
+                for (PathContents value : values) {
+                    if ((mask & (1 << value.ordinal())) != 0) {
+                        contents.add(value);
+                    }
+                }
+                records.put(key.path, new Record(key, contents));
+            }
+            log.finer("Loaded " + records.size() + " custom path cache records");
+        } catch (IOException e) {
+            log.log(Level.FINE, "Could not load custom path cache", e);
+            records.clear();
+        }
+    }
+
+    /**
+     * Write the cache to disk if it was modified, discarding records of resources that no longer exist.
+     */
+    public void save() {
+        if (!dirty) {
+            return;
+        }
+        records.keySet().removeIf(path -> !Files.exists(Paths.get(path)));
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            List<Record> list = new ArrayList<>(records.values());
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(list.size());
+            for (Record record : list) {
+                out.writeUTF(record.key.path);
+                out.writeLong(record.key.size);
+                out.writeLong(record.key.lastModified);
+                int mask = 0;
+                for (PathContents value : record.contents) {
+                    mask |= 1 << value.ordinal();
+                }
+                out.writeInt(mask);
+            }
+        } catch (IOException e) {
+            log.log(Level.FINE, "Could not save custom path cache", e);
+            return;
+        }
+        try {
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            dirty = false;
+        } catch (IOException e) {
+            log.log(Level.FINE, "Could not replace custom path cache", e);
+        }
+    }
+
+    /**
+     * Finds the latest modified time among the visited folders, giving up after {@link #MAX_FOLDERS} of them.
+     */
+    private static class LatestFolderVisitor extends SimpleFileVisitor<Path> {
+
+        private long latest = 0;
+        private int count = 0;
+
+        private FileVisitResult visitFolder(BasicFileAttributes attrs) {
+            latest = Math.max(latest, attrs.lastModifiedTime().toMillis());
+            return ++count < MAX_FOLDERS ? FileVisitResult.CONTINUE : FileVisitResult.TERMINATE;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            return visitFolder(attrs);
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+            // folders at the maximum depth are visited as files
+            return attrs.isDirectory() ? visitFolder(attrs) : FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc) {
+            return FileVisitResult.CONTINUE;
+        }
+    }
+
+    public static class Key {
+
+        private final String path;
+        private final long size;
+        private final long lastModified;
+
+        Key(String path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, size, lastModified);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return size == other.size && lastModified == other.lastModified && path.equals(other.path);
+        }
+    }
+
+    public static class Record {
+
+        private final Key key;
+        private final EnumSet<PathContents> contents;
+
+        Record(Key key, EnumSet<PathContents> contents) {
+            this.key = key;
+            this.contents = contents;
+        }
+
+        public EnumSet<PathContents> getContents() {
+            return EnumSet.copyOf(contents);
+        }
+    }
+}
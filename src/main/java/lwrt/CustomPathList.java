@@ -10,6 +10,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.*;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.logging.Level;
@@ -30,6 +31,7 @@ public class CustomPathList extends AbstractTableModel {
     private List<CustomPath> list = new ArrayList<>();
     private SettingsManager cfg;
     private CommandLine cl;
+    private CustomPathCache cache = new CustomPathCache(Paths.get("custompaths.cache"));
 
     static {
         List<CustomPath> list = new ArrayList<>();
@@ -50,6 +52,7 @@ public class CustomPathList extends AbstractTableModel {
     public CustomPathList(SettingsManager cfg, CommandLine cl) {
         this.cfg = cfg;
         this.cl = cl;
+        cache.load();
     }
 
     private static boolean accept(Path entry) {
@@ -185,6 +188,13 @@ public class CustomPathList extends AbstractTableModel {
         boolean containsScripts = false;
         if (!c.contains(PathContents.READONLY)) {
             c.retainAll(EnumSet.of(PathContents.DEFAULT));
+            CustomPathCache.Key key = cache.keyOf(path);
+            CustomPathCache.Record record = cache.get(key);
+            if (record != null) {
+                c.addAll(record.getContents());
+                return;
+            }
+            EnumSet<PathContents> found = EnumSet.noneOf(PathContents.class);
             List<String> files = getContentsList(path);
             for (String file : files) {
                 if (file.startsWith("resource" + File.separator + "ui")) {
@@ -192,17 +202,29 @@ public class CustomPathList extends AbstractTableModel {
                 } else if (file.startsWith("scripts" + File.separator)) {
                     containsScripts = true;
                 } else if (file.startsWith("cfg" + File.separator) && file.endsWith(".cfg")) {
-                    c.add(PathContents.CONFIG);
+                    found.add(PathContents.CONFIG);
                 } else if (file.startsWith("materials" + File.separator + "skybox" + File.separator)) {
-                    c.add(PathContents.SKYBOX);
+                    found.add(PathContents.SKYBOX);
                 }
             }
             if (containsResource && containsScripts) {
-                c.add(PathContents.HUD);
+                found.add(PathContents.HUD);
             }
+            c.addAll(found);
+            cache.put(key, found);
         }
     }
 
+    /**
+     * Persist the classification cache and log how many resources were classified without being rescanned.
+     *
+     * @param context a short description of the operation that triggered the updates
+     */
+    public void saveCache(String context) {
+        cache.logStats(context);
+        cache.save();
+    }
+
     private void addRow(CustomPath cp) {
         int row = getRowCount();
         list.add(cp);
@@ -258,6 +280,71 @@ public class CustomPathList extends AbstractTableModel {
         }
     }
 
+    /**
+     * List and classify the custom resources found in the given folders. Classification runs concurrently on a bounded
+     * pool of threads but the returned list keeps the order a sequential scan would produce.
+     *
+     * @param dirs    the folders to scan, in order
+     * @param threads the maximum number of resources to classify at the same time
+     * @return the classified resources, ready to be added through {@link #addAll(List)}
+     * @throws InterruptedException if the scan was interrupted while waiting for the classification to complete
+     */
+    public List<CustomPath> scanPaths(List<Path> dirs, int threads) throws InterruptedException {
+        List<CustomPath> found = new ArrayList<>();
+        for (Path dir : dirs) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path path : stream) {
+                    if (accept(path)) {
+                        CustomPath cp = defaultPaths.get(path);
+                        found.add(cp == null ? new CustomPath(path) : cp);
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                log.fine(dir + " does not exist, not scanning this path");
+            } catch (IOException e) {
+                log.log(Level.FINE, "Problem while loading custom paths", e);
+            }
+        }
+        if (threads <= 1 || found.size() <= 1) {
+            found.forEach(this::update);
+            return found;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, found.size()));
+        try {
+            List<Callable<Void>> tasks = new ArrayList<>();
+            for (CustomPath cp : found) {
+                tasks.add(() -> {
+                    update(cp);
+                    return null;
+                });
+            }
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    log.log(Level.FINE, "Could not classify custom path", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return found;
+    }
+
+    /**
+     * Append a batch of already classified resources to the table, firing a single insertion event. Like every other
+     * table model change, this must be called from the Event Dispatch Thread.
+     *
+     * @param paths the resources to add, usually the result of {@link #scanPaths(List, int)}
+     */
+    public void addAll(List<CustomPath> paths) {
+        if (!paths.isEmpty()) {
+            int first = list.size();
+            list.addAll(paths);
+            fireTableRowsInserted(first, list.size() - 1);
+        }
+    }
+
     public void updatePath(Path path) {
         int i = 0;
         for (CustomPath cp : list) {
@@ -1,16 +1,16 @@
 package lwrt;
 
+import lwrt.LaunchPlan.Operation;
 import lwrt.SettingsManager.Key;
-import net.lingala.zip4j.core.ZipFile;
-import net.lingala.zip4j.exception.ZipException;
-import net.lingala.zip4j.model.ZipParameters;
-import net.lingala.zip4j.util.Zip4jConstants;
+import util.BackupStore;
 import util.CopyDirVisitor;
 import util.DeleteDirVisitor;
 import util.LawenaException;
+import util.ParallelFileWalker;
 import util.Util;
+import util.VpkArchive;
+import util.ZipBackup;
 
-import javax.swing.*;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.*;
@@ -23,30 +23,149 @@ import java.util.logging.Logger;
 class FileManager {
 
     private static final Logger log = Logger.getLogger("lawena");
-    private static final String n = System.getProperty("line.separator");
+    private static final Logger status = Logger.getLogger("status");
 
+    private final Path backupStatePath = Paths.get("lastbackup.txt");
     private CustomPathList customPathList;
     private SettingsManager cfg;
     private CommandLine cl;
+    private volatile LaunchPlan plan;
 
     public FileManager(SettingsManager cfg, CommandLine cl) {
         this.cfg = cfg;
         this.cl = cl;
     }
 
-    private static Path copy(Path from, Path to) throws IOException {
-        Objects.requireNonNull(from);
-        return Files.walkFileTree(from, new CopyDirVisitor(from, to, false));
+    /**
+     * Walk a file tree using up to {@link Key#IoParallelism} threads, logging how much was done and how fast, so the
+     * setting can be tuned for the drive the game is installed on.
+     *
+     * @param operation the operation made by the visitor, to report the progress of the current launch plan
+     * @param start     the file or folder to walk
+     * @param visitor   the visitor to call for each file, which must be thread-safe
+     * @return the start path
+     * @throws IOException if the visitor failed
+     */
+    private Path walk(Operation operation, Path start, FileVisitor<Path> visitor) throws IOException {
+        Objects.requireNonNull(start);
+        ParallelFileWalker walker = new ParallelFileWalker(cfg.getInt(Key.IoParallelism))
+            .setProgressListener(size -> progress(operation, 1, size));
+        ParallelFileWalker.Stats stats = walker.walk(start, visitor);
+        log.fine(operation.getVerb() + " " + start + ": " + stats);
+        return start;
     }
 
-    private static Path copyReadOnly(Path from, Path to) throws IOException {
-        Objects.requireNonNull(from);
-        return Files.walkFileTree(from, new CopyDirVisitor(from, to, true));
+    /**
+     * Measure a file tree without changing it.
+     *
+     * @param start the file or folder to measure
+     * @return the number of files and bytes in it, or an empty result if it doesn't exist
+     */
+    private ParallelFileWalker.Stats measure(Path start) {
+        ParallelFileWalker walker = new ParallelFileWalker(cfg.getInt(Key.IoParallelism));
+        try {
+            if (Files.exists(start)) {
+                return walker.walk(start, new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            }
+        } catch (IOException e) {
+            log.fine("Could not measure " + start + ": " + e);
+        }
+        return null;
+    }
+
+    /**
+     * Add a step to a launch plan with the size of the given files or folders, unless none of them exist.
+     */
+    private void addStep(LaunchPlan plan, Operation operation, String description, Path... paths) {
+        long files = 0;
+        long bytes = 0;
+        for (Path path : paths) {
+            ParallelFileWalker.Stats stats = measure(path);
+            if (stats != null) {
+                files += stats.getFiles();
+                bytes += stats.getBytes();
+            }
+        }
+        if (files > 0) {
+            plan.add(operation, description, files, bytes);
+        }
+    }
+
+    private static long getSize(VpkArchive vpk, Collection<String> names) {
+        long size = 0;
+        for (String name : names) {
+            VpkArchive.Entry entry = vpk.getEntry(name);
+            if (entry != null) {
+                size += entry.getSize();
+            }
+        }
+        return size;
+    }
+
+    private void progress(Operation operation, long files, long bytes) {
+        LaunchPlan current = plan;
+        if (current != null) {
+            current.advance(operation, files, bytes);
+        }
+    }
+
+    private void finish(Operation operation) {
+        LaunchPlan current = plan;
+        if (current != null) {
+            current.finish(operation);
+        }
+    }
+
+    /**
+     * @param plan the plan whose progress is reported while files are restored and replaced, or <code>null</code>
+     */
+    public void setLaunchPlan(LaunchPlan plan) {
+        this.plan = plan;
+    }
+
+    private Path copy(Path from, Path to) throws IOException {
+        return walk(Operation.COPY, from, new CopyDirVisitor(from, to, false));
     }
 
-    private static Path copy(Path from, Path to, Filter<Path> filter) throws IOException {
-        Objects.requireNonNull(from);
-        return Files.walkFileTree(from, new CopyDirVisitor(from, to, false, filter));
+    private Path copyReadOnly(Path from, Path to) throws IOException {
+        return walk(isLinkMode() ? Operation.LINK : Operation.COPY, from,
+            new CopyDirVisitor(from, to, true).withLinks(isLinkMode()));
+    }
+
+    private boolean isLinkMode() {
+        return cfg.getString(Key.InstallMode).equals("link");
+    }
+
+    /**
+     * Install a single file, creating a hard link to it if the install mode and the file type allow it, which is only
+     * a metadata operation regardless of the file size, otherwise copying it.
+     *
+     * @param source the file to install
+     * @param dest   the path of the installed file
+     * @throws IOException if the file could not be linked nor copied
+     */
+    private void copyFile(Path source, Path dest) throws IOException {
+        if (isLinkMode() && CopyDirVisitor.isLinkable(source)) {
+            try {
+                Files.createLink(dest, source);
+                log.finer("Linked file: " + source + " -> " + dest);
+                progress(Operation.LINK, 1, 0);
+                return;
+            } catch (UnsupportedOperationException | IOException e) {
+                log.fine("Could not create hard link, copying file instead: " + e);
+            }
+        }
+        Files.copy(source, dest);
+        progress(isLinkMode() ? Operation.LINK : Operation.COPY, 1, Files.size(dest));
+    }
+
+    private Path copy(Path from, Path to, Filter<Path> filter) throws IOException {
+        return walk(Operation.COPY, from, new CopyDirVisitor(from, to, false, filter));
     }
 
     private static void mkdirs(Path dir) throws IOException {
@@ -92,8 +211,7 @@ class FileManager {
     }
 
     private Path delete(Path dir) throws IOException {
-        Objects.requireNonNull(dir);
-        return Files.walkFileTree(dir, new DeleteDirVisitor(cl));
+        return walk(Operation.DELETE, dir, new DeleteDirVisitor(cl));
     }
 
     public CustomPathList getCustomPathList() {
@@ -104,6 +222,97 @@ class FileManager {
         this.customPathList = customPathList;
     }
 
+    /**
+     * Compute the file operations that {@link #restoreAll()} followed by {@link #replaceAll()} would make, without
+     * changing any file. The sizes are measured from the current files, so they are estimates: files created by the
+     * game or changed before the launch are not accounted for.
+     *
+     * @return the plan of the launch preparation
+     */
+    public LaunchPlan planLaunch() {
+        LaunchPlan plan = new LaunchPlan();
+        Path tfpath = cfg.getTfPath();
+        Path customBackupPath = tfpath.resolve("lwrtcustom");
+        Path customPath = tfpath.resolve("custom");
+        Path configBackupPath = tfpath.resolve("lwrtcfg");
+        Path configPath = tfpath.resolve("cfg");
+        Path localCustomPath = Paths.get("custom");
+
+        // restoring the files of a previous launch, if it didn't finish
+        if (Files.exists(configBackupPath) || Files.exists(customBackupPath)) {
+            addStep(plan, Operation.BACKUP, "previous user files", configBackupPath, customBackupPath);
+        }
+        if (Files.exists(customBackupPath)) {
+            try {
+                InstallManifest manifest = InstallManifest.load(tfpath.resolve("lwrtmanifest"));
+                if (!manifest.getMoved().isEmpty()) {
+                    plan.add(Operation.MOVE, "previously installed user files", manifest.getMoved().size(), 0);
+                }
+            } catch (IOException e) {
+                log.fine("Could not read install manifest: " + e);
+            }
+            addStep(plan, Operation.DELETE, "previously installed lawena files", customPath);
+            plan.add(Operation.MOVE, "lwrtcustom", 1, 0);
+        }
+        if (Files.exists(configBackupPath)) {
+            addStep(plan, Operation.DELETE, "previously installed lawena cfg files", configPath);
+            plan.add(Operation.MOVE, "lwrtcfg", 1, 0);
+        }
+
+        // replacing the user files
+        plan.add(Operation.MOVE, "user cfg and custom folders", 2, 0);
+        addStep(plan, Operation.COPY, "lawena cfg files", Paths.get("cfg"));
+        Operation install = isLinkMode() ? Operation.LINK : Operation.COPY;
+        String hudName = cfg.getHud();
+        if (!hudName.equals("custom")) {
+            addStep(plan, install, "hud " + hudName, Paths.get("hud", hudName, "resource"),
+                Paths.get("hud", hudName, "scripts"), Paths.get("hud", hudName, "info.vdf"));
+        }
+        String sky = cfg.getSkybox();
+        if (sky != null && !sky.isEmpty() && !sky.equals(Key.Skybox.defValue())) {
+            long files = 0;
+            long bytes = 0;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(Paths.get("skybox"))) {
+                for (Path path : stream) {
+                    String name = path.getFileName().toString();
+                    if (name.endsWith(".vmt") || (name.endsWith(".vtf") && name.startsWith(sky))) {
+                        files++;
+                        bytes += Files.size(path);
+                    }
+                }
+            } catch (IOException e) {
+                log.fine("Could not measure skybox files: " + e);
+            }
+            plan.add(install, "skybox " + sky, files, bytes);
+        }
+        if (customPathList != null) {
+            for (CustomPath cp : customPathList.getList()) {
+                if (!cp.isSelected()) {
+                    continue;
+                }
+                String name = cp.getPath().getFileName().toString();
+                if (cp == CustomPathList.particles) {
+                    try {
+                        VpkArchive vpk = VpkArchive.open(cp.getPath());
+                        List<String> contents = vpk.getFileNames();
+                        List<String> selected = cfg.getParticles();
+                        if (!selected.contains("*")) {
+                            contents.retainAll(selected);
+                        }
+                        plan.add(Operation.EXTRACT, name, contents.size(), getSize(vpk, contents));
+                    } catch (IOException e) {
+                        log.fine("Could not read particles: " + e);
+                    }
+                } else if (cp.getPath().startsWith(customPath)) {
+                    plan.add(Operation.MOVE, name, 1, 0);
+                } else if (cp.getPath().startsWith(localCustomPath)) {
+                    addStep(plan, install, name, localCustomPath.resolve(name));
+                }
+            }
+        }
+        return plan;
+    }
+
     public void replaceAll() throws LawenaException {
         Path tfpath = cfg.getTfPath();
         Path customBackupPath = tfpath.resolve("lwrtcustom");
@@ -121,6 +330,7 @@ class FileManager {
             log.fine("Making a backup of your config files");
             configPath.toFile().setWritable(true);
             Files.move(configPath, configBackupPath);
+            progress(Operation.MOVE, 1, 0);
             mkdirs(configPath);
             copy(Paths.get("cfg"), configPath);
             if (cfg.getBoolean(Key.CopyUserConfig)) {
@@ -135,13 +345,17 @@ class FileManager {
             log.log(Level.INFO, "Could not replace cfg files", e);
             throw new LawenaException("Failed to replace cfg files", e);
         }
+        InstallManifest manifest = new InstallManifest(tfpath.resolve("lwrtmanifest"));
         try {
             log.fine("Making a backup of your custom files");
             if (!Files.exists(customPath) || !Files.isDirectory(customPath)) {
                 mkdir(customPath);
             }
+            manifest.delete();
+            manifest.addAdded("lawena");
             customPath.toFile().setWritable(true);
             Files.move(customPath, customBackupPath);
+            progress(Operation.MOVE, 1, 0);
         } catch (IOException e) {
             log.log(Level.INFO, "Could not backup custom folder", e);
             throw new LawenaException("Failed to replace custom files", e);
@@ -160,7 +374,7 @@ class FileManager {
                 copyReadOnly(Paths.get("hud", hudName, "resource"), resourcePath);
                 copyReadOnly(Paths.get("hud", hudName, "scripts"), scriptsPath);
                 if (!hudName.equals("hud_default")) {
-                    Files.copy(Paths.get("hud", hudName, "info.vdf"),
+                    copyFile(Paths.get("hud", hudName, "info.vdf"),
                         tfpath.resolve(String.join(File.separator,
                             "custom", "lawena", "info.vdf")));
                 }
@@ -191,11 +405,42 @@ class FileManager {
         }
         // Copy selected custom files
         if (customPathList != null) {
-            copyCustomFiles();
+            copyCustomFiles(manifest);
+        }
+    }
+
+    /**
+     * Install a custom file or folder selected by the user. Files coming from the game custom folder are moved back
+     * from the backup folder, since that is a rename that takes the same time regardless of their size, while files
+     * from Lawena custom folder are copied.
+     *
+     * @param manifest the manifest where the change is recorded before it's made
+     * @param source   the file or folder to install
+     * @param dest     the destination inside the game custom folder
+     * @throws IOException if the file or folder could not be installed
+     */
+    private void install(InstallManifest manifest, Path source, Path dest) throws IOException {
+        String name = dest.getFileName().toString();
+        if (source.startsWith(cfg.getTfPath().resolve("lwrtcustom"))) {
+            manifest.addMoved(name);
+            try {
+                Files.move(source, dest, StandardCopyOption.ATOMIC_MOVE);
+                progress(Operation.MOVE, 1, 0);
+                return;
+            } catch (IOException e) {
+                log.fine("Could not move " + source + ", copying it instead: " + e);
+            }
+        } else {
+            manifest.addAdded(name);
+        }
+        if (Files.isDirectory(source)) {
+            copyReadOnly(source, dest);
+        } else {
+            copyFile(source, dest);
         }
     }
 
-    private void copyCustomFiles() {
+    private void copyCustomFiles(InstallManifest manifest) {
         Path tfpath = cfg.getTfPath();
         Path customBackupPath = tfpath.resolve("lwrtcustom");
         Path customPath = tfpath.resolve("custom");
@@ -217,28 +462,28 @@ class FileManager {
                     }
                     if (Files.exists(source)) {
                         if (Files.isDirectory(source)) {
-                            log.fine("Copying custom folder: " + source.getFileName());
-                            Path dest = customPath.resolve(source.getFileName());
-                            copyReadOnly(source, dest);
+                            log.fine("Installing custom folder: " + source.getFileName());
+                            install(manifest, source, customPath.resolve(source.getFileName()));
                         } else if (cp == CustomPathList.particles) {
-                            List<String> contents = cl.getVpkContents(tfpath, cp.getPath());
+                            VpkArchive vpk = VpkArchive.open(cp.getPath());
+                            List<String> contents = vpk.getFileNames();
                             List<String> selected = cfg.getParticles();
                             if (!selected.contains("*")) {
                                 contents.retainAll(selected);
                             }
+                            Path dest = customParticlesPath.getParent();
+                            contents.removeIf(file -> Files.exists(dest.resolve(file)));
                             if (!contents.isEmpty()) {
                                 log.fine("Copying enhanced particles: " + contents);
                                 mkdirs(customParticlesPath);
-                                // TODO: fix to avoid invoking vpk x
-                                cl.extractIfNeeded(tfpath, cp.getPath().toString(),
-                                    customParticlesPath.getParent(), contents);
+                                vpk.extract(contents, dest);
+                                progress(Operation.EXTRACT, contents.size(), getSize(vpk, contents));
                             } else {
                                 log.fine("No enhanced particles were selected");
                             }
                         } else if (source.getFileName().toString().endsWith(".vpk")) {
-                            log.fine("Copying custom VPK: " + cp.getPath());
-                            Path dest = customPath.resolve(source.getFileName());
-                            Files.copy(source, dest);
+                            log.fine("Installing custom VPK: " + cp.getPath());
+                            install(manifest, source, customPath.resolve(source.getFileName()));
                         } else {
                             log.info("Not copying: " + source.getFileName());
                         }
@@ -263,7 +508,7 @@ class FileManager {
             for (Path path : stream) {
                 String pathStr = path.toFile().getName();
                 if (pathStr.endsWith(".vmt")) {
-                    Files.copy(path, skyboxPath.resolve(pathStr));
+                    copyFile(path, skyboxPath.resolve(pathStr));
                     vmtPaths.add(path);
                 }
                 if (pathStr.endsWith(".vtf") && pathStr.startsWith(skyboxFilename)) {
@@ -282,7 +527,7 @@ class FileManager {
                     || (vtf.endsWith("ft.vtf") && vmt.endsWith("ft.vmt"))
                     || (vtf.endsWith("lf.vtf") && vmt.endsWith("lf.vmt"))
                     || (vtf.endsWith("rt.vtf") && vmt.endsWith("rt.vmt"))) {
-                    Files.copy(vtfPath, skyboxPath.resolve(vmt.substring(0, vmt.indexOf(".vmt")) + ".vtf"));
+                    copyFile(vtfPath, skyboxPath.resolve(vmt.substring(0, vmt.indexOf(".vmt")) + ".vtf"));
                 }
             }
         }
@@ -295,20 +540,58 @@ class FileManager {
         Path configBackupPath = tfpath.resolve("lwrtcfg");
         Path configPath = tfpath.resolve("cfg");
         boolean restoreComplete = true;
+        long start = System.nanoTime();
 
+        InstallManifest manifest;
+        try {
+            manifest = InstallManifest.load(tfpath.resolve("lwrtmanifest"));
+        } catch (IOException e) {
+            log.info("Could not read install manifest: " + e);
+            manifest = null;
+        }
+        List<String> notReturned = new ArrayList<>();
+        boolean userFilesReturned = true;
         if (Files.exists(customBackupPath)) {
-            log.fine("Restoring all your custom files");
+            // user files moved into the custom folder must be back in the backup before anything gets deleted
             try {
-                delete(customPath);
-            } catch (NoSuchFileException e) {
-                log.fine("File does not exist: " + e);
+                notReturned = returnMovedFiles(getMovedFiles(manifest, customPath, customBackupPath), customPath,
+                    customBackupPath);
+                userFilesReturned = notReturned.isEmpty();
             } catch (IOException e) {
-                log.info("Could not delete lawena custom files: " + e);
+                log.info("Could not list custom folder: " + e);
+                userFilesReturned = false;
             }
-            try {
-                restoreComplete = isRestoreComplete(customBackupPath, customPath, true);
-            } catch (IOException e) {
-                log.info("Could not restore custom files: " + e);
+        }
+
+        // always make a backup, later decide if it's useful
+        Path zip = tfpath.resolve("lawena-user." + Util.now("yyMMddHHmmss") + ".bak.zip");
+        if (Files.exists(configBackupPath) || Files.exists(customBackupPath)) {
+            boolean backedUp;
+            if (cfg.getString(Key.BackupMode).equals("snapshot")) {
+                backedUp = saveSnapshot(Arrays.asList(configBackupPath, customBackupPath));
+            } else {
+                backedUp = createBackup(zip, Arrays.asList(configBackupPath, customBackupPath));
+            }
+            finish(Operation.BACKUP);
+            if (!backedUp) {
+                // files are still moved back, but the lwrt folders are kept since there is no backup of them
+                log.info("Your files could not be backed up, lwrtcfg and lwrtcustom will not be deleted");
+                restoreComplete = false;
+            }
+        }
+
+        if (Files.exists(customBackupPath)) {
+            if (userFilesReturned) {
+                log.fine("Restoring all your custom files");
+                deleteInstalledFiles(customPath);
+                try {
+                    restoreComplete = restoreFolder(customBackupPath, customPath) && restoreComplete;
+                } catch (IOException e) {
+                    log.info("Could not restore custom files: " + e);
+                    restoreComplete = false;
+                }
+            } else {
+                log.info("Some of your custom files could not be returned to lwrtcustom, not restoring custom folder");
                 restoreComplete = false;
             }
         } else {
@@ -324,7 +607,7 @@ class FileManager {
                 log.info("Could not delete lawena cfg folder: " + e);
             }
             try {
-                restoreComplete = isRestoreComplete(configBackupPath, configPath, restoreComplete);
+                restoreComplete = restoreFolder(configBackupPath, configPath) && restoreComplete;
             } catch (IOException e) {
                 log.info("Could not restore cfg files: " + e);
                 restoreComplete = false;
@@ -332,52 +615,6 @@ class FileManager {
         } else {
             log.fine("No config backup folder present");
         }
-        // always make a backup, later decide if it's useful
-        Path zip = tfpath.resolve("lawena-user." + Util.now("yyMMddHHmmss") + ".bak.zip");
-        boolean doBackup = true;
-        if (Files.exists(configBackupPath) || Files.exists(customBackupPath)) {
-            try {
-                long bytes = Util.sizeOfPath(configBackupPath) + Util.sizeOfPath(customBackupPath);
-                String size = Util.humanReadableByteCount(bytes, true);
-                log.info("Backup folders size: " + size);
-                if (bytes / 1024 / 1024 > cfg.getInt(Key.BigFolderMBThreshold)) {
-                    int answer =
-                        JOptionPane
-                            .showConfirmDialog(
-                                null,
-                                String.join(n,
-                                    "Your cfg and custom folders are " + size + " in size.",
-                                    "This might cause Lawena to hang or crash while it creates a backup.",
-                                    "Please consider moving unnecessary custom files like maps to tf" + File.separator + "download folder.",
-                                    "Do you still want to create a backup?"),
-                                "Backup Folder",
-                                JOptionPane.YES_NO_OPTION, JOptionPane.QUESTION_MESSAGE);
-                    if (answer == JOptionPane.NO_OPTION || answer == JOptionPane.CLOSED_OPTION) {
-                        log.info("Backup creation skipped by the user");
-                        doBackup = false;
-                    }
-                }
-            } catch (IOException e) {
-                log.info("Could not determine folder size: " + e);
-            }
-        }
-        if (doBackup && (Files.exists(configBackupPath) || Files.exists(customBackupPath))) {
-            log.info("Creating a backup of your files in: " + zip);
-            try {
-                ZipFile zipFile = new ZipFile(zip.toFile());
-                ZipParameters parameters = new ZipParameters();
-                parameters.setCompressionMethod(Zip4jConstants.COMP_DEFLATE);
-                parameters.setCompressionLevel(Zip4jConstants.DEFLATE_LEVEL_NORMAL);
-                for (Path path : Arrays.asList(configBackupPath, customBackupPath)) {
-                    if (Files.exists(path)) {
-                        zipFile.addFolder(path.toFile(), parameters);
-                    }
-                }
-            } catch (IllegalArgumentException | ZipException e) {
-                // IllegalArgumentException can be caused by a bug in jdk versions 7u40 and older
-                log.info("Emergency backup could not be created: " + e);
-            }
-        }
         if (restoreComplete) {
             // at this stage, restore can still fail
             try {
@@ -389,6 +626,11 @@ class FileManager {
                     log.info("Restoring: Deleting files inside lwrtcfg");
                     delete(configBackupPath);
                 }
+                if (manifest != null) {
+                    manifest.delete();
+                } else {
+                    Files.deleteIfExists(tfpath.resolve("lwrtmanifest"));
+                }
             } catch (IOException e) {
                 log.info("Could not delete one or both lwrt folders: " + e);
                 restoreComplete = false;
@@ -397,11 +639,18 @@ class FileManager {
         if (!restoreComplete) {
             log.info("*** Restoring Failed: Some files could not be deleted and process was interrupted");
             log.info("*** Your files are still inside lwrtcfg and lwrtcustom folders. DO NOT delete them");
+            for (String name : notReturned) {
+                log.info("*** Your " + name + " is still inside custom folder. DO NOT delete it");
+            }
+            if (!userFilesReturned && notReturned.isEmpty()) {
+                log.info("*** Some of your files may still be inside custom folder. DO NOT delete it");
+            }
             log.info("*** Lawena will attempt to restore them again when closing or at next launch.");
             log.info("*** If this doesn't work, it might be caused by Windows locking font files,");
             log.info("*** in a way that can only be unlocked through a restart or using Unlocker software :(");
         } else {
             log.info("*** Restore and cleanup completed");
+            log.fine("Restore took " + (System.nanoTime() - start) / 1000000 + " ms");
             // Created zip file is safe to delete since the process was completed
             if (cfg.getBoolean(Key.DeleteBackupsWhenRestoring)) {
                 try {
@@ -416,18 +665,242 @@ class FileManager {
         return restoreComplete;
     }
 
-    private boolean isRestoreComplete(Path backupPath, Path targetPath, boolean restoreComplete) throws IOException {
-        if (isEmpty(targetPath)) {
+    /**
+     * Create a zip file with the contents of the given folders, unless they haven't changed since the last backup
+     * and that backup still exists.
+     *
+     * @param zip     the zip file to create
+     * @param folders the folders to back up
+     * @return <code>true</code> if the files are backed up, in the new zip file or in the unchanged last one
+     */
+    private boolean createBackup(Path zip, List<Path> folders) {
+        try {
+            ZipBackup backup = ZipBackup.scan(folders);
+            String size = Util.humanReadableByteCount(backup.getTotalSize(), true);
+            log.info("Backup folders size: " + size);
+            if (backup.getTotalSize() / 1024 / 1024 > cfg.getInt(Key.BigFolderMBThreshold)) {
+                log.info("Please consider moving unnecessary custom files like maps to tf" + File.separator
+                    + "download folder to speed up backups");
+            }
+            String fingerprint = backup.getFingerprint();
+            Path last = getLastBackup(fingerprint);
+            if (last != null) {
+                log.info("Your files have not changed since the last backup, skipping: " + last);
+                return true;
+            }
+            log.info("Creating a backup of your files in: " + zip);
+            int[] reported = {-1};
+            long[] written = {0};
+            backup.setProgressListener((done, total) -> {
+                progress(Operation.BACKUP, 0, done - written[0]);
+                written[0] = done;
+                int percent = total > 0 ? (int) (100 * done / total) : 100;
+                if (percent / 5 != reported[0] / 5) {
+                    reported[0] = percent;
+                    status.info("Creating a backup of your files... " + percent + "%");
+                }
+            });
+            backup.write(zip, Runtime.getRuntime().availableProcessors());
+            try {
+                Files.write(backupStatePath, Arrays.asList(fingerprint, zip.toAbsolutePath().toString()));
+            } catch (IOException e) {
+                log.fine("Could not save backup state: " + e);
+            }
+            return true;
+        } catch (IOException e) {
+            log.info("Emergency backup could not be created: " + e);
+            return false;
+        }
+    }
+
+    private BackupStore getBackupStore() {
+        return new BackupStore(cfg.getTfPath().resolve("lawena-backups"));
+    }
+
+    /**
+     * Save a snapshot of the given folders in the backup store and delete the snapshots exceeding the retention limit.
+     *
+     * @param folders the folders to back up
+     * @return <code>true</code> if the snapshot was saved, <code>false</code> if it failed, including when any file
+     * could not be read
+     */
+    private boolean saveSnapshot(List<Path> folders) {
+        BackupStore store = getBackupStore();
+        try {
+            status.info("Saving a snapshot of your files...");
+            BackupStore.Snapshot snapshot = store.save(folders, Runtime.getRuntime().availableProcessors());
+            log.info("Your files are backed up in snapshot " + snapshot.getId());
+        } catch (IOException e) {
+            log.info("Backup snapshot could not be saved: " + e);
+            return false;
+        }
+        try {
+            store.prune(cfg.getInt(Key.BackupSnapshotsToKeep));
+        } catch (IOException e) {
+            log.info("Could not delete old backup snapshots: " + e);
+        }
+        return true;
+    }
+
+    /**
+     * @return the backup snapshots saved in the current game folder, from the oldest to the newest
+     */
+    public List<BackupStore.Snapshot> getBackupSnapshots() {
+        return getBackupStore().getSnapshots();
+    }
+
+    /**
+     * Recreate the files of a backup snapshot inside a folder. The snapshot contains the <code>lwrtcfg</code> and
+     * <code>lwrtcustom</code> folders as they were when it was saved.
+     *
+     * @param id     the id of the snapshot to restore
+     * @param target the folder where the files will be restored
+     * @return <code>true</code> if the snapshot was restored
+     */
+    public boolean restoreSnapshot(String id, Path target) {
+        BackupStore store = getBackupStore();
+        BackupStore.Snapshot snapshot = store.getSnapshot(id);
+        if (snapshot == null) {
+            log.info("Backup snapshot not found: " + id);
+            return false;
+        }
+        try {
+            int count = store.restore(snapshot, target);
+            log.info("Restored " + count + " files from snapshot " + id + " in: " + target);
+            return true;
+        } catch (IOException e) {
+            log.info("Could not restore backup snapshot " + id + ": " + e);
+            return false;
+        }
+    }
+
+    private Path getLastBackup(String fingerprint) {
+        try {
+            if (Files.exists(backupStatePath)) {
+                List<String> lines = Files.readAllLines(backupStatePath);
+                if (lines.size() >= 2 && lines.get(0).equals(fingerprint)) {
+                    Path zip = Paths.get(lines.get(1));
+                    if (Files.exists(zip)) {
+                        return zip;
+                    }
+                }
+            }
+        } catch (IOException | InvalidPathException e) {
+            log.fine("Could not read backup state: " + e);
+        }
+        return null;
+    }
+
+    /**
+     * @param manifest         the manifest of the current installation or <code>null</code> if it's not available
+     * @param customPath       the game custom folder
+     * @param customBackupPath the backup of the game custom folder
+     * @return the names of the user files moved into the custom folder. Without a manifest these are the entries of
+     * the custom folder missing from the backup, except the Lawena folder and the resources of Lawena's own custom
+     * folder, which were copied there by Lawena and are deleted with the rest of the installed files.
+     * @throws IOException if the manifest is not available and the custom folder could not be listed
+     */
+    private Collection<String> getMovedFiles(InstallManifest manifest, Path customPath, Path customBackupPath)
+        throws IOException {
+        if (manifest != null) {
+            return manifest.getMoved();
+        }
+        Path localCustomPath = Paths.get("custom");
+        List<String> moved = new ArrayList<>();
+        List<String> installed = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(customPath)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                if (name.equals("lawena") || Files.exists(customBackupPath.resolve(name), LinkOption.NOFOLLOW_LINKS)) {
+                    continue;
+                }
+                if (Files.exists(localCustomPath.resolve(name), LinkOption.NOFOLLOW_LINKS)) {
+                    installed.add(name);
+                } else {
+                    moved.add(name);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            log.fine("File does not exist: " + e);
+        }
+        log.info("Install manifest not available, returning to backup folder: " + moved);
+        if (!installed.isEmpty()) {
+            log.info("Not returning Lawena custom resources, they will be deleted: " + installed);
+        }
+        return moved;
+    }
+
+    /**
+     * Move the user files that were installed by moving them out of the backup folder back to where they were.
+     *
+     * @param moved            the names of the user files moved into the custom folder
+     * @param customPath       the game custom folder
+     * @param customBackupPath the backup of the game custom folder
+     * @return the names of the user files still inside the custom folder, which therefore must not be deleted
+     */
+    private List<String> returnMovedFiles(Collection<String> moved, Path customPath, Path customBackupPath) {
+        List<String> notReturned = new ArrayList<>();
+        for (String name : moved) {
+            Path installed = customPath.resolve(name);
+            Path original = customBackupPath.resolve(name);
+            // if both exist the installed one is a copy, made when the move was not possible
+            if (Files.exists(installed, LinkOption.NOFOLLOW_LINKS) && !Files.exists(original, LinkOption.NOFOLLOW_LINKS)) {
+                try {
+                    Files.move(installed, original, StandardCopyOption.ATOMIC_MOVE);
+                    progress(Operation.MOVE, 1, 0);
+                    log.fine("Returned to backup folder: " + name);
+                } catch (IOException e) {
+                    log.info("Could not return " + name + " to backup folder: " + e);
+                    notReturned.add(name);
+                }
+            }
+        }
+        return notReturned;
+    }
+
+    /**
+     * Delete the whole game custom folder. Once the moved user files are returned, everything left in it was
+     * installed by Lawena or created by the game while it was installed, so the "added" entries of the manifest don't
+     * need to be deleted one by one.
+     *
+     * @param customPath the game custom folder
+     */
+    private void deleteInstalledFiles(Path customPath) {
+        try {
+            delete(customPath);
+        } catch (NoSuchFileException e) {
+            log.fine("File does not exist: " + e);
+        } catch (IOException e) {
+            log.info("Could not delete lawena custom files: " + e);
+        }
+    }
+
+    /**
+     * Put a backup folder back in place. The folder is renamed, which is instant when both are in the same file
+     * system, and copied only when that is not possible, in which case the backup is deleted later.
+     *
+     * @param backupPath the backup folder
+     * @param targetPath the original location of the folder, which must be empty or not exist
+     * @return <code>true</code> if the folder was restored, <code>false</code> if the target was not empty
+     * @throws IOException if the folder could not be moved nor copied
+     */
+    private boolean restoreFolder(Path backupPath, Path targetPath) throws IOException {
+        if (!isEmpty(targetPath)) {
+            return false;
+        }
+        Files.deleteIfExists(targetPath);
+        try {
+            Files.move(backupPath, targetPath, StandardCopyOption.ATOMIC_MOVE);
+            progress(Operation.MOVE, 1, 0);
+        } catch (IOException e) {
+            log.fine("Could not move " + backupPath + ", copying it instead: " + e);
             if (isSymbolicLink(backupPath)) {
-                Files.deleteIfExists(targetPath);
                 Files.move(backupPath, targetPath);
             } else {
                 copy(backupPath, targetPath);
             }
-        } else {
-            restoreComplete = false;
         }
-        return restoreComplete;
+        return true;
     }
 
     private boolean isSymbolicLink(Path path) {
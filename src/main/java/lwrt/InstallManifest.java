@@ -0,0 +1,118 @@
+package lwrt;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Records the changes made to the game custom folder while Lawena files are installed, so they can be reverted
+ * without copying the user files back. Each entry is the name of a top-level file or folder inside the custom folder:
+ * <ul>
+ * <li><b>moved</b> entries are user files that were moved from the backup folder into the custom folder and must be
+ * moved back before anything else is deleted.</li>
+ * <li><b>added</b> entries were created by Lawena and can be deleted.</li>
+ * </ul>
+ * The manifest is written to disk before each change is made, so it is still accurate if Lawena is closed
+ * unexpectedly while the game is running.
+ */
+class InstallManifest {
+
+    private static final Logger log = Logger.getLogger("lawena");
+    private static final Charset charset = Charset.forName("UTF-8");
+    private static final String MOVED = "moved ";
+    private static final String ADDED = "added ";
+
+    private final Path file;
+    private final Set<String> moved = new LinkedHashSet<>();
+    private final Set<String> added = new LinkedHashSet<>();
+
+    public InstallManifest(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Read a manifest from disk.
+     *
+     * @param file the manifest file
+     * @return the manifest, which has no entries if the file does not exist
+     * @throws IOException if the file exists but could not be read
+     */
+    public static InstallManifest load(Path file) throws IOException {
+        InstallManifest manifest = new InstallManifest(file);
+        if (Files.exists(file)) {
+            for (String line : Files.readAllLines(file, charset)) {
+                if (line.startsWith(MOVED)) {
+                    manifest.moved.add(line.substring(MOVED.length()));
+                } else if (line.startsWith(ADDED)) {
+                    manifest.added.add(line.substring(ADDED.length()));
+                } else if (!line.isEmpty()) {
+                    log.fine("Ignoring unknown manifest line: " + line);
+                }
+            }
+        }
+        return manifest;
+    }
+
+    public boolean exists() {
+        return Files.exists(file);
+    }
+
+    public Set<String> getMoved() {
+        return Collections.unmodifiableSet(moved);
+    }
+
+    public Set<String> getAdded() {
+        return Collections.unmodifiableSet(added);
+    }
+
+    /**
+     * Record a user file or folder that is about to be moved into the custom folder.
+     *
+     * @param name the name of the entry inside the custom folder
+     * @throws IOException if the manifest could not be saved, in which case the entry must not be moved
+     */
+    public void addMoved(String name) throws IOException {
+        if (moved.add(name)) {
+            save();
+        }
+    }
+
+    /**
+     * Record a file or folder that is about to be created by Lawena inside the custom folder.
+     *
+     * @param name the name of the entry inside the custom folder
+     * @throws IOException if the manifest could not be saved
+     */
+    public void addAdded(String name) throws IOException {
+        if (added.add(name)) {
+            save();
+        }
+    }
+
+    public void save() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (String name : moved) {
+            lines.add(MOVED + name);
+        }
+        for (String name : added) {
+            lines.add(ADDED + name);
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, lines, charset);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    public void delete() throws IOException {
+        moved.clear();
+        added.clear();
+        Files.deleteIfExists(file);
+    }
+}
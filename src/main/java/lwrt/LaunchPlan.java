@@ -0,0 +1,189 @@
+package lwrt;
+
+import util.Util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * The file operations needed to prepare a launch, computed before any of them is made so their cost can be reported,
+ * and then used to track the progress while they are executed.
+ * <p>
+ * The cost of an operation is measured in bytes: copies, extractions and backups cost the bytes they have to write,
+ * and every file adds a fixed amount, which is all that moves, links and deletions cost since they don't depend on the
+ * size of the files.
+ */
+class LaunchPlan {
+
+    /**
+     * The estimated cost of creating, moving or deleting a single file, in bytes.
+     */
+    static final long FILE_COST = 64 * 1024;
+
+    enum Operation {
+        BACKUP("Backed up"), MOVE("Moved"), DELETE("Deleted"), COPY("Copied"), LINK("Linked"), EXTRACT("Extracted");
+
+        private final String verb;
+
+        Operation(String verb) {
+            this.verb = verb;
+        }
+
+        public String getVerb() {
+            return verb;
+        }
+
+        public long cost(long files, long bytes) {
+            switch (this) {
+                case BACKUP:
+                case COPY:
+                case EXTRACT:
+                    return bytes + files * FILE_COST;
+                default:
+                    return files * FILE_COST;
+            }
+        }
+    }
+
+    static class Step {
+
+        private final Operation operation;
+        private final String description;
+        private final long files;
+        private final long bytes;
+
+        Step(Operation operation, String description, long files, long bytes) {
+            this.operation = operation;
+            this.description = description;
+            this.files = files;
+            this.bytes = bytes;
+        }
+
+        public Operation getOperation() {
+            return operation;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public long getFiles() {
+            return files;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getCost() {
+            return operation.cost(files, bytes);
+        }
+
+        @Override
+        public String toString() {
+            return operation.name().toLowerCase() + " " + description + ": " + files + " files, "
+                + Util.humanReadableByteCount(bytes, true);
+        }
+    }
+
+    private final List<Step> steps = new ArrayList<>();
+    private final Map<Operation, Long> planned = new EnumMap<>(Operation.class);
+    private final Map<Operation, Long> done = new EnumMap<>(Operation.class);
+    private long total;
+    private int percent = -1;
+    private IntConsumer listener;
+
+    public void add(Operation operation, String description, long files, long bytes) {
+        Step step = new Step(operation, description, files, bytes);
+        steps.add(step);
+        planned.merge(operation, step.getCost(), Long::sum);
+        total += step.getCost();
+    }
+
+    public List<Step> getSteps() {
+        return Collections.unmodifiableList(steps);
+    }
+
+    /**
+     * @param cost the minimum cost of the steps to return
+     * @return the steps that cost at least the given amount, like copying a big custom folder
+     */
+    public List<Step> getStepsCostingAtLeast(long cost) {
+        List<Step> list = new ArrayList<>();
+        for (Step step : steps) {
+            if (step.getCost() >= cost) {
+                list.add(step);
+            }
+        }
+        return list;
+    }
+
+    public long getTotalCost() {
+        return total;
+    }
+
+    /**
+     * @param listener receives the percentage of the plan that was executed each time it changes
+     */
+    public void setProgressListener(IntConsumer listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Record the execution of an operation. The progress of each kind of operation is capped to what was planned
+     * for it, so an operation that turns out to be bigger than estimated doesn't make the progress run ahead.
+     *
+     * @param operation the kind of operation
+     * @param files     the number of files affected
+     * @param bytes     the number of bytes written
+     */
+    public synchronized void advance(Operation operation, long files, long bytes) {
+        done.merge(operation, operation.cost(files, bytes), Long::sum);
+        update();
+    }
+
+    /**
+     * Mark all operations of a kind as executed, for operations that don't report their progress incrementally or
+     * were skipped.
+     *
+     * @param operation the kind of operation
+     */
+    public synchronized void finish(Operation operation) {
+        done.put(operation, Math.max(done.getOrDefault(operation, 0L), planned.getOrDefault(operation, 0L)));
+        update();
+    }
+
+    private void update() {
+        long sum = 0;
+        for (Map.Entry<Operation, Long> e : done.entrySet()) {
+            sum += Math.min(e.getValue(), planned.getOrDefault(e.getKey(), 0L));
+        }
+        int value = total > 0 ? (int) (100 * sum / total) : 100;
+        if (value != percent) {
+            percent = value;
+            if (listener != null) {
+                listener.accept(value);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        Map<Operation, long[]> totals = new EnumMap<>(Operation.class);
+        for (Step step : steps) {
+            long[] t = totals.computeIfAbsent(step.getOperation(), k -> new long[2]);
+            t[0] += step.getFiles();
+            t[1] += step.getBytes();
+        }
+        List<String> parts = new ArrayList<>();
+        for (Map.Entry<Operation, long[]> e : totals.entrySet()) {
+            parts.add(e.getKey().name().toLowerCase() + " " + e.getValue()[0] + " files ("
+                + Util.humanReadableByteCount(e.getValue()[1], true) + ")");
+        }
+        return String.join(", ", parts);
+    }
+}
@@ -10,7 +10,10 @@ import javax.imageio.ImageIO;
 import javax.swing.*;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.event.PopupMenuEvent;
+import javax.swing.event.PopupMenuListener;
 import javax.swing.filechooser.FileFilter;
+import javax.swing.plaf.basic.ComboPopup;
 import javax.swing.table.DefaultTableModel;
 import javax.swing.table.TableModel;
 import javax.swing.table.TableRowSorter;
@@ -34,8 +37,7 @@ import java.net.URL;
 import java.nio.file.*;
 import java.util.*;
 import java.util.List;
-import java.util.concurrent.CancellationException;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.*;
 import java.util.jar.JarFile;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -45,6 +47,7 @@ public class Lawena {
     private static final Logger log = Logger.getLogger("lawena");
     private static final Logger status = Logger.getLogger("status");
     private static final String n = System.getProperty("line.separator");
+    private static final int PREVIEW_SIZE = 96;
     private static StartTfTask startTfTask = null;
     private static ClearMoviesTask clearMoviesTask = null;
     private LawenaView view;
@@ -59,6 +62,16 @@ public class Lawena {
     private SegmentsDialog segments;
     private CustomSettingsDialog customSettings;
     private HashMap<String, ImageIcon> skyboxMap;
+    private SkyboxPreviewTask skyboxPreviewTask;
+    private List<String> skyboxes = Collections.emptyList();
+    private final Set<String> pendingPreviews = new HashSet<>();
+    private Object previewedSkybox;
+    private final ThumbnailCache thumbnails = new ThumbnailCache(Paths.get("skybox", ".thumbnails"), PREVIEW_SIZE);
+    /**
+     * Held while a preview is made from a full size image, so previews generated in parallel don't decode many of
+     * them at the same time within the small heap Lawena runs with.
+     */
+    private final Object fullImageLock = new Object();
     private JFileChooser chooser;
     private String oDxlevel;
     private Thread watcher;
@@ -67,8 +80,11 @@ public class Lawena {
     private String build;
     private UpdateHelper updater;
     private LaunchOptionsDialog launchOptionsDialog;
+    private final Map<String, Long> startupTimes = Collections.synchronizedMap(new LinkedHashMap<>());
+    private volatile boolean customPathsLoaded = false;
 
     public Lawena(SettingsManager cfg) {
+        long start = System.nanoTime();
         String impl = this.getClass().getPackage().getImplementationVersion();
         if (impl != null) {
             version = impl;
@@ -140,7 +156,9 @@ public class Lawena {
         log.fine("Saving settings to file");
         settings.save();
         log.fine("Restoring TF2 user files if needed");
+        long restoreStart = System.nanoTime();
         files.restoreAll();
+        startupTime("restoreAll", restoreStart);
 
         customPaths = new CustomPathList(settings, cl);
         files.setCustomPathList(customPaths);
@@ -176,19 +194,10 @@ public class Lawena {
 
         vdm = new DemoEditor(settings, cl);
 
+        startupTime("constructor", start);
         log.fine("Init complete - Ready to display GUI");
     }
 
-    private static ImageIcon createPreviewIcon(String imageName) throws IOException {
-        int size = 96;
-        BufferedImage image;
-        File input = new File(imageName);
-        image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
-        image.createGraphics().drawImage(
-            ImageIO.read(input).getScaledInstance(size, size, Image.SCALE_SMOOTH), 0, 0, null);
-        return new ImageIcon(image);
-    }
-
     private static void registerValidation(JComboBox<String> combo, final String validationRegex,
                                            final JLabel label) {
         final JTextComponent tc = (JTextComponent) combo.getEditor().getEditorComponent();
@@ -273,6 +282,7 @@ public class Lawena {
     }
 
     public void start() {
+        final long start = System.nanoTime();
         view = new LawenaView();
 
         new StartLogger("lawena").toTextComponent(settings.getLogUiLevel(), view.getTextAreaLog());
@@ -289,6 +299,11 @@ public class Lawena {
         }
         view.addWindowListener(new WindowAdapter() {
 
+            @Override
+            public void windowOpened(WindowEvent e) {
+                startupTime("first paint", start);
+            }
+
             @Override
             public void windowClosing(WindowEvent e) {
                 saveAndExit();
@@ -378,32 +393,10 @@ public class Lawena {
         };
         sorter.setRowFilter(filter);
 
-        SwingWorker<Void, Void> scannerTask = new PathScanTask();
-        SwingWorker<Void, Void> skySetupTask = new SwingWorker<Void, Void>() {
-            @Override
-            protected Void doInBackground() throws Exception {
-                try {
-                    configureSkyboxes(view.getCmbSkybox());
-                } catch (Exception e) {
-                    log.log(Level.INFO, "Problem while configuring skyboxes", e);
-                }
-                return null;
-            }
-
-            @Override
-            protected void done() {
-                selectSkyboxFromSettings();
-            }
-
-        };
-        scannerTask.execute();
-        skySetupTask.execute();
-        waitForTask(scannerTask);
-        waitForTask(skySetupTask);
-
         loadSettings();
 
         view.getMntmChangeTfDirectory().addActionListener(new Tf2FolderChange());
+        view.getMntmRestoreSnapshot().addActionListener(new SnapshotRestore());
         view.getMntmChangeMovieDirectory().addActionListener(new MovieFolderChange());
         view.getSelectHlaeLocation().addActionListener(new HlaePathChange());
         view.getMntmRevertToDefault().addActionListener(e -> {
@@ -495,14 +488,34 @@ public class Lawena {
         });
 
         view.getTabbedPane().addTab("VDM", null, vdm.start());
+
+        // custom resources and skyboxes are loaded once the window is up, filling the table and the skybox combo
+        // as results arrive. Their done() callbacks always run after this method returns, so the settings loaded
+        // above are already in place when the dependent selections are restored
+        view.getBtnStartTf().setEnabled(false);
         view.setVisible(true);
+        new PathScanTask().execute();
+        new SkyboxSetupTask().execute();
     }
 
-    private void waitForTask(SwingWorker<?, ?> worker) {
-        try {
-            worker.get();
-        } catch (InterruptedException | ExecutionException e) {
-            log.warning("Task was interrupted or cancelled: " + e.toString());
+    /**
+     * Record how long a startup phase took, logging the full breakdown once every phase has been recorded.
+     *
+     * @param phase the name of the phase
+     * @param start the value of <code>System.nanoTime()</code> when the phase started
+     */
+    private void startupTime(String phase, long start) {
+        long millis = (System.nanoTime() - start) / 1000000;
+        synchronized (startupTimes) {
+            if (startupTimes.containsKey(phase)) {
+                return;
+            }
+            startupTimes.put(phase, millis);
+            if (startupTimes.size() == 5) {
+                StringBuilder sb = new StringBuilder("Startup times:");
+                startupTimes.forEach((k, v) -> sb.append(' ').append(k).append('=').append(v).append("ms"));
+                log.fine(sb.toString());
+            }
         }
     }
 
@@ -800,18 +813,23 @@ public class Lawena {
         settings.setCrosshairSwitch(!view.getDisableCrosshairSwitch().isSelected());
         settings.setHitsounds(!view.getDisableHitSounds().isSelected());
         settings.setVoice(!view.getDisableVoiceChat().isSelected());
-        settings.setSkybox((String) view.getCmbSkybox().getSelectedItem());
-        Path tfpath = settings.getTfPath();
-        List<String> selected = new ArrayList<>();
-        for (CustomPath cp : customPaths.getList()) {
-            Path path = cp.getPath();
-            if (!cp.getContents().contains(PathContents.READONLY) && cp.isSelected()) {
-                String key = (path.startsWith(tfpath) ? "tf*" : "");
-                key += path.getFileName().toString();
-                selected.add(key);
+        String skybox = (String) view.getCmbSkybox().getSelectedItem();
+        if (skybox != null) {
+            settings.setSkybox(skybox);
+        }
+        if (customPathsLoaded) {
+            Path tfpath = settings.getTfPath();
+            List<String> selected = new ArrayList<>();
+            for (CustomPath cp : customPaths.getList()) {
+                Path path = cp.getPath();
+                if (!cp.getContents().contains(PathContents.READONLY) && cp.isSelected()) {
+                    String key = (path.startsWith(tfpath) ? "tf*" : "");
+                    key += path.getFileName().toString();
+                    selected.add(key);
+                }
             }
+            settings.setCustomResources(selected);
         }
-        settings.setCustomResources(selected);
         settings.setHudMinmode(view.getUseHudMinmode().isSelected());
         settings
             .setBoolean(Key.DeleteBackupsWhenRestoring, view.getChckbxmntmBackupMode().isSelected());
@@ -842,14 +860,18 @@ public class Lawena {
     private void saveAndExit() {
         saveSettings();
         view.setVisible(false);
+        if (skyboxPreviewTask != null) {
+            skyboxPreviewTask.cancel(true);
+        }
         if (!cl.isRunningTF2()) {
             files.restoreAll();
         }
+        ProcessRunner.getMetrics().forEach((name, metrics) -> log.fine("Commands run [" + name + "]: " + metrics));
         System.exit(0);
     }
 
-    private void configureSkyboxes(final JComboBox<String> combo) {
-        final Vector<String> data = new Vector<>();
+    private List<String> findSkyboxes() {
+        List<String> data = new ArrayList<>();
         Path dir = Paths.get("skybox");
         if (Files.exists(dir)) {
             log.finer("Loading skyboxes from folder");
@@ -864,16 +886,138 @@ public class Lawena {
                 log.log(Level.INFO, "Problem while loading skyboxes", e);
             }
         }
-        skyboxMap = new HashMap<>(data.size());
-        new SkyboxPreviewTask(new ArrayList<>(data)).execute();
+        return data;
+    }
+
+    private boolean isLazySkyboxPreview() {
+        return settings.getString(Key.SkyboxPreviewMode).equals("lazy");
+    }
+
+    private void configureSkyboxes(final JComboBox<String> combo, List<String> skyboxes) {
+        this.skyboxes = new ArrayList<>(skyboxes);
+        Vector<String> data = new Vector<>(skyboxes);
+        if (skyboxPreviewTask != null) {
+            skyboxPreviewTask.cancel(true);
+        }
+        if (isLazySkyboxPreview()) {
+            // only the most recently viewed previews are kept, the rest are loaded again from the thumbnail cache
+            final int maxSize = settings.getInt(Key.SkyboxPreviewCacheSize);
+            skyboxMap = new LinkedHashMap<String, ImageIcon>(16, 0.75f, true) {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ImageIcon> eldest) {
+                    return size() > maxSize;
+                }
+            };
+            registerSkyboxHoverListener(combo);
+            log.fine("Skybox previews will be loaded on demand, keeping up to " + maxSize + " in memory");
+        } else {
+            skyboxMap = new HashMap<>(data.size());
+            skyboxPreviewTask = new SkyboxPreviewTask(new ArrayList<>(data));
+            skyboxPreviewTask.execute();
+        }
         data.add(0, (String) Key.Skybox.defValue());
         combo.setModel(new DefaultComboBoxModel<>(data));
-        combo.addActionListener(e -> {
-            ImageIcon preview = skyboxMap.get(combo.getSelectedItem());
-            view.getLblPreview().setText(preview == null ? "" : "Preview:");
-            view.getLblSkyboxPreview().setIcon(preview);
+        combo.addActionListener(e -> showSkyboxPreview(combo.getSelectedItem()));
+    }
+
+    private void registerSkyboxHoverListener(final JComboBox<String> combo) {
+        Object child = combo.getAccessibleContext().getAccessibleChild(0);
+        if (child instanceof ComboPopup) {
+            final JList<?> list = ((ComboPopup) child).getList();
+            list.addListSelectionListener(e -> {
+                if (!e.getValueIsAdjusting() && list.isShowing()) {
+                    showSkyboxPreview(list.getSelectedValue());
+                }
+            });
+        }
+        combo.addPopupMenuListener(new PopupMenuListener() {
+
+            @Override
+            public void popupMenuWillBecomeVisible(PopupMenuEvent e) {
+            }
+
+            @Override
+            public void popupMenuWillBecomeInvisible(PopupMenuEvent e) {
+                showSkyboxPreview(combo.getSelectedItem());
+            }
+
+            @Override
+            public void popupMenuCanceled(PopupMenuEvent e) {
+            }
         });
+    }
+
+    private void updateSkyboxPreview() {
+        showSkyboxPreview(view.getCmbSkybox().getSelectedItem());
+    }
+
+    private void showSkyboxPreview(Object skybox) {
+        previewedSkybox = skybox;
+        ImageIcon preview = skyboxMap.get(skybox);
+        if (preview == null && isLazySkyboxPreview()) {
+            requestSkyboxPreviews(skybox);
+        }
+        view.getLblPreview().setText(preview == null ? "" : "Preview:");
+        view.getLblSkyboxPreview().setIcon(preview);
+    }
+
+    /**
+     * Load the preview of a skybox in the background if it's not already in memory, along with the previews of the
+     * skyboxes next to it in the list, which are likely to be viewed next.
+     *
+     * @param skybox the name of the skybox being viewed
+     */
+    private void requestSkyboxPreviews(Object skybox) {
+        int i = skyboxes.indexOf(skybox);
+        if (i < 0) {
+            return;
+        }
+        for (int j : new int[]{i, i + 1, i - 1}) {
+            if (j >= 0 && j < skyboxes.size()) {
+                String name = skyboxes.get(j);
+                if (!skyboxMap.containsKey(name) && pendingPreviews.add(name)) {
+                    new SkyboxPreviewLoader(name).execute();
+                }
+            }
+        }
+    }
 
+    /**
+     * Load the preview of a skybox from the thumbnail cache, generating it from the skybox "up" texture if it's not
+     * cached or if the texture has changed since it was cached.
+     *
+     * @param skybox the name of the skybox
+     * @return the preview icon or <code>null</code> if it could not be generated
+     * @throws IOException if the generated preview could not be read
+     */
+    private ImageIcon loadSkyboxPreview(String skybox) throws IOException {
+        Path vtf = Paths.get("skybox", skybox + "up.vtf");
+        BufferedImage thumbnail = thumbnails.get(vtf);
+        if (thumbnail == null) {
+            try {
+                thumbnail = ThumbnailCache.downscale(VtfReader.read(vtf, PREVIEW_SIZE), PREVIEW_SIZE, PREVIEW_SIZE);
+            } catch (IOException e) {
+                log.fine("Could not decode " + vtf + ", using VTFCmd instead: " + e);
+                Path img = Paths.get("skybox", skybox + "up.png");
+                synchronized (fullImageLock) {
+                    if (!Files.exists(img)) {
+                        cl.generatePreview(skybox + "up.vtf");
+                    }
+                    BufferedImage source = Files.exists(img) ? ImageIO.read(img.toFile()) : null;
+                    if (source != null) {
+                        thumbnail = ThumbnailCache.downscale(source, PREVIEW_SIZE, PREVIEW_SIZE);
+                    }
+                }
+            }
+            if (thumbnail == null) {
+                return null;
+            }
+            thumbnails.put(vtf, thumbnail);
+        }
+        return new ImageIcon(thumbnail);
     }
 
     private void selectSkyboxFromSettings() {
@@ -1119,13 +1263,21 @@ public class Lawena {
                 Path tfpath = settings.getTfPath();
                 Path customPath = tfpath.resolve("custom");
 
-                setProgress(20);
+                // Planning the file operations to report their cost before making them
+                status.info("Planning file operations");
+                LaunchPlan plan = files.planLaunch();
+                log.info("Launch plan: " + plan);
+                long threshold = settings.getInt(Key.BigFolderMBThreshold) * 1024L * 1024L;
+                for (LaunchPlan.Step step : plan.getStepsCostingAtLeast(threshold)) {
+                    log.info("Large operation, consider moving unnecessary files out of custom folders: " + step);
+                }
+                plan.setProgressListener(this::setProgress);
+                files.setLaunchPlan(plan);
                 closeOpenHandles();
 
                 // Restoring user files
                 status.info("Restoring your files");
                 files.restoreAll();
-                setProgress(40);
 
                 // Saving ui settings to cfg files
                 status.info("Saving settings and generating cfg files");
@@ -1136,6 +1288,7 @@ public class Lawena {
                 } catch (IOException e) {
                     log.log(Level.WARNING, "Problem while saving settings to file", e);
                     status.info("Failed to save lawena settings to file");
+                    files.setLaunchPlan(null);
                     return false;
                 }
 
@@ -1146,8 +1299,6 @@ public class Lawena {
                     log.info("Could not detect current movie slot");
                 }
 
-                setProgress(60);
-
                 // Backing up user files and copying lawena files
                 status.info("Copying lawena files to cfg and custom...");
                 try {
@@ -1155,8 +1306,9 @@ public class Lawena {
                 } catch (LawenaException e) {
                     status.info(e.getMessage());
                     return false;
+                } finally {
+                    files.setLaunchPlan(null);
                 }
-                setProgress(80);
 
                 /*
                  * Scan for all .fon, .ttf, .ttc, or .otf files inside custom and get their parent folders
@@ -1188,48 +1340,31 @@ public class Lawena {
                 });
                 setProgress(100);
 
-                int timeout = 0;
                 int cfgtimeout = settings.getLaunchTimeout();
-                int millis = 5000;
-                int maxtimeout = cfgtimeout / (millis / 1000);
                 setProgress(0);
                 status.info("Waiting for TF2 to start...");
                 if (cfgtimeout > 0) {
-                    log.fine("TF2 launch timeout: around " + cfgtimeout + " seconds");
+                    log.fine("TF2 launch timeout: " + cfgtimeout + " seconds");
                 } else {
                     log.fine("TF2 launch timeout disabled");
                 }
-                while (!cl.isRunningTF2() && (cfgtimeout == 0 || timeout < maxtimeout)) {
-                    ++timeout;
-                    if (cfgtimeout > 0) {
-                        setProgress((int) ((double) timeout / maxtimeout * 100));
-                    }
-                    Thread.sleep(millis);
-                }
-
-                if (cfgtimeout > 0 && timeout >= maxtimeout) {
-                    int s = timeout * (millis / 1000);
-                    log.info("TF2 launch timed out after " + s + " seconds");
-                    status.info("TF2 did not start after " + s + " seconds");
+                if (!cl.waitForTF2Start(cfgtimeout * 1000L, this::setProgress)) {
+                    log.info("TF2 launch timed out after " + cfgtimeout + " seconds");
+                    status.info("TF2 did not start after " + cfgtimeout + " seconds");
                     return false;
                 }
 
                 log.fine("TF2 has started running");
                 status.info("Waiting for TF2 to finish running...");
                 SwingUtilities.invokeLater(() -> view.getProgressBar().setIndeterminate(true));
-                while (cl.isRunningTF2()) {
-                    Thread.sleep(millis);
-                }
-
-                Thread.sleep(5000);
+                cl.waitForTF2Exit(0);
                 closeOpenHandles();
 
             } else {
                 if (cl.isRunningTF2()) {
                     status.info("Attempting to finish TF2 process...");
                     cl.killTF2Process();
-                    Thread.sleep(5000);
-                    if (!cl.isRunningTF2()) {
+                    if (cl.waitForTF2Exit(5000)) {
                         startTfTask.cancel(true);
                     }
                     closeOpenHandles();
@@ -1255,14 +1390,17 @@ public class Lawena {
         private boolean verifyCustomHud() {
             Object selectedItem = view.getCmbHud().getSelectedItem();
             if ("Custom".equals(selectedItem)) {
+                boolean found = false;
                 for (CustomPath cp : customPaths.getList()) {
                     customPaths.update(cp);
                     EnumSet<PathContents> set = cp.getContents();
                     if (cp.isSelected() && set.contains(PathContents.HUD)) {
-                        return true;
+                        found = true;
+                        break;
                     }
                 }
-                return false;
+                customPaths.saveCache("launch");
+                return found;
             } else {
                 return true;
             }
@@ -1297,28 +1435,78 @@ public class Lawena {
 
     public class PathScanTask extends SwingWorker<Void, Void> {
 
+        private final long start = System.nanoTime();
+
         @Override
         protected Void doInBackground() throws Exception {
             try {
                 scan();
-                watcher.start();
+                synchronized (watcher) {
+                    if (watcher.getState() == Thread.State.NEW) {
+                        watcher.start();
+                    }
+                }
             } catch (Exception e) {
                 log.log(Level.INFO, "Problem while scanning custom paths", e);
             }
             return null;
         }
 
-        private void scan() {
-            customPaths.clear();
-            customPaths.addPaths(Paths.get("custom"));
-            customPaths.addPaths(settings.getTfPath().resolve("custom"));
+        private void scan() throws InterruptedException, InvocationTargetException {
+            int threads = settings.getInt(Key.CustomScanThreads);
+            int count = 0;
+            boolean first = true;
+            // each folder is inserted as soon as it's classified, so the table fills while the scan progresses
+            for (Path dir : Arrays.asList(Paths.get("custom"), settings.getTfPath().resolve("custom"))) {
+                final List<CustomPath> found = customPaths.scanPaths(Collections.singletonList(dir), threads);
+                final boolean clear = first;
+                SwingUtilities.invokeAndWait(() -> {
+                    if (clear) {
+                        customPaths.clear();
+                    }
+                    customPaths.addAll(found);
+                });
+                count += found.size();
+                first = false;
+            }
             customPaths.validateRequired();
+            customPaths.saveCache("scan");
+            log.fine("Scanned " + count + " custom resources in "
+                + (System.nanoTime() - start) / 1000000 + " ms using up to " + threads + " thread(s)");
         }
 
         @Override
         protected void done() {
             customPaths.loadResourceSettings();
             loadHudComboState();
+            customPathsLoaded = true;
+            if (startTfTask == null) {
+                view.getBtnStartTf().setEnabled(true);
+            }
+            startupTime("scan", start);
+        }
+    }
+
+    public class SkyboxSetupTask extends SwingWorker<List<String>, Void> {
+
+        private final long start = System.nanoTime();
+
+        @Override
+        protected List<String> doInBackground() throws Exception {
+            return findSkyboxes();
+        }
+
+        @Override
+        protected void done() {
+            List<String> skyboxes = Collections.emptyList();
+            try {
+                skyboxes = get();
+            } catch (CancellationException | InterruptedException | ExecutionException e) {
+                log.log(Level.INFO, "Problem while configuring skyboxes", e);
+            }
+            configureSkyboxes(view.getCmbSkybox(), skyboxes);
+            selectSkyboxFromSettings();
+            startupTime("skyboxes", start);
         }
     }
 
@@ -1360,7 +1548,7 @@ public class Lawena {
 
     }
 
-    public class SkyboxPreviewTask extends SwingWorker<Map<String, ImageIcon>, Void> {
+    public class SkyboxPreviewTask extends SwingWorker<Map<String, ImageIcon>, Map.Entry<String, ImageIcon>> {
 
         private List<String> data;
 
@@ -1373,26 +1561,50 @@ public class Lawena {
             setCurrentWorker(this, false);
             setProgress(0);
             final Map<String, ImageIcon> map = new HashMap<>();
+            if (data.isEmpty()) {
+                return map;
+            }
+            long start = System.nanoTime();
+            int threads = Math.min(data.size(), Runtime.getRuntime().availableProcessors());
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            CompletionService<Map.Entry<String, ImageIcon>> completion = new ExecutorCompletionService<>(executor);
             try {
-                int i = 1;
                 for (String skybox : data) {
-                    setProgress((int) (100 * ((double) i / data.size())));
-                    status.fine("Generating skybox preview: " + skybox);
-                    String img = "skybox" + File.separator + skybox + "up.png";
-                    if (!Files.exists(Paths.get(img))) {
-                        String filename = skybox + "up.vtf";
-                        cl.generatePreview(filename);
+                    completion.submit(() -> new AbstractMap.SimpleEntry<>(skybox, loadSkyboxPreview(skybox)));
+                }
+                // previews are published as they complete, so they show up before the whole set is ready
+                for (int i = 1; i <= data.size() && !isCancelled(); i++) {
+                    try {
+                        Map.Entry<String, ImageIcon> entry = completion.take().get();
+                        if (entry.getValue() != null) {
+                            map.put(entry.getKey(), entry.getValue());
+                            publish(entry);
+                        }
+                    } catch (ExecutionException e) {
+                        log.log(Level.INFO, "Problem while loading skyboxes", e.getCause());
                     }
-                    ImageIcon icon = createPreviewIcon(img);
-                    map.put(skybox, icon);
-                    i++;
+                    setProgress(100 * i / data.size());
                 }
-            } catch (Exception e) {
-                log.log(Level.INFO, "Problem while loading skyboxes", e);
+            } finally {
+                executor.shutdownNow();
             }
+            log.fine("Generated " + map.size() + " skybox previews in " + (System.nanoTime() - start) / 1000000
+                + " ms using " + threads + " thread(s)");
             return map;
         }
 
+        @Override
+        protected void process(List<Map.Entry<String, ImageIcon>> chunks) {
+            Object selected = view.getCmbSkybox().getSelectedItem();
+            for (Map.Entry<String, ImageIcon> entry : chunks) {
+                status.fine("Generated skybox preview: " + entry.getKey());
+                skyboxMap.put(entry.getKey(), entry.getValue());
+                if (entry.getKey().equals(selected)) {
+                    updateSkyboxPreview();
+                }
+            }
+        }
+
         @Override
         protected void done() {
             try {
@@ -1410,6 +1622,36 @@ public class Lawena {
 
     }
 
+    public class SkyboxPreviewLoader extends SwingWorker<ImageIcon, Void> {
+
+        private final String skybox;
+
+        public SkyboxPreviewLoader(String skybox) {
+            this.skybox = skybox;
+        }
+
+        @Override
+        protected ImageIcon doInBackground() throws Exception {
+            return loadSkyboxPreview(skybox);
+        }
+
+        @Override
+        protected void done() {
+            pendingPreviews.remove(skybox);
+            ImageIcon icon = null;
+            try {
+                icon = get();
+            } catch (CancellationException | InterruptedException | ExecutionException e) {
+                log.log(Level.FINE, "Could not load skybox preview of " + skybox, e);
+            }
+            // failures are also stored so they aren't retried every time the skybox is viewed
+            skyboxMap.put(skybox, icon);
+            if (skybox.equals(previewedSkybox)) {
+                showSkyboxPreview(skybox);
+            }
+        }
+    }
+
     public class Tf2FolderChange implements ActionListener {
 
         @Override
@@ -1418,6 +1660,9 @@ public class Lawena {
                 Path newpath = getChosenTfPath();
                 if (newpath != null) {
                     settings.setTfPath(newpath);
+                    // the table is cleared and refilled by the scan, so the selection can't be used until it ends
+                    customPathsLoaded = false;
+                    view.getBtnStartTf().setEnabled(false);
                     new PathScanTask().execute();
                     JOptionPane.showMessageDialog(view, String.format("New TF2 folder: %s", newpath),
                         "Change TF2 Folder", JOptionPane.INFORMATION_MESSAGE);
@@ -1429,6 +1674,55 @@ public class Lawena {
 
     }
 
+    public class SnapshotRestore implements ActionListener {
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            List<BackupStore.Snapshot> snapshots = files.getBackupSnapshots();
+            if (snapshots.isEmpty()) {
+                JOptionPane.showMessageDialog(view, "There are no backup snapshots in your TF2 folder.",
+                    "Restore Backup Snapshot", JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
+            Collections.reverse(snapshots);
+            Object snapshot = JOptionPane.showInputDialog(view, "Choose the snapshot to restore:",
+                "Restore Backup Snapshot", JOptionPane.PLAIN_MESSAGE, null, snapshots.toArray(), snapshots.get(0));
+            if (snapshot == null) {
+                return;
+            }
+            JFileChooser folderChooser = new JFileChooser();
+            folderChooser.setDialogTitle("Choose the folder where the snapshot files will be restored");
+            folderChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+            if (folderChooser.showOpenDialog(view) != JFileChooser.APPROVE_OPTION) {
+                return;
+            }
+            String id = ((BackupStore.Snapshot) snapshot).getId();
+            Path target = folderChooser.getSelectedFile().toPath();
+            view.getMntmRestoreSnapshot().setEnabled(false);
+            new SwingWorker<Boolean, Void>() {
+                @Override
+                protected Boolean doInBackground() throws Exception {
+                    return files.restoreSnapshot(id, target);
+                }
+
+                @Override
+                protected void done() {
+                    view.getMntmRestoreSnapshot().setEnabled(true);
+                    try {
+                        boolean restored = get();
+                        JOptionPane.showMessageDialog(view, restored ? "Snapshot " + id + " restored in: " + target
+                                : "Snapshot " + id + " could not be restored, check the log for details",
+                            "Restore Backup Snapshot",
+                            restored ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
+                    } catch (InterruptedException | ExecutionException ex) {
+                        log.log(Level.INFO, "Could not restore backup snapshot", ex);
+                    }
+                }
+            }.execute();
+        }
+
+    }
+
     public class HlaePathChange implements ActionListener {
 
         @Override
@@ -511,6 +511,12 @@ public class SettingsManager {
         VdmSkipStartCommand("demo_timescale 5"),
         VdmSkipStopCommand("demo_timescale 1"),
         VdmTickPadding(500, 0, Integer.MAX_VALUE),
+        VdmOverlapPolicy("MERGE"),
+        /**
+         * Extra folders searched for demos besides the game folder, separated by {@link java.io.File#pathSeparator}
+         * (<code>;</code> on Windows, <code>:</code> elsewhere).
+         */
+        DemoFolders(""),
         InstallFonts(true),
         CopyUserConfig(true),
         CustomSettings("// Custom User Settings"),
@@ -521,6 +527,19 @@ public class SettingsManager {
         SourceRecorderJpegQuality(50, 1, 100),
         DeleteBackupsWhenRestoring(false),
         BigFolderMBThreshold(200, 0, Integer.MAX_VALUE),
+        BackupMode("zip", "zip", "snapshot"),
+        BackupSnapshotsToKeep(10, 1, 1000),
+        /**
+         * How HUD, skybox and custom files are installed into the game custom folder. With <code>link</code>, VPK and
+         * VTF files are installed as hard links to the files in the Lawena folder when both are in the same volume,
+         * sharing their contents, so changing an installed file while it's installed also changes the original in
+         * the Lawena <code>hud</code>, <code>skybox</code> or <code>custom</code> folder. Other files are still copied.
+         */
+        InstallMode("copy", "copy", "link"),
+        IoParallelism(4, 1, 64),
+        CustomScanThreads(4, 1, 64),
+        SkyboxPreviewMode("eager", "eager", "lazy"),
+        SkyboxPreviewCacheSize(16, 1, 1024),
         SetSystemLookAndFeel(true),
         HlaePath(""),
         LaunchMode("hl2"),
@@ -1,5 +1,6 @@
 package ui;
 
+import vdm.OverlapPolicy;
 import vdm.SkipMode;
 import vdm.Tick.Exec;
 import vdm.Tick.ExecRecord;
@@ -18,6 +19,8 @@ public class DemoEditorView extends JPanel {
     private JLabel lblSelectDemoFile;
     private JTextField txtDemofile;
     private JButton btnBrowse;
+    private JButton btnLibrary;
+    private JButton btnHighlights;
     private JLabel lblStartTick;
     private JTextField txtStarttick;
     private JLabel lblEndTick;
@@ -27,6 +30,7 @@ public class DemoEditorView extends JPanel {
     private JButton btnClearTickList;
     private JButton btnCreateVdmFiles;
     private JButton btnDeleteVdmFiles;
+    private JButton btnImportVdmFiles;
     private JScrollPane scrollPane_1;
     private JTable tableTicks;
     private JPanel panelButtonsRight;
@@ -38,6 +42,8 @@ public class DemoEditorView extends JPanel {
     private JButton btnAddExec;
     private JLabel lblSkipMode;
     private JComboBox<SkipMode> cmbSkipMode;
+    private JLabel lblOverlapPolicy;
+    private JComboBox<OverlapPolicy> cmbOverlapPolicy;
 
     /**
      * Create the panel.
@@ -77,6 +83,24 @@ public class DemoEditorView extends JPanel {
         gbc_btnBrowse.gridy = 0;
         add(btnBrowse, gbc_btnBrowse);
 
+        btnLibrary = new JButton("Library...");
+        btnLibrary.setToolTipText("Search all demos in your TF2 folder by map, player or length");
+        GridBagConstraints gbc_btnLibrary = new GridBagConstraints();
+        gbc_btnLibrary.fill = GridBagConstraints.HORIZONTAL;
+        gbc_btnLibrary.insets = new Insets(0, 0, 5, 5);
+        gbc_btnLibrary.gridx = 4;
+        gbc_btnLibrary.gridy = 1;
+        add(btnLibrary, gbc_btnLibrary);
+
+        btnHighlights = new JButton("Highlights...");
+        btnHighlights.setToolTipText("Add segments around the kills, killstreaks or chat of one or more demos");
+        GridBagConstraints gbc_btnHighlights = new GridBagConstraints();
+        gbc_btnHighlights.fill = GridBagConstraints.HORIZONTAL;
+        gbc_btnHighlights.insets = new Insets(0, 0, 5, 5);
+        gbc_btnHighlights.gridx = 4;
+        gbc_btnHighlights.gridy = 2;
+        add(btnHighlights, gbc_btnHighlights);
+
         scrollPane = new JScrollPane();
         scrollPane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
         GridBagConstraints gbc_scrollPane = new GridBagConstraints();
@@ -186,6 +210,10 @@ public class DemoEditorView extends JPanel {
         btnDeleteVdmFiles = new JButton("Delete VDM Files...");
         panelButtonsLeft.add(btnDeleteVdmFiles);
 
+        btnImportVdmFiles = new JButton("Import VDM Files...");
+        btnImportVdmFiles.setToolTipText("Add the segments of the VDM files in your TF2 folder or another folder");
+        panelButtonsLeft.add(btnImportVdmFiles);
+
         lblSkipMode = new JLabel("Skip Mode:");
         lblSkipMode.setToolTipText("Select how tick skipping is handled by the VDM generator");
         panelButtonsLeft.add(lblSkipMode);
@@ -194,12 +222,24 @@ public class DemoEditorView extends JPanel {
         cmbSkipMode.setModel(new DefaultComboBoxModel<>(SkipMode.values()));
         panelButtonsLeft.add(cmbSkipMode);
 
+        lblOverlapPolicy = new JLabel("Overlaps:");
+        lblOverlapPolicy.setToolTipText("Select how segments of a demo that overlap are handled by the VDM generator");
+        panelButtonsLeft.add(lblOverlapPolicy);
+
+        cmbOverlapPolicy = new JComboBox<>();
+        cmbOverlapPolicy.setModel(new DefaultComboBoxModel<>(OverlapPolicy.values()));
+        panelButtonsLeft.add(cmbOverlapPolicy);
+
     }
 
     public JComboBox<SkipMode> getCmbSkipMode() {
         return cmbSkipMode;
     }
 
+    public JComboBox<OverlapPolicy> getCmbOverlapPolicy() {
+        return cmbOverlapPolicy;
+    }
+
     public JTextField getTxtDemofile() {
         return txtDemofile;
     }
@@ -208,6 +248,14 @@ public class DemoEditorView extends JPanel {
         return btnBrowse;
     }
 
+    public JButton getBtnLibrary() {
+        return btnLibrary;
+    }
+
+    public JButton getBtnHighlights() {
+        return btnHighlights;
+    }
+
     public JTextField getTxtStarttick() {
         return txtStarttick;
     }
@@ -232,6 +280,10 @@ public class DemoEditorView extends JPanel {
         return btnDeleteVdmFiles;
     }
 
+    public JButton getBtnImportVdmFiles() {
+        return btnImportVdmFiles;
+    }
+
     public JTable getTableTicks() {
         return tableTicks;
     }
@@ -0,0 +1,193 @@
+package ui;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import java.awt.*;
+import java.net.URL;
+
+public class DemoLibraryDialog extends JDialog {
+
+    private static final long serialVersionUID = 1L;
+    private final JPanel contentPanel = new JPanel();
+    private JTextField txtSearch;
+    private JSpinner spinMinMinutes;
+    private JSpinner spinMaxMinutes;
+    private JTable tableDemos;
+    private JLabel lblStatus;
+    private JButton btnRescan;
+    private JButton okButton;
+    private JButton cancelButton;
+
+    /**
+     * Create the dialog.
+     */
+    public DemoLibraryDialog() {
+        setTitle("Demo Library");
+        setModalityType(ModalityType.APPLICATION_MODAL);
+        setBounds(100, 100, 700, 450);
+        URL url = getClass().getClassLoader().getResource("ui/tf2.png");
+        if (url != null) {
+            setIconImage(new ImageIcon(url).getImage());
+        }
+        getContentPane().setLayout(new BorderLayout());
+        contentPanel.setBorder(new EmptyBorder(5, 5, 5, 5));
+        getContentPane().add(contentPanel, BorderLayout.CENTER);
+        GridBagLayout gbl_contentPanel = new GridBagLayout();
+        gbl_contentPanel.columnWidths = new int[]{0, 0, 0, 0, 0, 0, 0};
+        gbl_contentPanel.rowHeights = new int[]{0, 0, 0};
+        gbl_contentPanel.columnWeights = new double[]{0.0, 1.0, 0.0, 0.0, 0.0, 0.0, Double.MIN_VALUE};
+        gbl_contentPanel.rowWeights = new double[]{0.0, 1.0, Double.MIN_VALUE};
+        contentPanel.setLayout(gbl_contentPanel);
+        {
+            JLabel lblSearch = new JLabel("Search:");
+            lblSearch.setToolTipText("Filter demos by file name, map, player or server");
+            GridBagConstraints gbc_lblSearch = new GridBagConstraints();
+            gbc_lblSearch.anchor = GridBagConstraints.EAST;
+            gbc_lblSearch.insets = new Insets(0, 0, 5, 5);
+            gbc_lblSearch.gridx = 0;
+            gbc_lblSearch.gridy = 0;
+            contentPanel.add(lblSearch, gbc_lblSearch);
+        }
+        {
+            txtSearch = new JTextField();
+            GridBagConstraints gbc_txtSearch = new GridBagConstraints();
+            gbc_txtSearch.fill = GridBagConstraints.HORIZONTAL;
+            gbc_txtSearch.insets = new Insets(0, 0, 5, 5);
+            gbc_txtSearch.gridx = 1;
+            gbc_txtSearch.gridy = 0;
+            contentPanel.add(txtSearch, gbc_txtSearch);
+        }
+        {
+            JLabel lblMinutes = new JLabel("Minutes from:");
+            GridBagConstraints gbc_lblMinutes = new GridBagConstraints();
+            gbc_lblMinutes.insets = new Insets(0, 0, 5, 5);
+            gbc_lblMinutes.gridx = 2;
+            gbc_lblMinutes.gridy = 0;
+            contentPanel.add(lblMinutes, gbc_lblMinutes);
+        }
+        {
+            spinMinMinutes = new JSpinner(new SpinnerNumberModel(0, 0, 9999, 1));
+            GridBagConstraints gbc_spinMinMinutes = new GridBagConstraints();
+            gbc_spinMinMinutes.insets = new Insets(0, 0, 5, 5);
+            gbc_spinMinMinutes.gridx = 3;
+            gbc_spinMinMinutes.gridy = 0;
+            contentPanel.add(spinMinMinutes, gbc_spinMinMinutes);
+        }
+        {
+            JLabel lblTo = new JLabel("to:");
+            lblTo.setToolTipText("Use 0 to show demos of any length");
+            GridBagConstraints gbc_lblTo = new GridBagConstraints();
+            gbc_lblTo.insets = new Insets(0, 0, 5, 5);
+            gbc_lblTo.gridx = 4;
+            gbc_lblTo.gridy = 0;
+            contentPanel.add(lblTo, gbc_lblTo);
+        }
+        {
+            spinMaxMinutes = new JSpinner(new SpinnerNumberModel(0, 0, 9999, 1));
+            GridBagConstraints gbc_spinMaxMinutes = new GridBagConstraints();
+            gbc_spinMaxMinutes.insets = new Insets(0, 0, 5, 0);
+            gbc_spinMaxMinutes.gridx = 5;
+            gbc_spinMaxMinutes.gridy = 0;
+            contentPanel.add(spinMaxMinutes, gbc_spinMaxMinutes);
+        }
+        {
+            JScrollPane scrollPane = new JScrollPane();
+            GridBagConstraints gbc_scrollPane = new GridBagConstraints();
+            gbc_scrollPane.gridwidth = 6;
+            gbc_scrollPane.fill = GridBagConstraints.BOTH;
+            gbc_scrollPane.gridx = 0;
+            gbc_scrollPane.gridy = 1;
+            contentPanel.add(scrollPane, gbc_scrollPane);
+            {
+                tableDemos = new JTable();
+                tableDemos.setShowVerticalLines(false);
+                tableDemos.setGridColor(new Color(0, 0, 0, 30));
+                tableDemos.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
+                tableDemos.getTableHeader().setReorderingAllowed(false);
+                tableDemos.setAutoCreateRowSorter(true);
+                tableDemos.setFillsViewportHeight(true);
+                scrollPane.setViewportView(tableDemos);
+            }
+        }
+        {
+            JPanel buttonPane = new JPanel();
+            getContentPane().add(buttonPane, BorderLayout.SOUTH);
+            GridBagLayout gbl_buttonPane = new GridBagLayout();
+            gbl_buttonPane.columnWidths = new int[]{0, 0, 0, 65, 65, 0};
+            gbl_buttonPane.rowHeights = new int[]{23, 0};
+            gbl_buttonPane.columnWeights = new double[]{0.0, 1.0, 0.0, 0.0, 0.0, Double.MIN_VALUE};
+            gbl_buttonPane.rowWeights = new double[]{0.0, Double.MIN_VALUE};
+            buttonPane.setLayout(gbl_buttonPane);
+            {
+                btnRescan = new JButton("Rescan");
+                btnRescan.setToolTipText("Look for new, changed and deleted demos");
+                GridBagConstraints gbc_btnRescan = new GridBagConstraints();
+                gbc_btnRescan.insets = new Insets(0, 5, 5, 5);
+                gbc_btnRescan.gridx = 0;
+                gbc_btnRescan.gridy = 0;
+                buttonPane.add(btnRescan, gbc_btnRescan);
+            }
+            {
+                lblStatus = new JLabel("");
+                GridBagConstraints gbc_lblStatus = new GridBagConstraints();
+                gbc_lblStatus.anchor = GridBagConstraints.WEST;
+                gbc_lblStatus.insets = new Insets(0, 0, 5, 5);
+                gbc_lblStatus.gridx = 1;
+                gbc_lblStatus.gridy = 0;
+                buttonPane.add(lblStatus, gbc_lblStatus);
+            }
+            {
+                okButton = new JButton("Open");
+                okButton.setPreferredSize(new Dimension(65, 23));
+                GridBagConstraints gbc_okButton = new GridBagConstraints();
+                gbc_okButton.insets = new Insets(0, 0, 5, 5);
+                gbc_okButton.gridx = 3;
+                gbc_okButton.gridy = 0;
+                buttonPane.add(okButton, gbc_okButton);
+                getRootPane().setDefaultButton(okButton);
+            }
+            {
+                cancelButton = new JButton("Cancel");
+                cancelButton.setPreferredSize(new Dimension(65, 23));
+                cancelButton.addActionListener(e -> setVisible(false));
+                GridBagConstraints gbc_cancelButton = new GridBagConstraints();
+                gbc_cancelButton.insets = new Insets(0, 0, 5, 5);
+                gbc_cancelButton.gridx = 4;
+                gbc_cancelButton.gridy = 0;
+                buttonPane.add(cancelButton, gbc_cancelButton);
+            }
+        }
+    }
+
+    public JTextField getTxtSearch() {
+        return txtSearch;
+    }
+
+    public JSpinner getSpinMinMinutes() {
+        return spinMinMinutes;
+    }
+
+    public JSpinner getSpinMaxMinutes() {
+        return spinMaxMinutes;
+    }
+
+    public JTable getTableDemos() {
+        return tableDemos;
+    }
+
+    public JLabel getLblStatus() {
+        return lblStatus;
+    }
+
+    public JButton getBtnRescan() {
+        return btnRescan;
+    }
+
+    public JButton getOkButton() {
+        return okButton;
+    }
+
+    public JButton getCancelButton() {
+        return cancelButton;
+    }
+}
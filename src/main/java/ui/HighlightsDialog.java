@@ -0,0 +1,242 @@
+package ui;
+
+import javax.swing.*;
+import javax.swing.border.EmptyBorder;
+import java.awt.*;
+import java.net.URL;
+
+public class HighlightsDialog extends JDialog {
+
+    private static final long serialVersionUID = 1L;
+    private final JPanel contentPanel = new JPanel();
+    private JLabel lblDemos;
+    private JButton btnChooseDemos;
+    private JTextField txtPlayer;
+    private JCheckBox chckbxKills;
+    private JCheckBox chckbxKillstreaks;
+    private JCheckBox chckbxChat;
+    private JSpinner spinSecondsBefore;
+    private JSpinner spinSecondsAfter;
+    private JSpinner spinSecondsMerge;
+    private JButton okButton;
+    private JButton cancelButton;
+
+    /**
+     * Create the dialog.
+     */
+    public HighlightsDialog() {
+        setTitle("Highlights");
+        setModalityType(ModalityType.APPLICATION_MODAL);
+        setBounds(100, 100, 420, 270);
+        URL url = getClass().getClassLoader().getResource("ui/tf2.png");
+        if (url != null) {
+            setIconImage(new ImageIcon(url).getImage());
+        }
+        getContentPane().setLayout(new BorderLayout());
+        contentPanel.setBorder(new EmptyBorder(5, 5, 5, 5));
+        getContentPane().add(contentPanel, BorderLayout.CENTER);
+        GridBagLayout gbl_contentPanel = new GridBagLayout();
+        gbl_contentPanel.columnWidths = new int[]{0, 0, 0, 0, 0};
+        gbl_contentPanel.rowHeights = new int[]{0, 0, 0, 0, 0, 0};
+        gbl_contentPanel.columnWeights = new double[]{0.0, 1.0, 0.0, 0.0, Double.MIN_VALUE};
+        gbl_contentPanel.rowWeights = new double[]{0.0, 0.0, 0.0, 0.0, 0.0, Double.MIN_VALUE};
+        contentPanel.setLayout(gbl_contentPanel);
+        {
+            JLabel lblDemosTitle = new JLabel("Demos:");
+            GridBagConstraints gbc_lblDemosTitle = new GridBagConstraints();
+            gbc_lblDemosTitle.anchor = GridBagConstraints.EAST;
+            gbc_lblDemosTitle.insets = new Insets(0, 0, 5, 5);
+            gbc_lblDemosTitle.gridx = 0;
+            gbc_lblDemosTitle.gridy = 0;
+            contentPanel.add(lblDemosTitle, gbc_lblDemosTitle);
+        }
+        {
+            lblDemos = new JLabel("No demos selected");
+            GridBagConstraints gbc_lblDemos = new GridBagConstraints();
+            gbc_lblDemos.anchor = GridBagConstraints.WEST;
+            gbc_lblDemos.gridwidth = 2;
+            gbc_lblDemos.insets = new Insets(0, 0, 5, 5);
+            gbc_lblDemos.gridx = 1;
+            gbc_lblDemos.gridy = 0;
+            contentPanel.add(lblDemos, gbc_lblDemos);
+        }
+        {
+            btnChooseDemos = new JButton("Choose...");
+            GridBagConstraints gbc_btnChooseDemos = new GridBagConstraints();
+            gbc_btnChooseDemos.insets = new Insets(0, 0, 5, 0);
+            gbc_btnChooseDemos.gridx = 3;
+            gbc_btnChooseDemos.gridy = 0;
+            contentPanel.add(btnChooseDemos, gbc_btnChooseDemos);
+        }
+        {
+            JLabel lblPlayer = new JLabel("Player:");
+            lblPlayer.setToolTipText("Only events caused by players with this text in their name, leave empty for all");
+            GridBagConstraints gbc_lblPlayer = new GridBagConstraints();
+            gbc_lblPlayer.anchor = GridBagConstraints.EAST;
+            gbc_lblPlayer.insets = new Insets(0, 0, 5, 5);
+            gbc_lblPlayer.gridx = 0;
+            gbc_lblPlayer.gridy = 1;
+            contentPanel.add(lblPlayer, gbc_lblPlayer);
+        }
+        {
+            txtPlayer = new JTextField();
+            GridBagConstraints gbc_txtPlayer = new GridBagConstraints();
+            gbc_txtPlayer.gridwidth = 3;
+            gbc_txtPlayer.fill = GridBagConstraints.HORIZONTAL;
+            gbc_txtPlayer.insets = new Insets(0, 0, 5, 0);
+            gbc_txtPlayer.gridx = 1;
+            gbc_txtPlayer.gridy = 1;
+            contentPanel.add(txtPlayer, gbc_txtPlayer);
+        }
+        {
+            JLabel lblEvents = new JLabel("Events:");
+            GridBagConstraints gbc_lblEvents = new GridBagConstraints();
+            gbc_lblEvents.anchor = GridBagConstraints.EAST;
+            gbc_lblEvents.insets = new Insets(0, 0, 5, 5);
+            gbc_lblEvents.gridx = 0;
+            gbc_lblEvents.gridy = 2;
+            contentPanel.add(lblEvents, gbc_lblEvents);
+        }
+        {
+            JPanel panelEvents = new JPanel();
+            FlowLayout flowLayout = (FlowLayout) panelEvents.getLayout();
+            flowLayout.setAlignment(FlowLayout.LEFT);
+            flowLayout.setVgap(0);
+            flowLayout.setHgap(0);
+            GridBagConstraints gbc_panelEvents = new GridBagConstraints();
+            gbc_panelEvents.gridwidth = 3;
+            gbc_panelEvents.fill = GridBagConstraints.HORIZONTAL;
+            gbc_panelEvents.insets = new Insets(0, 0, 5, 0);
+            gbc_panelEvents.gridx = 1;
+            gbc_panelEvents.gridy = 2;
+            contentPanel.add(panelEvents, gbc_panelEvents);
+            {
+                chckbxKills = new JCheckBox("Kills");
+                chckbxKills.setSelected(true);
+                panelEvents.add(chckbxKills);
+            }
+            {
+                chckbxKillstreaks = new JCheckBox("Killstreaks");
+                panelEvents.add(chckbxKillstreaks);
+            }
+            {
+                chckbxChat = new JCheckBox("Chat");
+                panelEvents.add(chckbxChat);
+            }
+        }
+        {
+            JLabel lblSecondsBefore = new JLabel("Seconds before:");
+            GridBagConstraints gbc_lblSecondsBefore = new GridBagConstraints();
+            gbc_lblSecondsBefore.anchor = GridBagConstraints.EAST;
+            gbc_lblSecondsBefore.insets = new Insets(0, 0, 5, 5);
+            gbc_lblSecondsBefore.gridx = 0;
+            gbc_lblSecondsBefore.gridy = 3;
+            contentPanel.add(lblSecondsBefore, gbc_lblSecondsBefore);
+        }
+        {
+            spinSecondsBefore = new JSpinner(new SpinnerNumberModel(5, 0, 600, 1));
+            GridBagConstraints gbc_spinSecondsBefore = new GridBagConstraints();
+            gbc_spinSecondsBefore.anchor = GridBagConstraints.WEST;
+            gbc_spinSecondsBefore.insets = new Insets(0, 0, 5, 5);
+            gbc_spinSecondsBefore.gridx = 1;
+            gbc_spinSecondsBefore.gridy = 3;
+            contentPanel.add(spinSecondsBefore, gbc_spinSecondsBefore);
+        }
+        {
+            JLabel lblSecondsAfter = new JLabel("after:");
+            GridBagConstraints gbc_lblSecondsAfter = new GridBagConstraints();
+            gbc_lblSecondsAfter.anchor = GridBagConstraints.EAST;
+            gbc_lblSecondsAfter.insets = new Insets(0, 0, 5, 5);
+            gbc_lblSecondsAfter.gridx = 2;
+            gbc_lblSecondsAfter.gridy = 3;
+            contentPanel.add(lblSecondsAfter, gbc_lblSecondsAfter);
+        }
+        {
+            spinSecondsAfter = new JSpinner(new SpinnerNumberModel(2, 0, 600, 1));
+            GridBagConstraints gbc_spinSecondsAfter = new GridBagConstraints();
+            gbc_spinSecondsAfter.anchor = GridBagConstraints.WEST;
+            gbc_spinSecondsAfter.insets = new Insets(0, 0, 5, 0);
+            gbc_spinSecondsAfter.gridx = 3;
+            gbc_spinSecondsAfter.gridy = 3;
+            contentPanel.add(spinSecondsAfter, gbc_spinSecondsAfter);
+        }
+        {
+            JLabel lblSecondsMerge = new JLabel("Merge within:");
+            lblSecondsMerge.setToolTipText("Join highlights separated by this many seconds or less");
+            GridBagConstraints gbc_lblSecondsMerge = new GridBagConstraints();
+            gbc_lblSecondsMerge.anchor = GridBagConstraints.EAST;
+            gbc_lblSecondsMerge.insets = new Insets(0, 0, 0, 5);
+            gbc_lblSecondsMerge.gridx = 0;
+            gbc_lblSecondsMerge.gridy = 4;
+            contentPanel.add(lblSecondsMerge, gbc_lblSecondsMerge);
+        }
+        {
+            spinSecondsMerge = new JSpinner(new SpinnerNumberModel(0, 0, 600, 1));
+            GridBagConstraints gbc_spinSecondsMerge = new GridBagConstraints();
+            gbc_spinSecondsMerge.anchor = GridBagConstraints.WEST;
+            gbc_spinSecondsMerge.insets = new Insets(0, 0, 0, 5);
+            gbc_spinSecondsMerge.gridx = 1;
+            gbc_spinSecondsMerge.gridy = 4;
+            contentPanel.add(spinSecondsMerge, gbc_spinSecondsMerge);
+        }
+        {
+            JPanel buttonPane = new JPanel();
+            buttonPane.setLayout(new FlowLayout(FlowLayout.RIGHT));
+            getContentPane().add(buttonPane, BorderLayout.SOUTH);
+            {
+                okButton = new JButton("Generate");
+                buttonPane.add(okButton);
+                getRootPane().setDefaultButton(okButton);
+            }
+            {
+                cancelButton = new JButton("Cancel");
+                cancelButton.addActionListener(e -> setVisible(false));
+                buttonPane.add(cancelButton);
+            }
+        }
+    }
+
+    public JLabel getLblDemos() {
+        return lblDemos;
+    }
+
+    public JButton getBtnChooseDemos() {
+        return btnChooseDemos;
+    }
+
+    public JTextField getTxtPlayer() {
+        return txtPlayer;
+    }
+
+    public JCheckBox getChckbxKills() {
+        return chckbxKills;
+    }
+
+    public JCheckBox getChckbxKillstreaks() {
+        return chckbxKillstreaks;
+    }
+
+    public JCheckBox getChckbxChat() {
+        return chckbxChat;
+    }
+
+    public JSpinner getSpinSecondsBefore() {
+        return spinSecondsBefore;
+    }
+
+    public JSpinner getSpinSecondsAfter() {
+        return spinSecondsAfter;
+    }
+
+    public JSpinner getSpinSecondsMerge() {
+        return spinSecondsMerge;
+    }
+
+    public JButton getOkButton() {
+        return okButton;
+    }
+
+    public JButton getCancelButton() {
+        return cancelButton;
+    }
+}
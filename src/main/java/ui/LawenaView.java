@@ -68,6 +68,7 @@ public class LawenaView extends JFrame {
     private JMenuItem mntmOpenGameFolder;
     private JMenuItem mntmOpenMovieFolder;
     private JMenuItem mntmOpenCustomFolder;
+    private JMenuItem mntmRestoreSnapshot;
     private JMenuItem mntmChangeTfLaunch;
     private JMenuItem mntmRevertToDefault;
     private JCheckBoxMenuItem chckbxmntmBackupMode;
@@ -112,6 +113,9 @@ public class LawenaView extends JFrame {
         JMenuItem mntmOpenCustomFolder = new JMenuItem("Open Custom Folder");
         mnFile.add(mntmOpenCustomFolder);
 
+        JMenuItem mntmRestoreSnapshot = new JMenuItem("Restore Backup Snapshot...");
+        mnFile.add(mntmRestoreSnapshot);
+
         JSeparator separator = new JSeparator();
         mnFile.add(separator);
 
@@ -655,6 +659,7 @@ public class LawenaView extends JFrame {
         this.mntmOpenGameFolder = mntmOpenGameFolder;
         this.mntmOpenMovieFolder = mntmOpenMovieFolder;
         this.mntmOpenCustomFolder = mntmOpenCustomFolder;
+        this.mntmRestoreSnapshot = mntmRestoreSnapshot;
         this.mntmChangeTfLaunch = mntmChangeTfLaunch;
         this.launchMode = mnLaunchMode;
         this.sourceLaunch = mnSourceLaunch;
@@ -834,6 +839,10 @@ public class LawenaView extends JFrame {
         return mntmOpenCustomFolder;
     }
 
+    public JMenuItem getMntmRestoreSnapshot() {
+        return mntmRestoreSnapshot;
+    }
+
     public JMenuItem getMntmLaunchTimeout() {
         return mntmChangeTfLaunch;
     }
@@ -0,0 +1,94 @@
+package ui;
+
+import lwrt.SettingsManager;
+import lwrt.SettingsManager.Key;
+import util.StartLogger;
+import vdm.VdmJob;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Generates the VDM files of the demos listed in job files without showing the user interface, so it can be used from
+ * scripts and on machines without a display. Run it from the Lawena folder, where the settings and the
+ * <code>cfg</code> folder are:
+ * <pre>
+ * java -cp lawena.jar ui.LwrtCLI [-settings file] [-tf folder] [-threads count] jobfile...
+ * </pre>
+ * The game folder is taken from <code>-tf</code> or else from the settings, and must exist.
+ * See {@link VdmJob} for the format of the job files.
+ */
+class LwrtCLI {
+
+    private static final Logger log = Logger.getLogger("lawena");
+
+    public static void main(String[] args) {
+        System.setProperty("java.awt.headless", "true");
+        String settingsFile = "settings.lwf";
+        String tfDir = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<Path> jobs = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-settings")) {
+                    settingsFile = args[++i];
+                } else if (args[i].equals("-tf")) {
+                    tfDir = args[++i];
+                } else if (args[i].equals("-threads")) {
+                    threads = Integer.parseInt(args[++i]);
+                } else {
+                    jobs.add(Paths.get(args[i]));
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            jobs.clear();
+        }
+        if (jobs.isEmpty() || threads < 1) {
+            System.err.println("Usage: java -cp lawena.jar ui.LwrtCLI [-settings file] [-tf folder] [-threads count] "
+                + "jobfile...");
+            System.exit(2);
+        }
+
+        SettingsManager cfg = new SettingsManager(settingsFile);
+        if (tfDir != null) {
+            cfg.setTfPath(Paths.get(tfDir));
+        }
+        if (cfg.getString(Key.TfDir).isEmpty() || !Files.isDirectory(cfg.getTfPath())) {
+            System.err.println("Game folder is not set or is not a directory, use -tf folder: "
+                + cfg.getString(Key.TfDir));
+            System.exit(2);
+        }
+        new StartLogger("lawena").toConsole(cfg.getLogConsoleLevel()).toFile(cfg.getLogFileLevel());
+        VdmJob job = new VdmJob(cfg);
+        try {
+            for (Path path : jobs) {
+                job.read(path);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read job file: " + e);
+            System.exit(1);
+        }
+        if (!job.getErrors().isEmpty()) {
+            job.getErrors().forEach(System.err::println);
+            System.err.println(job.getErrors().size() + " errors found, no files were generated");
+            System.exit(1);
+        }
+        try {
+            long start = System.nanoTime();
+            List<Path> paths = job.generate(threads);
+            System.out.println("Created " + paths.size() + " files for " + job.getTicks().size() + " segments in "
+                + job.getDemoCount() + " demos in " + (System.nanoTime() - start) / 1000000 + " ms");
+        } catch (IOException e) {
+            log.log(Level.WARNING, "A problem occurred while generating the VDM files", e);
+            System.err.println("Could not generate VDM files: " + e);
+            System.exit(1);
+        }
+    }
+
+}
@@ -0,0 +1,453 @@
+package util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Deduplicating backup store. File contents are stored once under their SHA-256 hash in the <code>objects</code>
+ * folder and each snapshot is a small text manifest in the <code>snapshots</code> folder listing the files it contains
+ * and their hashes.
+ * <p>
+ * Files whose size and modified time match the latest snapshot are assumed to be unchanged and are not read again,
+ * so creating a snapshot only costs as much as the files that changed since the previous one.
+ */
+public class BackupStore {
+
+    private static final Logger log = Logger.getLogger("lawena");
+    private static final Charset charset = Charset.forName("UTF-8");
+    private static final String HEADER = "# lawena snapshot 1";
+    private static final String SUFFIX = ".txt";
+
+    private final Path objects;
+    private final Path snapshots;
+
+    /**
+     * @param dir the folder holding the store, created when the first snapshot is saved
+     */
+    public BackupStore(Path dir) {
+        this.objects = dir.resolve("objects");
+        this.snapshots = dir.resolve("snapshots");
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    private Path objectOf(String hash) {
+        return objects.resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    /**
+     * @return the snapshots in this store, from the oldest to the newest
+     */
+    public List<Snapshot> getSnapshots() {
+        List<Snapshot> list = new ArrayList<>();
+        if (Files.exists(snapshots)) {
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(snapshots, "*" + SUFFIX)) {
+                for (Path path : stream) {
+                    String name = path.getFileName().toString();
+                    list.add(new Snapshot(name.substring(0, name.length() - SUFFIX.length()), path));
+                }
+            } catch (IOException e) {
+                log.log(Level.FINE, "Could not list backup snapshots", e);
+            }
+        }
+        list.sort(Comparator.comparing(Snapshot::getId));
+        return list;
+    }
+
+    public Snapshot getSnapshot(String id) {
+        for (Snapshot snapshot : getSnapshots()) {
+            if (snapshot.getId().equals(id)) {
+                return snapshot;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Save a snapshot of the given folders. Each folder is stored under its own name. Only new or modified files are
+     * read and, if their contents are not already in the store, copied into it, using the given number of threads.
+     *
+     * @param folders the folders to back up, the ones that don't exist are ignored
+     * @param threads the number of files processed in parallel
+     * @return the new snapshot, or the latest one if nothing changed since it was saved
+     * @throws IOException if the snapshot could not be saved, including when a file or folder could not be read, in
+     *                     which case no snapshot is written
+     */
+    public Snapshot save(List<Path> folders, int threads) throws IOException {
+        long start = System.nanoTime();
+        List<Snapshot> existing = getSnapshots();
+        Snapshot latest = existing.isEmpty() ? null : existing.get(existing.size() - 1);
+        Map<String, Entry> previous = new HashMap<>();
+        if (latest != null) {
+            for (Entry entry : latest.getEntries()) {
+                previous.put(entry.name, entry);
+            }
+        }
+        List<Entry> entries = scan(folders);
+        List<Entry> changed = new ArrayList<>();
+        for (Entry entry : entries) {
+            if (!entry.isDirectory()) {
+                Entry old = previous.get(entry.name);
+                if (old != null && old.hash != null && old.size == entry.size
+                    && old.lastModified == entry.lastModified && Files.exists(objectOf(old.hash))) {
+                    entry.hash = old.hash;
+                } else {
+                    changed.add(entry);
+                }
+            }
+        }
+        store(changed, threads);
+        long bytes = 0;
+        for (Entry entry : changed) {
+            bytes += entry.size;
+        }
+        if (latest != null && changed.isEmpty() && entries.equals(latest.getEntries())) {
+            log.fine("Backup folders unchanged since snapshot " + latest.getId());
+            return latest;
+        }
+        Files.createDirectories(snapshots);
+        String id = Util.now("yyyyMMddHHmmss");
+        for (int i = 1; Files.exists(snapshots.resolve(id + SUFFIX)); i++) {
+            id = Util.now("yyyyMMddHHmmss") + "-" + i;
+        }
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        for (Entry entry : entries) {
+            lines.add(entry.toString());
+        }
+        Path target = snapshots.resolve(id + SUFFIX);
+        Path temp = snapshots.resolve(id + ".tmp");
+        Files.write(temp, lines, charset);
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        log.fine("Saved backup snapshot " + id + " with " + entries.size() + " entries, " + changed.size()
+            + " new or modified file(s) (" + Util.humanReadableByteCount(bytes, true) + ") in "
+            + (System.nanoTime() - start) / 1000000 + " ms");
+        return new Snapshot(id, target);
+    }
+
+    private List<Entry> scan(List<Path> folders) throws IOException {
+        final List<Entry> entries = new ArrayList<>();
+        for (Path folder : folders) {
+            if (!Files.exists(folder)) {
+                continue;
+            }
+            final Path base = folder.toAbsolutePath().getParent();
+            Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    entries.add(new Entry(dir, nameOf(dir), null, -1, attrs.lastModifiedTime().toMillis()));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (attrs.isRegularFile()) {
+                        entries.add(new Entry(file, nameOf(file), null, attrs.size(),
+                            attrs.lastModifiedTime().toMillis()));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                private String nameOf(Path path) {
+                    return base.relativize(path.toAbsolutePath()).toString().replace('\\', '/');
+                }
+            });
+        }
+        return entries;
+    }
+
+    private void store(List<Entry> changed, int threads) throws IOException {
+        if (changed.isEmpty()) {
+            return;
+        }
+        Files.createDirectories(objects);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, changed.size())));
+        try {
+            List<Future<String>> futures = new ArrayList<>();
+            for (Entry entry : changed) {
+                futures.add(executor.submit(() -> storeObject(entry.path)));
+            }
+            for (int i = 0; i < changed.size(); i++) {
+                try {
+                    changed.get(i).hash = futures.get(i).get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Could not back up " + changed.get(i).path + ": " + e.getCause(),
+                        e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while saving backup snapshot");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Copy a file into the store, hashing it while it's copied. If an object with the same hash already exists the
+     * copy is discarded.
+     */
+    private String storeObject(Path file) throws IOException {
+        Path temp = Files.createTempFile(objects, "object", ".tmp");
+        try {
+            MessageDigest digest = sha256();
+            try (InputStream in = Files.newInputStream(file);
+                 OutputStream out = new DigestOutputStream(Files.newOutputStream(temp), digest)) {
+                Util.copy(in, out);
+            }
+            String hash = hex(digest.digest());
+            Path object = objectOf(hash);
+            if (!Files.exists(object)) {
+                Files.createDirectories(object.getParent());
+                try {
+                    Files.move(temp, object, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileAlreadyExistsException e) {
+                    log.finer("Object already stored by another thread: " + hash);
+                }
+            }
+            return hash;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Recreate the files of a snapshot inside a folder, with their original modified times. Existing files are
+     * overwritten.
+     *
+     * @param snapshot the snapshot to restore
+     * @param target   the folder where the snapshot folders will be created
+     * @return the number of files restored
+     * @throws IOException if the snapshot could not be read or if a file could not be restored
+     */
+    public int restore(Snapshot snapshot, Path target) throws IOException {
+        int count = 0;
+        List<Entry> entries = snapshot.getEntries();
+        for (Entry entry : entries) {
+            Path path = target.resolve(entry.name).normalize();
+            if (!path.startsWith(target.normalize())) {
+                throw new IOException("Invalid entry in snapshot " + snapshot.getId() + ": " + entry.name);
+            }
+            if (entry.isDirectory()) {
+                Files.createDirectories(path);
+            } else if (entry.hash == null) {
+                log.info("Not restoring " + entry.name + ", it was not included in snapshot " + snapshot.getId());
+            } else {
+                Files.createDirectories(path.getParent());
+                Files.copy(objectOf(entry.hash), path, StandardCopyOption.REPLACE_EXISTING);
+                Files.setLastModifiedTime(path, FileTime.fromMillis(entry.lastModified));
+                count++;
+            }
+        }
+        // folder times are set last since adding files to them changes it
+        for (int i = entries.size() - 1; i >= 0; i--) {
+            Entry entry = entries.get(i);
+            if (entry.isDirectory()) {
+                Files.setLastModifiedTime(target.resolve(entry.name), FileTime.fromMillis(entry.lastModified));
+            }
+        }
+        log.fine("Restored " + count + " files from backup snapshot " + snapshot.getId() + " to " + target);
+        return count;
+    }
+
+    /**
+     * Delete the oldest snapshots, keeping only the given number of them, and then delete the stored contents that
+     * are no longer referenced by any snapshot.
+     *
+     * @param keep the number of snapshots to keep
+     * @return the number of bytes freed
+     * @throws IOException if the store could not be cleaned up
+     */
+    public long prune(int keep) throws IOException {
+        List<Snapshot> list = getSnapshots();
+        for (int i = 0; i < list.size() - Math.max(1, keep); i++) {
+            log.fine("Deleting backup snapshot " + list.get(i).getId());
+            Files.deleteIfExists(list.get(i).path);
+        }
+        final Set<String> referenced = new HashSet<>();
+        for (Snapshot snapshot : getSnapshots()) {
+            for (Entry entry : snapshot.getEntries()) {
+                if (entry.hash != null) {
+                    referenced.add(entry.hash);
+                }
+            }
+        }
+        if (!Files.exists(objects)) {
+            return 0;
+        }
+        final long[] freed = {0};
+        Files.walkFileTree(objects, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                if (!referenced.contains(file.getFileName().toString())) {
+                    Files.delete(file);
+                    freed[0] += attrs.size();
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (!dir.equals(objects)) {
+                    try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                        if (!stream.iterator().hasNext()) {
+                            Files.delete(dir);
+                        }
+                    }
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        if (freed[0] > 0) {
+            log.fine("Freed " + Util.humanReadableByteCount(freed[0], true) + " of unused backup contents");
+        }
+        return freed[0];
+    }
+
+    public static class Snapshot {
+
+        private final String id;
+        private final Path path;
+
+        Snapshot(String id, Path path) {
+            this.id = id;
+            this.path = path;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return the files and folders in this snapshot, folders always before their contents
+         * @throws IOException if the manifest could not be read
+         */
+        public List<Entry> getEntries() throws IOException {
+            List<Entry> entries = new ArrayList<>();
+            for (String line : Files.readAllLines(path, charset)) {
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    entries.add(Entry.parse(line));
+                }
+            }
+            return entries;
+        }
+
+        /**
+         * @return the total size of the files in this snapshot
+         * @throws IOException if the manifest could not be read
+         */
+        public long getSize() throws IOException {
+            long size = 0;
+            for (Entry entry : getEntries()) {
+                size += Math.max(0, entry.size);
+            }
+            return size;
+        }
+
+        @Override
+        public String toString() {
+            return id;
+        }
+    }
+
+    public static class Entry {
+
+        private final Path path;
+        private final String name;
+        private final long size;
+        private final long lastModified;
+        private String hash;
+
+        Entry(Path path, String name, String hash, long size, long lastModified) {
+            this.path = path;
+            this.name = name;
+            this.hash = hash;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        static Entry parse(String line) throws IOException {
+            String[] parts = line.split("\t", 5);
+            if (parts.length != 5) {
+                throw new IOException("Malformed snapshot entry: " + line);
+            }
+            try {
+                String hash = parts[1].equals("-") ? null : parts[1];
+                return new Entry(null, parts[4], hash, Long.parseLong(parts[2]), Long.parseLong(parts[3]));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed snapshot entry: " + line, e);
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getHash() {
+            return hash;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getLastModified() {
+            return lastModified;
+        }
+
+        public boolean isDirectory() {
+            return size < 0;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            Entry other = (Entry) obj;
+            return size == other.size && lastModified == other.lastModified && name.equals(other.name)
+                && Objects.equals(hash, other.hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, hash, size, lastModified);
+        }
+
+        @Override
+        public String toString() {
+            return (isDirectory() ? "D" : "F") + "\t" + (hash == null ? "-" : hash) + "\t" + size + "\t"
+                + lastModified + "\t" + name;
+        }
+    }
+}
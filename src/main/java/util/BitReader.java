@@ -0,0 +1,127 @@
+package util;
+
+import java.io.EOFException;
+import java.nio.charset.Charset;
+
+/**
+ * Reads the little-endian bit stream of Source engine network messages from a byte array. Reading past the end of the
+ * stream throws an {@link EOFException}, so a malformed message never reads outside of its data.
+ */
+class BitReader {
+
+    private static final Charset charset = Charset.forName("UTF-8");
+
+    private final byte[] data;
+    private final int end;
+    private int position;
+    private byte[] text = new byte[256];
+
+    /**
+     * @param data   the bytes to read
+     * @param length the number of bytes of <code>data</code> that belong to the stream
+     */
+    BitReader(byte[] data, int length) {
+        this.data = data;
+        this.end = length * 8;
+    }
+
+    /**
+     * @return the position of the next bit to read
+     */
+    int position() {
+        return position;
+    }
+
+    int remaining() {
+        return end - position;
+    }
+
+    void seek(int bit) throws EOFException {
+        if (bit < 0 || bit > end) {
+            throw new EOFException("Seek to bit " + bit + " of " + end);
+        }
+        position = bit;
+    }
+
+    void skip(int bits) throws EOFException {
+        seek(position + bits);
+    }
+
+    /**
+     * Read an unsigned value of up to 32 bits, the last one is returned as the sign bit.
+     */
+    int readBits(int bits) throws EOFException {
+        if (bits > remaining()) {
+            throw new EOFException("Read " + bits + " bits at " + position + " of " + end);
+        }
+        long value = 0;
+        int read = 0;
+        while (read < bits) {
+            int offset = position & 7;
+            int count = Math.min(8 - offset, bits - read);
+            value |= (long) (((data[position >>> 3] & 0xff) >>> offset) & ((1 << count) - 1)) << read;
+            read += count;
+            position += count;
+        }
+        return (int) value;
+    }
+
+    int peekBits(int bits) throws EOFException {
+        int start = position;
+        int value = readBits(bits);
+        position = start;
+        return value;
+    }
+
+    boolean readBoolean() throws EOFException {
+        return readBits(1) != 0;
+    }
+
+    float readFloat() throws EOFException {
+        return Float.intBitsToFloat(readBits(32));
+    }
+
+    /**
+     * Read a protobuf style variable length integer, stored 7 bits per byte.
+     */
+    int readVarInt() throws EOFException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = readBits(8);
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        return value;
+    }
+
+    byte[] readBytes(int count) throws EOFException {
+        byte[] bytes = new byte[count];
+        if ((position & 7) == 0 && count * 8 <= remaining()) {
+            System.arraycopy(data, position >>> 3, bytes, 0, count);
+            position += count * 8;
+        } else {
+            for (int i = 0; i < count; i++) {
+                bytes[i] = (byte) readBits(8);
+            }
+        }
+        return bytes;
+    }
+
+    /**
+     * Read a null-terminated UTF-8 string.
+     */
+    String readString() throws EOFException {
+        int length = 0;
+        for (int b = readBits(8); b != 0; b = readBits(8)) {
+            if (length == text.length) {
+                byte[] larger = new byte[length * 2];
+                System.arraycopy(text, 0, larger, 0, length);
+                text = larger;
+            }
+            text[length++] = (byte) b;
+        }
+        return new String(text, 0, length, charset);
+    }
+}
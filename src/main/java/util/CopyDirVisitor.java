@@ -1,6 +1,7 @@
 package util;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.nio.file.DirectoryStream.Filter;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
@@ -9,12 +10,14 @@ import java.util.logging.Logger;
 public class CopyDirVisitor extends SimpleFileVisitor<Path> {
 
     private static final Logger log = Logger.getLogger("lawena");
+    private static final long LARGE_FILE_SIZE = 1024 * 1024;
 
     private Path fromPath;
     private Path toPath;
     private StandardCopyOption copyOption = StandardCopyOption.REPLACE_EXISTING;
     private Filter<Path> filter;
     private boolean readOnly;
+    private volatile boolean link;
 
     public CopyDirVisitor(Path from, Path to, boolean readOnly) {
         this(from, to, readOnly, null);
@@ -27,6 +30,20 @@ public class CopyDirVisitor extends SimpleFileVisitor<Path> {
         this.filter = filter;
     }
 
+    /**
+     * Create hard links to the source files instead of copying them, falling back to copying as soon as a link can't
+     * be created, for example when the destination is in a different volume. Only the files accepted by
+     * {@link #isLinkable(Path)} are linked, the rest are still copied. Linked files share their attributes with the
+     * source, so they are never marked as read-only.
+     *
+     * @param link <code>true</code> to create hard links when possible
+     * @return this visitor
+     */
+    public CopyDirVisitor withLinks(boolean link) {
+        this.link = link;
+        return this;
+    }
+
     @Override
     public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
         if (filter != null && !filter.accept(dir)) {
@@ -47,9 +64,63 @@ public class CopyDirVisitor extends SimpleFileVisitor<Path> {
     @Override
     public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
         Path dest = toPath.resolve(fromPath.relativize(file));
+        if (link && isLinkable(file)) {
+            try {
+                Files.deleteIfExists(dest);
+                log.finer("Linking file: " + file + " -> " + dest);
+                Files.createLink(dest, file);
+                return FileVisitResult.CONTINUE;
+            } catch (UnsupportedOperationException | IOException e) {
+                log.fine("Could not create hard link, copying files instead: " + e);
+                link = false;
+            }
+        }
         log.finer("Copying file: " + file + " -> " + dest);
-        Path target = Files.copy(file, dest, copyOption);
-        target.toFile().setWritable(!readOnly);
+        Path target;
+        if (attrs.isRegularFile() && attrs.size() >= LARGE_FILE_SIZE) {
+            target = transfer(file, dest);
+        } else {
+            target = Files.copy(file, dest, copyOption);
+        }
+        // never change the attributes of the source, in case the target turns out to be a link to it
+        if (!Files.isSameFile(file, target)) {
+            target.toFile().setWritable(!readOnly);
+        }
         return FileVisitResult.CONTINUE;
     }
+
+    /**
+     * A hard link shares its contents with the source file, so any change made to the installed file also changes
+     * the original one. Only packed and texture files, which the game never writes to, are linked, while configs,
+     * scripts and resource files are always copied.
+     *
+     * @param file the file to install
+     * @return <code>true</code> if the file can be installed as a hard link to itself
+     */
+    public static boolean isLinkable(Path file) {
+        String name = file.getFileName().toString().toLowerCase();
+        return name.endsWith(".vpk") || name.endsWith(".vtf");
+    }
+
+    /**
+     * Copy a file through {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, which lets
+     * the operating system move the data without going through the Java heap.
+     */
+    private static Path transfer(Path file, Path dest) throws IOException {
+        // replace the target instead of truncating it, since it could be a link to the source
+        Files.deleteIfExists(dest);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(dest, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                long count = in.transferTo(position, size - position, out);
+                if (count == 0 && position >= in.size()) {
+                    break;
+                }
+                position += count;
+            }
+        }
+        return dest;
+    }
 }
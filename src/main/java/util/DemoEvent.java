@@ -0,0 +1,88 @@
+package util;
+
+/**
+ * Something that happened while a demo was recorded, found by {@link DemoParser}.
+ */
+public class DemoEvent {
+
+    private final Type type;
+    private final int tick;
+    private final String player;
+    private final String target;
+    private final String text;
+    private final int count;
+
+    /**
+     * @param type   the kind of event
+     * @param tick   the demo tick of the event
+     * @param player the player causing the event, like the killer or the one talking, or <code>null</code> if none
+     * @param target the player receiving the event, like the victim, or <code>null</code> if none
+     * @param text   the weapon of a kill, the chat line or the winner of a round, or <code>null</code> if none
+     * @param count  the number of kills of a killstreak, otherwise <code>0</code>
+     */
+    public DemoEvent(Type type, int tick, String player, String target, String text, int count) {
+        this.type = type;
+        this.tick = tick;
+        this.player = player;
+        this.target = target;
+        this.text = text;
+        this.count = count;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public int getTick() {
+        return tick;
+    }
+
+    public String getPlayer() {
+        return player;
+    }
+
+    public String getTarget() {
+        return target;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(tick).append(' ').append(type);
+        if (player != null) {
+            sb.append(' ').append(player);
+        }
+        if (target != null) {
+            sb.append(" -> ").append(target);
+        }
+        if (count > 0) {
+            sb.append(" x").append(count);
+        }
+        if (text != null) {
+            sb.append(": ").append(text);
+        }
+        return sb.toString();
+    }
+
+    public enum Type {
+        /**
+         * A player died, killed by {@link #getPlayer()} unless it was a suicide or an accident.
+         */
+        DEATH,
+        /**
+         * A player reached a multiple of {@link DemoParser#KILLSTREAK_STEP} kills without dying.
+         */
+        KILLSTREAK,
+        CHAT,
+        ROUND_START,
+        ROUND_END
+    }
+}
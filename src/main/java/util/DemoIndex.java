@@ -0,0 +1,311 @@
+package util;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the header details of every demo found in a set of folders, so they can be searched without reading the
+ * files again. Each entry is valid while the size and last modified time of its demo stay the same, and only new or
+ * changed demos have their header read when the folders are scanned.
+ * <p>
+ * The index is saved as a text file with one demo per line and tab-separated fields.
+ */
+public class DemoIndex {
+
+    private static final Logger log = Logger.getLogger("lawena");
+    private static final Charset charset = Charset.forName("UTF-8");
+    private static final String HEADER = "# lawena demo index 1";
+    /**
+     * Folders inside the game folder that hold game content instead of demos, skipped to keep scans fast.
+     */
+    private static final Set<String> SKIPPED_FOLDERS = new HashSet<>(Arrays.asList("cfg", "custom", "download",
+        "maps", "materials", "media", "models", "particles", "resource", "scripts", "sound", "lwrtcfg", "lwrtcustom",
+        "lawena-backups"));
+
+    private final Path file;
+    private final Map<Path, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param file the file where the index is saved
+     */
+    public DemoIndex(Path file) {
+        this.file = file;
+    }
+
+    /**
+     * Read the index saved by a previous scan, if there is one.
+     */
+    public void load() {
+        entries.clear();
+        if (!Files.exists(file)) {
+            return;
+        }
+        try {
+            List<String> lines = Files.readAllLines(file, charset);
+            if (lines.isEmpty() || !lines.get(0).equals(HEADER)) {
+                log.fine("Ignoring demo index with unknown format: " + file);
+                return;
+            }
+            for (String line : lines.subList(1, lines.size())) {
+                try {
+                    Entry entry = Entry.parse(line);
+                    entries.put(entry.getPath(), entry);
+                } catch (RuntimeException e) {
+                    log.finer("Ignoring demo index line: " + line);
+                }
+            }
+        } catch (IOException | InvalidPathException e) {
+            log.log(Level.FINE, "Could not read demo index", e);
+        }
+    }
+
+    public synchronized void save() throws IOException {
+        List<String> lines = new ArrayList<>();
+        lines.add(HEADER);
+        for (Entry entry : getEntries()) {
+            lines.add(entry.format());
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temp, lines, charset);
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Scan folders for demo files, reading the header of the new and changed ones and removing the demos that no
+     * longer exist. Subfolders of the game folder with game content, like <code>maps</code> or <code>custom</code>,
+     * are not scanned.
+     *
+     * @param folders     the folders to scan, including their subfolders
+     * @param parallelism the number of threads used to scan and read headers
+     * @return the number of demos whose header was read
+     */
+    public int scan(List<Path> folders, int parallelism) {
+        Set<Path> found = ConcurrentHashMap.newKeySet();
+        AtomicInteger read = new AtomicInteger();
+        for (Path folder : folders) {
+            walk(folder, parallelism, found, read);
+        }
+        entries.keySet().retainAll(found);
+        log.fine("Demo index has " + entries.size() + " demos, " + read + " headers read");
+        return read.get();
+    }
+
+    /**
+     * Scan a single folder for demo files, like {@link #scan(List, int)} but only removing the demos inside this
+     * folder that no longer exist. If the folder was deleted, all its demos are removed.
+     *
+     * @param folder      the folder to scan, including its subfolders
+     * @param parallelism the number of threads used to scan and read headers
+     * @return the number of demos whose header was read
+     */
+    public int scan(Path folder, int parallelism) {
+        Set<Path> found = ConcurrentHashMap.newKeySet();
+        AtomicInteger read = new AtomicInteger();
+        walk(folder, parallelism, found, read);
+        Path root = folder.toAbsolutePath().normalize();
+        entries.keySet().removeIf(path -> path.startsWith(root) && !found.contains(path));
+        return read.get();
+    }
+
+    private void walk(Path folder, int parallelism, Set<Path> found, AtomicInteger read) {
+        if (!Files.isDirectory(folder)) {
+            return;
+        }
+        try {
+            ParallelFileWalker.Stats stats = new ParallelFileWalker(parallelism).walk(folder,
+                new SimpleFileVisitor<Path>() {
+                    @Override
+                    public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                        return !dir.equals(folder) && isSkipped(dir)
+                            ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFile(Path path, BasicFileAttributes attrs) {
+                        if (attrs.isRegularFile() && isDemo(path)) {
+                            Path key = path.toAbsolutePath().normalize();
+                            found.add(key);
+                            if (update(key, attrs)) {
+                                read.incrementAndGet();
+                            }
+                        }
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult visitFileFailed(Path path, IOException exc) {
+                        log.finer("Could not scan " + path + ": " + exc);
+                        return FileVisitResult.CONTINUE;
+                    }
+
+                    @Override
+                    public FileVisitResult postVisitDirectory(Path dir, IOException exc) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                });
+            log.fine("Scanned demos in " + folder + ": " + stats);
+        } catch (IOException e) {
+            log.info("Could not scan demos in " + folder + ": " + e);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if the path has the demo file extension
+     */
+    public static boolean isDemo(Path path) {
+        Path name = path.getFileName();
+        return name != null && name.toString().toLowerCase().endsWith(".dem");
+    }
+
+    /**
+     * @return <code>true</code> if the folder holds game content and is not scanned for demos
+     */
+    public static boolean isSkipped(Path dir) {
+        Path name = dir.getFileName();
+        return name != null && SKIPPED_FOLDERS.contains(name.toString().toLowerCase());
+    }
+
+    /**
+     * Update the entry of a single demo after it was created, changed or deleted.
+     *
+     * @param path the path of the demo
+     * @return <code>true</code> if the index changed
+     */
+    public boolean update(Path path) {
+        Path key = path.toAbsolutePath().normalize();
+        try {
+            BasicFileAttributes attrs = Files.readAttributes(key, BasicFileAttributes.class);
+            if (attrs.isRegularFile()) {
+                return update(key, attrs);
+            }
+        } catch (IOException e) {
+            log.finer("Demo " + key + " is no longer available: " + e);
+        }
+        return entries.remove(key) != null;
+    }
+
+    /**
+     * Update the entry of a single demo if it changed since it was indexed.
+     *
+     * @param path  the absolute path of the demo
+     * @param attrs the current attributes of the demo
+     * @return <code>true</code> if the header was read
+     */
+    private boolean update(Path path, BasicFileAttributes attrs) {
+        long size = attrs.size();
+        long modified = attrs.lastModifiedTime().toMillis();
+        Entry entry = entries.get(path);
+        if (entry != null && entry.size == size && entry.modified == modified) {
+            return false;
+        }
+        try {
+            entries.put(path, new Entry(path, size, modified, DemoPreviewFactory.readHeader(path)));
+        } catch (IOException e) {
+            log.finer("Not indexing demo " + path + ": " + e);
+            entries.remove(path);
+        }
+        return true;
+    }
+
+    /**
+     * @return all the demos in the index, sorted by path
+     */
+    public List<Entry> getEntries() {
+        List<Entry> list = new ArrayList<>(entries.values());
+        list.sort(Comparator.comparing(Entry::getPath));
+        return list;
+    }
+
+    /**
+     * Find the demos matching a text and a playback time range.
+     *
+     * @param text       the text to search in the file name, map, player and server, ignoring case, or an empty
+     *                   string to match all demos
+     * @param minSeconds the minimum playback time in seconds
+     * @param maxSeconds the maximum playback time in seconds, or <code>0</code> for no maximum
+     * @return the matching demos, sorted by path
+     */
+    public List<Entry> search(String text, double minSeconds, double maxSeconds) {
+        List<Entry> list = new ArrayList<>();
+        for (Entry entry : getEntries()) {
+            if (entry.matches(text, minSeconds, maxSeconds)) {
+                list.add(entry);
+            }
+        }
+        return list;
+    }
+
+    public static class Entry {
+
+        private final Path path;
+        private final long size;
+        private final long modified;
+        private final DemoPreview preview;
+
+        public Entry(Path path, long size, long modified, DemoPreview preview) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+            this.preview = preview;
+        }
+
+        private static String clean(String value) {
+            return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+        }
+
+        static Entry parse(String line) {
+            String[] f = line.split("\t", -1);
+            DemoPreview preview = new DemoPreview(f[3], Integer.parseInt(f[4]), Integer.parseInt(f[5]), f[6], f[7],
+                f[8], f[9], Float.parseFloat(f[10]), Integer.parseInt(f[11]), Integer.parseInt(f[12]),
+                Integer.parseInt(f[13]));
+            return new Entry(Paths.get(f[0]), Long.parseLong(f[1]), Long.parseLong(f[2]), preview);
+        }
+
+        String format() {
+            return String.join("\t", path.toString(), Long.toString(size), Long.toString(modified),
+                clean(preview.getDemoStamp()), Integer.toString(preview.getDemoProtocol()),
+                Integer.toString(preview.getNetworkProtocol()), clean(preview.getServerName()),
+                clean(preview.getPlayerName()), clean(preview.getMapName()), clean(preview.getGameDirectory()),
+                Float.toString((float) preview.getPlaybackTime()), Integer.toString(preview.getTickNumber()),
+                Integer.toString(preview.getFrames()), Integer.toString(preview.getSignOnLength()));
+        }
+
+        public boolean matches(String text, double minSeconds, double maxSeconds) {
+            double time = preview.getPlaybackTime();
+            if (time < minSeconds || (maxSeconds > 0 && time > maxSeconds)) {
+                return false;
+            }
+            if (text == null || text.isEmpty()) {
+                return true;
+            }
+            String query = text.toLowerCase();
+            return path.getFileName().toString().toLowerCase().contains(query)
+                || preview.getMapName().toLowerCase().contains(query)
+                || preview.getPlayerName().toLowerCase().contains(query)
+                || preview.getServerName().toLowerCase().contains(query);
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public long getModified() {
+            return modified;
+        }
+
+        public DemoPreview getPreview() {
+            return preview;
+        }
+    }
+}
@@ -0,0 +1,266 @@
+package util;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a {@link DemoIndex} up to date by watching the demo folders, so they only need a full scan once. Demos being
+ * recorded keep growing until the recording stops, so the events of a demo are grouped and its header is only read
+ * once its size and last modified time stay the same for {@link #QUIET_MILLIS}.
+ * <p>
+ * All the events are handled in a single thread, which also saves the index after it changes.
+ */
+public class DemoIndexWatcher {
+
+    /**
+     * Time a demo must stay unchanged before reading its header.
+     */
+    public static final long QUIET_MILLIS = 2000;
+    /**
+     * Time to wait for more changes before saving the index and notifying the listener.
+     */
+    private static final long SAVE_DELAY_MILLIS = 500;
+    private static final Logger log = Logger.getLogger("lawena");
+
+    private final DemoIndex index;
+    private final int parallelism;
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "DemoIndexWatcher");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<Path, Pending> pending = new HashMap<>();
+    private volatile Runnable changeListener = () -> {
+    };
+    private final List<WatchDir> watchers = new ArrayList<>();
+    private List<Path> roots = new ArrayList<>();
+    private int generation = 0;
+    private boolean saving = false;
+
+    /**
+     * @param index       the index to update
+     * @param parallelism the number of threads used to scan new folders
+     */
+    public DemoIndexWatcher(DemoIndex index, int parallelism) {
+        this.index = index;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @param changeListener called from the watcher thread after the index changed and was saved
+     */
+    public void setChangeListener(Runnable changeListener) {
+        this.changeListener = changeListener;
+    }
+
+    /**
+     * Start watching the given folders and their subfolders, except the ones skipped by {@link DemoIndex}. Each
+     * folder is watched by its own daemon thread. If the watcher was already started with different folders, it is
+     * stopped first, otherwise the call has no effect.
+     */
+    public synchronized void start(List<Path> folders) {
+        List<Path> newRoots = new ArrayList<>();
+        for (Path folder : folders) {
+            newRoots.add(folder.toAbsolutePath().normalize());
+        }
+        if (newRoots.equals(roots)) {
+            return;
+        }
+        stop();
+        roots = newRoots;
+        int current = generation;
+        for (Path root : roots) {
+            if (Files.isDirectory(root)) {
+                Thread thread = new Thread(() -> watch(root, current), "DemoWatcher");
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    /**
+     * Stop watching all folders. Threads still registering their folders stop as soon as they are done.
+     */
+    public synchronized void stop() {
+        generation++;
+        roots = new ArrayList<>();
+        for (WatchDir watcher : watchers) {
+            try {
+                watcher.close();
+            } catch (IOException e) {
+                log.fine("Could not close demo watcher: " + e);
+            }
+        }
+        watchers.clear();
+    }
+
+    private synchronized boolean register(WatchDir watcher, int started) throws IOException {
+        if (started != generation) {
+            watcher.close();
+            return false;
+        }
+        watchers.add(watcher);
+        return true;
+    }
+
+    private void watch(Path root, int started) {
+        try {
+            log.fine("Watching demos in " + root);
+            WatchDir watcher = new WatchDir(root, true) {
+
+                @Override
+                protected boolean accept(Path dir) {
+                    return !DemoIndex.isSkipped(dir);
+                }
+
+                @Override
+                protected void dispatch(Runnable handler) {
+                    scheduler.execute(handler);
+                }
+
+                @Override
+                public void entryCreated(Path child) {
+                    if (Files.isDirectory(child)) {
+                        rescan(child);
+                    } else {
+                        changed(child);
+                    }
+                }
+
+                @Override
+                public void entryModified(Path child) {
+                    changed(child);
+                }
+
+                @Override
+                public void entryDeleted(Path child) {
+                    deleted(child);
+                }
+
+                @Override
+                public void entriesLost(Path dir) {
+                    rescan(dir);
+                }
+            };
+            if (register(watcher, started)) {
+                watcher.processEvents();
+                log.fine("Stopped watching demos in " + root);
+            }
+        } catch (IOException e) {
+            log.info("Could not watch demos in " + root + ": " + e);
+        }
+    }
+
+    private static BasicFileAttributes stat(Path file) {
+        try {
+            return Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Restart the wait of a demo that was created or modified.
+     */
+    private void changed(Path file) {
+        if (!DemoIndex.isDemo(file)) {
+            return;
+        }
+        Pending last = pending.remove(file);
+        if (last != null) {
+            last.future.cancel(false);
+        }
+        schedule(file, stat(file));
+    }
+
+    private void schedule(Path file, BasicFileAttributes attrs) {
+        ScheduledFuture<?> future = scheduler.schedule(() -> settle(file), QUIET_MILLIS, TimeUnit.MILLISECONDS);
+        pending.put(file, new Pending(attrs, future));
+    }
+
+    /**
+     * Read the header of a demo if it did not change while waiting, otherwise wait again. A file can grow without
+     * raising events on some systems, so its attributes are compared too.
+     */
+    private void settle(Path file) {
+        Pending last = pending.get(file);
+        BasicFileAttributes attrs = stat(file);
+        if (attrs != null && last != null && !last.isSame(attrs)) {
+            schedule(file, attrs);
+            return;
+        }
+        pending.remove(file);
+        if (index.update(file)) {
+            indexChanged();
+        }
+    }
+
+    private void deleted(Path path) {
+        Pending last = pending.remove(path);
+        if (last != null) {
+            last.future.cancel(false);
+        }
+        if (DemoIndex.isDemo(path)) {
+            if (index.update(path)) {
+                indexChanged();
+            }
+        } else {
+            // might have been a folder with demos
+            rescan(path);
+        }
+    }
+
+    /**
+     * Scan a folder that was added, deleted or lost some events.
+     */
+    private void rescan(Path dir) {
+        if (DemoIndex.isSkipped(dir)) {
+            return;
+        }
+        int before = index.getEntries().size();
+        if (index.scan(dir, parallelism) > 0 || index.getEntries().size() != before) {
+            indexChanged();
+        }
+    }
+
+    private void indexChanged() {
+        if (!saving) {
+            saving = true;
+            scheduler.schedule(this::save, SAVE_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void save() {
+        saving = false;
+        try {
+            index.save();
+        } catch (IOException e) {
+            log.info("Could not save demo index: " + e);
+        }
+        changeListener.run();
+    }
+
+    private static class Pending {
+
+        private final BasicFileAttributes attrs;
+        private final ScheduledFuture<?> future;
+
+        Pending(BasicFileAttributes attrs, ScheduledFuture<?> future) {
+            this.attrs = attrs;
+            this.future = future;
+        }
+
+        boolean isSame(BasicFileAttributes other) {
+            return attrs != null && attrs.size() == other.size()
+                && attrs.lastModifiedTime().equals(other.lastModifiedTime());
+        }
+    }
+}
@@ -0,0 +1,801 @@
+package util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Finds the kills, killstreaks, chat lines and round boundaries of a TF2 demo, with the tick where each one happened.
+ * <p>
+ * The demo is read once from start to end through a fixed size buffer, so memory use does not depend on the size of
+ * the demo. Only the network messages needed to find the events are decoded: the game event list and game events, the
+ * chat user messages and the <code>userinfo</code> string table with the player names. Everything else, like entity
+ * updates, is skipped using the length stored in each message.
+ */
+public class DemoParser {
+
+    /**
+     * Number of kills without dying between each {@link DemoEvent.Type#KILLSTREAK} event.
+     */
+    public static final int KILLSTREAK_STEP = 5;
+
+    private static final Logger log = Logger.getLogger("lawena");
+    private static final Charset charset = Charset.forName("UTF-8");
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MAX_DATA_SIZE = 1 << 26;
+    // demo frame commands
+    private static final int DEM_SIGNON = 1;
+    private static final int DEM_PACKET = 2;
+    private static final int DEM_SYNCTICK = 3;
+    private static final int DEM_CONSOLECMD = 4;
+    private static final int DEM_USERCMD = 5;
+    private static final int DEM_DATATABLES = 6;
+    private static final int DEM_STOP = 7;
+    private static final int DEM_STRINGTABLES = 8;
+    /**
+     * Size of the view origin and angles, followed by the in and out sequence numbers, before each packet.
+     */
+    private static final int PACKET_INFO_SIZE = 76 + 8;
+    // network messages
+    private static final int MESSAGE_TYPE_BITS = 6;
+    private static final int NET_NOP = 0;
+    private static final int NET_DISCONNECT = 1;
+    private static final int NET_FILE = 2;
+    private static final int NET_TICK = 3;
+    private static final int NET_STRINGCMD = 4;
+    private static final int NET_SETCONVAR = 5;
+    private static final int NET_SIGNONSTATE = 6;
+    private static final int SVC_PRINT = 7;
+    private static final int SVC_SERVERINFO = 8;
+    private static final int SVC_SENDTABLE = 9;
+    private static final int SVC_CLASSINFO = 10;
+    private static final int SVC_SETPAUSE = 11;
+    private static final int SVC_CREATESTRINGTABLE = 12;
+    private static final int SVC_UPDATESTRINGTABLE = 13;
+    private static final int SVC_VOICEINIT = 14;
+    private static final int SVC_VOICEDATA = 15;
+    private static final int SVC_SOUNDS = 17;
+    private static final int SVC_SETVIEW = 18;
+    private static final int SVC_FIXANGLE = 19;
+    private static final int SVC_CROSSHAIRANGLE = 20;
+    private static final int SVC_BSPDECAL = 21;
+    private static final int SVC_USERMESSAGE = 23;
+    private static final int SVC_ENTITYMESSAGE = 24;
+    private static final int SVC_GAMEEVENT = 25;
+    private static final int SVC_PACKETENTITIES = 26;
+    private static final int SVC_TEMPENTITIES = 27;
+    private static final int SVC_PREFETCH = 28;
+    private static final int SVC_MENU = 29;
+    private static final int SVC_GAMEEVENTLIST = 30;
+    private static final int SVC_GETCVARVALUE = 31;
+    private static final int SVC_CMDKEYVALUES = 32;
+    private static final int USER_MESSAGE_SAYTEXT2 = 4;
+    private static final int DEATH_FLAG_FEIGN = 32;
+    private static final int HISTORY_SIZE = 32;
+    private static final Set<String> PARSED_EVENTS = new HashSet<>(Arrays.asList("player_death",
+        "teamplay_round_start", "teamplay_round_win", "teamplay_round_stalemate"));
+
+    private final Path demo;
+    private final List<StringTable> tables = new ArrayList<>();
+    private final Map<Integer, EventDescriptor> descriptors = new HashMap<>();
+    private final Map<Integer, String> playersByUserId = new HashMap<>();
+    private final Map<Integer, String> playersByEntity = new HashMap<>();
+    private final Map<Integer, Integer> streaks = new HashMap<>();
+    private Consumer<DemoEvent> listener;
+    private FileChannel channel;
+    private ByteBuffer buffer;
+    private byte[] data = new byte[BUFFER_SIZE];
+    private int tick;
+
+    public DemoParser(Path demo) {
+        this.demo = demo;
+    }
+
+    /**
+     * @return the events of the demo, in the order they happened
+     */
+    public List<DemoEvent> parse() throws IOException {
+        List<DemoEvent> events = new ArrayList<>();
+        parse(events::add);
+        return events;
+    }
+
+    /**
+     * Read the demo, passing each event to the listener as soon as it is found. A demo that ends without a stop
+     * command, like one still being recorded, is read up to its last complete frame.
+     *
+     * @param listener receives the events, in the order they happened
+     * @throws IOException if the demo could not be read or is not a valid demo
+     */
+    public synchronized void parse(Consumer<DemoEvent> listener) throws IOException {
+        this.listener = listener;
+        tables.clear();
+        descriptors.clear();
+        playersByUserId.clear();
+        playersByEntity.clear();
+        streaks.clear();
+        long start = System.nanoTime();
+        try (FileChannel channel = FileChannel.open(demo, StandardOpenOption.READ)) {
+            this.channel = channel;
+            buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.flip();
+            if (!fill(DemoPreviewFactory.HEADER_SIZE)) {
+                throw new IOException("Not a valid demo: " + demo);
+            }
+            byte[] stamp = new byte[8];
+            buffer.get(stamp);
+            if (!new String(stamp, 0, 7, charset).equals("HL2DEMO")) {
+                throw new IOException("Not a valid demo: " + demo);
+            }
+            skip(DemoPreviewFactory.HEADER_SIZE - stamp.length);
+            readFrames();
+        } catch (EOFException e) {
+            log.fine("Demo " + demo + " ended at tick " + tick + " without a stop command");
+        } finally {
+            this.channel = null;
+            this.buffer = null;
+            this.listener = null;
+        }
+        log.fine("Parsed demo " + demo + " up to tick " + tick + " in " + (System.nanoTime() - start) / 1000000
+            + " ms");
+    }
+
+    private void readFrames() throws IOException {
+        while (fill(5)) {
+            int command = buffer.get() & 0xff;
+            tick = buffer.getInt();
+            switch (command) {
+                case DEM_SIGNON:
+                case DEM_PACKET:
+                    skip(PACKET_INFO_SIZE);
+                    readPacket(readData());
+                    break;
+                case DEM_SYNCTICK:
+                    break;
+                case DEM_CONSOLECMD:
+                case DEM_DATATABLES:
+                    skip(readLength());
+                    break;
+                case DEM_USERCMD:
+                    skip(4);
+                    skip(readLength());
+                    break;
+                case DEM_STRINGTABLES:
+                    readStringTables(readData());
+                    break;
+                case DEM_STOP:
+                    return;
+                default:
+                    throw new IOException("Unknown demo command " + command + " at tick " + tick);
+            }
+        }
+    }
+
+    /**
+     * Make sure the buffer has some bytes left to read, refilling it from the file if needed.
+     *
+     * @return <code>false</code> if the file ends before
+     */
+    private boolean fill(int bytes) throws IOException {
+        if (buffer.remaining() >= bytes) {
+            return true;
+        }
+        buffer.compact();
+        while (buffer.position() < bytes && channel.read(buffer) > 0) {
+            // keep reading
+        }
+        buffer.flip();
+        return buffer.remaining() >= bytes;
+    }
+
+    private void skip(long bytes) throws IOException {
+        if (bytes <= buffer.remaining()) {
+            buffer.position(buffer.position() + (int) bytes);
+        } else {
+            long position = channel.position() + bytes - buffer.remaining();
+            if (position > channel.size()) {
+                throw new EOFException();
+            }
+            buffer.clear().flip();
+            channel.position(position);
+        }
+    }
+
+    private int readLength() throws IOException {
+        if (!fill(4)) {
+            throw new EOFException();
+        }
+        int length = buffer.getInt();
+        if (length < 0 || length > MAX_DATA_SIZE) {
+            throw new IOException("Invalid data length " + length + " at tick " + tick);
+        }
+        return length;
+    }
+
+    /**
+     * Read the data of a frame into the shared data array, which only grows as needed.
+     *
+     * @return the length of the data
+     */
+    private int readData() throws IOException {
+        int length = readLength();
+        if (length > data.length) {
+            data = new byte[Math.max(length, data.length * 2)];
+        }
+        int read = 0;
+        while (read < length) {
+            if (!fill(1)) {
+                throw new EOFException();
+            }
+            int count = Math.min(buffer.remaining(), length - read);
+            buffer.get(data, read, count);
+            read += count;
+        }
+        return length;
+    }
+
+    private void readPacket(int length) throws IOException {
+        BitReader in = new BitReader(data, length);
+        try {
+            while (in.remaining() >= MESSAGE_TYPE_BITS) {
+                int type = in.readBits(MESSAGE_TYPE_BITS);
+                if (!readMessage(type, in)) {
+                    log.finer("Unknown message " + type + " at tick " + tick + ", skipping the rest of the packet");
+                    return;
+                }
+            }
+        } catch (EOFException | RuntimeException e) {
+            log.finer("Invalid packet at tick " + tick + ": " + e);
+        }
+    }
+
+    /**
+     * @return <code>false</code> if the message type is unknown, so the rest of the packet can't be read
+     */
+    private boolean readMessage(int type, BitReader in) throws IOException {
+        switch (type) {
+            case NET_NOP:
+                break;
+            case NET_DISCONNECT:
+            case NET_STRINGCMD:
+            case SVC_PRINT:
+                in.readString();
+                break;
+            case NET_FILE:
+                in.skip(32);
+                in.readString();
+                in.skip(1);
+                break;
+            case NET_TICK:
+                in.skip(32 + 16 + 16);
+                break;
+            case NET_SETCONVAR:
+                for (int i = in.readBits(8); i > 0; i--) {
+                    in.readString();
+                    in.readString();
+                }
+                break;
+            case NET_SIGNONSTATE:
+                in.skip(8 + 32);
+                break;
+            case SVC_SERVERINFO:
+                // protocol, server count, hltv, dedicated, crc, max classes, map md5, player slot, max clients,
+                // tick interval and os
+                in.skip(16 + 32 + 1 + 1 + 32 + 16 + 128 + 8 + 8 + 32 + 8);
+                for (int i = 0; i < 4; i++) {
+                    in.readString();
+                }
+                in.skip(1);
+                break;
+            case SVC_SENDTABLE:
+                in.skip(1);
+                in.skip(in.readBits(16));
+                break;
+            case SVC_CLASSINFO: {
+                int count = in.readBits(16);
+                if (!in.readBoolean()) {
+                    int bits = log2(count) + 1;
+                    for (int i = 0; i < count; i++) {
+                        in.skip(bits);
+                        in.readString();
+                        in.readString();
+                    }
+                }
+                break;
+            }
+            case SVC_SETPAUSE:
+                in.skip(1);
+                break;
+            case SVC_CREATESTRINGTABLE:
+                readCreateStringTable(in);
+                break;
+            case SVC_UPDATESTRINGTABLE: {
+                int id = in.readBits(5);
+                int changed = in.readBoolean() ? in.readBits(16) : 1;
+                int length = in.readBits(20);
+                int end = in.position() + length;
+                if (id < tables.size() && tables.get(id).isPlayers()) {
+                    readEntries(tables.get(id), in, changed);
+                }
+                in.seek(end);
+                break;
+            }
+            case SVC_VOICEINIT:
+                in.readString();
+                if (in.readBits(8) == 255) {
+                    in.skip(16);
+                }
+                break;
+            case SVC_VOICEDATA:
+                in.skip(8 + 8);
+                in.skip(in.readBits(16));
+                break;
+            case SVC_SOUNDS:
+                if (in.readBoolean()) {
+                    in.skip(in.readBits(8));
+                } else {
+                    in.skip(8);
+                    in.skip(in.readBits(16));
+                }
+                break;
+            case SVC_SETVIEW:
+                in.skip(11);
+                break;
+            case SVC_FIXANGLE:
+                in.skip(1 + 3 * 16);
+                break;
+            case SVC_CROSSHAIRANGLE:
+                in.skip(3 * 16);
+                break;
+            case SVC_BSPDECAL:
+                skipCoordinates(in);
+                in.skip(9);
+                if (in.readBoolean()) {
+                    in.skip(11 + 12);
+                }
+                in.skip(1);
+                break;
+            case SVC_USERMESSAGE: {
+                int userMessage = in.readBits(8);
+                int length = in.readBits(11);
+                int end = in.position() + length;
+                if (userMessage == USER_MESSAGE_SAYTEXT2) {
+                    readChat(in);
+                }
+                in.seek(end);
+                break;
+            }
+            case SVC_ENTITYMESSAGE:
+                in.skip(11 + 9);
+                in.skip(in.readBits(11));
+                break;
+            case SVC_GAMEEVENT: {
+                int length = in.readBits(11);
+                int end = in.position() + length;
+                readGameEvent(in);
+                in.seek(end);
+                break;
+            }
+            case SVC_PACKETENTITIES: {
+                in.skip(11);
+                if (in.readBoolean()) {
+                    in.skip(32);
+                }
+                in.skip(1 + 11);
+                int length = in.readBits(20);
+                in.skip(1 + length);
+                break;
+            }
+            case SVC_TEMPENTITIES:
+                in.skip(8);
+                in.skip(in.readVarInt());
+                break;
+            case SVC_PREFETCH:
+                in.skip(14);
+                break;
+            case SVC_MENU:
+                in.skip(16);
+                in.skip(in.readBits(16) * 8);
+                break;
+            case SVC_GAMEEVENTLIST:
+                readGameEventList(in);
+                break;
+            case SVC_GETCVARVALUE:
+                in.skip(32);
+                in.readString();
+                break;
+            case SVC_CMDKEYVALUES:
+                in.skip(in.readBits(32) * 8);
+                break;
+            default:
+                return false;
+        }
+        return true;
+    }
+
+    private static int log2(int value) {
+        int result = 0;
+        while ((value >>= 1) != 0) {
+            result++;
+        }
+        return result;
+    }
+
+    private static void skipCoordinates(BitReader in) throws EOFException {
+        int flags = in.readBits(3);
+        for (int i = 0; i < 3; i++) {
+            if ((flags & (1 << i)) != 0) {
+                boolean integer = in.readBoolean();
+                boolean fraction = in.readBoolean();
+                if (integer || fraction) {
+                    in.skip(1 + (integer ? 14 : 0) + (fraction ? 5 : 0));
+                }
+            }
+        }
+    }
+
+    private void readCreateStringTable(BitReader in) throws IOException {
+        if (in.peekBits(8) == ':') {
+            in.skip(8);
+        }
+        String name = in.readString();
+        int maxEntries = in.readBits(16);
+        int entries = in.readBits(log2(maxEntries) + 1);
+        int length = in.readVarInt();
+        boolean fixedSize = in.readBoolean();
+        int userDataBits = 0;
+        if (fixedSize) {
+            in.skip(12);
+            userDataBits = in.readBits(4);
+        }
+        boolean compressed = in.readBoolean();
+        StringTable table = new StringTable(name, maxEntries, fixedSize, userDataBits);
+        tables.add(table);
+        int end = in.position() + length;
+        if (table.isPlayers()) {
+            if (compressed) {
+                in.skip(32);
+                int size = in.readBits(32);
+                byte[] magic = in.readBytes(4);
+                if (size < 4 || !new String(magic, charset).equals("SNAP")) {
+                    log.fine("Unknown string table compression at tick " + tick);
+                } else {
+                    byte[] uncompressed = uncompress(in.readBytes(size - 4));
+                    readEntries(table, new BitReader(uncompressed, uncompressed.length), entries);
+                }
+            } else {
+                readEntries(table, in, entries);
+            }
+        }
+        in.seek(end);
+    }
+
+    /**
+     * Read the changed entries of a string table, where each string can reuse the start of one of the last strings.
+     */
+    private void readEntries(StringTable table, BitReader in, int count) throws EOFException {
+        int entryBits = log2(table.maxEntries);
+        List<String> history = new ArrayList<>(HISTORY_SIZE);
+        int index = -1;
+        for (int i = 0; i < count; i++) {
+            index = in.readBoolean() ? index + 1 : in.readBits(entryBits);
+            String text = null;
+            if (in.readBoolean()) {
+                if (in.readBoolean()) {
+                    String previous = history.get(in.readBits(5));
+                    int length = Math.min(in.readBits(5), previous.length());
+                    text = previous.substring(0, length) + in.readString();
+                } else {
+                    text = in.readString();
+                }
+            }
+            if (in.readBoolean()) {
+                if (table.fixedSize) {
+                    in.skip(table.userDataBits);
+                } else {
+                    updatePlayer(index, in.readBytes(in.readBits(14)));
+                }
+            }
+            while (table.strings.size() <= index) {
+                table.strings.add("");
+            }
+            if (text == null || index < table.stringCount) {
+                text = table.strings.get(index);
+            } else {
+                table.strings.set(index, text);
+            }
+            table.stringCount = Math.max(table.stringCount, index + 1);
+            if (history.size() == HISTORY_SIZE) {
+                history.remove(0);
+            }
+            history.add(text);
+        }
+    }
+
+    /**
+     * Read the snapshot of all string tables, stored at the start of the demo.
+     */
+    private void readStringTables(int length) throws IOException {
+        BitReader in = new BitReader(data, length);
+        try {
+            for (int tableCount = in.readBits(8); tableCount > 0; tableCount--) {
+                boolean players = in.readString().equals(StringTable.PLAYERS);
+                for (int i = 0, count = in.readBits(16); i < count; i++) {
+                    in.readString();
+                    if (in.readBoolean()) {
+                        byte[] userData = in.readBytes(in.readBits(16));
+                        if (players) {
+                            updatePlayer(i, userData);
+                        }
+                    }
+                }
+                if (in.readBoolean()) {
+                    for (int count = in.readBits(16); count > 0; count--) {
+                        in.readString();
+                        if (in.readBoolean()) {
+                            in.skip(in.readBits(16) * 8);
+                        }
+                    }
+                }
+            }
+        } catch (EOFException | RuntimeException e) {
+            log.finer("Invalid string tables at tick " + tick + ": " + e);
+        }
+    }
+
+    /**
+     * Keep the name of a player from the <code>player_info_t</code> structure stored in the <code>userinfo</code>
+     * table, with the name in the first 32 bytes followed by the user id.
+     */
+    private void updatePlayer(int index, byte[] userData) {
+        if (userData.length < 36) {
+            return;
+        }
+        int length = 0;
+        while (length < 32 && userData[length] != 0) {
+            length++;
+        }
+        String name = new String(userData, 0, length, charset);
+        int userId = ByteBuffer.wrap(userData, 32, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        playersByUserId.put(userId, name);
+        playersByEntity.put(index + 1, name);
+    }
+
+    private void readGameEventList(BitReader in) throws EOFException {
+        int count = in.readBits(9);
+        int length = in.readBits(20);
+        int end = in.position() + length;
+        descriptors.clear();
+        for (int i = 0; i < count; i++) {
+            int id = in.readBits(9);
+            EventDescriptor descriptor = new EventDescriptor(in.readString());
+            for (int type = in.readBits(3); type != 0; type = in.readBits(3)) {
+                descriptor.types.add(type);
+                descriptor.keys.add(in.readString());
+            }
+            descriptors.put(id, descriptor);
+        }
+        in.seek(end);
+    }
+
+    private void readGameEvent(BitReader in) throws EOFException {
+        EventDescriptor descriptor = descriptors.get(in.readBits(9));
+        if (descriptor == null || !PARSED_EVENTS.contains(descriptor.name)) {
+            return;
+        }
+        Map<String, Object> values = new HashMap<>();
+        for (int i = 0; i < descriptor.keys.size(); i++) {
+            Object value;
+            switch (descriptor.types.get(i)) {
+                case 1:
+                    value = in.readString();
+                    break;
+                case 2:
+                    value = in.readFloat();
+                    break;
+                case 3:
+                    value = in.readBits(32);
+                    break;
+                case 4:
+                    value = (int) (short) in.readBits(16);
+                    break;
+                case 5:
+                    value = in.readBits(8);
+                    break;
+                case 6:
+                    value = in.readBoolean() ? 1 : 0;
+                    break;
+                default:
+                    // local values are not networked
+                    continue;
+            }
+            values.put(descriptor.keys.get(i), value);
+        }
+        switch (descriptor.name) {
+            case "player_death":
+                playerDeath(values);
+                break;
+            case "teamplay_round_start":
+                emit(DemoEvent.Type.ROUND_START, null, null, null, 0);
+                break;
+            case "teamplay_round_win":
+                emit(DemoEvent.Type.ROUND_END, null, null, teamName(getInt(values, "team")), 0);
+                break;
+            case "teamplay_round_stalemate":
+                emit(DemoEvent.Type.ROUND_END, null, null, teamName(0), 0);
+                break;
+        }
+    }
+
+    private static int getInt(Map<String, Object> values, String key) {
+        Object value = values.get(key);
+        return value instanceof Number ? ((Number) value).intValue() : 0;
+    }
+
+    private static String teamName(int team) {
+        switch (team) {
+            case 2:
+                return "RED";
+            case 3:
+                return "BLU";
+            default:
+                return "Stalemate";
+        }
+    }
+
+    private String getPlayer(int userId) {
+        return playersByUserId.getOrDefault(userId, "#" + userId);
+    }
+
+    private void playerDeath(Map<String, Object> values) {
+        int victim = getInt(values, "userid");
+        int attacker = getInt(values, "attacker");
+        Object weapon = values.get("weapon");
+        if ((getInt(values, "death_flags") & DEATH_FLAG_FEIGN) == 0) {
+            streaks.remove(victim);
+        }
+        if (attacker == 0 || attacker == victim) {
+            emit(DemoEvent.Type.DEATH, null, getPlayer(victim), (String) weapon, 0);
+            return;
+        }
+        String killer = getPlayer(attacker);
+        emit(DemoEvent.Type.DEATH, killer, getPlayer(victim), (String) weapon, 0);
+        int streak = streaks.merge(attacker, 1, Integer::sum);
+        if (streak % KILLSTREAK_STEP == 0) {
+            emit(DemoEvent.Type.KILLSTREAK, killer, null, null, streak);
+        }
+    }
+
+    /**
+     * Read a <code>SayText2</code> user message, either a chat line with the player name and text as parameters or
+     * an already formatted line.
+     */
+    private void readChat(BitReader in) throws EOFException {
+        int client = in.readBits(8);
+        in.skip(8);
+        String first = in.readString();
+        if (first.startsWith("TF_Chat")) {
+            String player = in.readString();
+            emit(DemoEvent.Type.CHAT, player, null, in.readString(), 0);
+        } else {
+            emit(DemoEvent.Type.CHAT, playersByEntity.get(client), null, first.replaceAll("\\p{Cntrl}", ""), 0);
+        }
+    }
+
+    private void emit(DemoEvent.Type type, String player, String target, String text, int count) {
+        listener.accept(new DemoEvent(type, tick, player, target, text, count));
+    }
+
+    /**
+     * Uncompress a block in the Snappy raw format, used by the string tables of newer demos.
+     */
+    static byte[] uncompress(byte[] in) throws EOFException {
+        int position = 0;
+        int size = 0;
+        for (int shift = 0; ; shift += 7) {
+            if (position >= in.length || shift > 28) {
+                throw new EOFException("Invalid compressed size");
+            }
+            int b = in[position++] & 0xff;
+            size |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        byte[] out = new byte[size];
+        int written = 0;
+        try {
+            while (position < in.length) {
+                int tag = in[position++] & 0xff;
+                int length;
+                int offset;
+                switch (tag & 3) {
+                    case 0:
+                        length = tag >>> 2;
+                        if (length >= 60) {
+                            int bytes = length - 59;
+                            length = 0;
+                            for (int i = 0; i < bytes; i++) {
+                                length |= (in[position++] & 0xff) << (8 * i);
+                            }
+                        }
+                        length++;
+                        System.arraycopy(in, position, out, written, length);
+                        position += length;
+                        written += length;
+                        continue;
+                    case 1:
+                        length = 4 + ((tag >>> 2) & 7);
+                        offset = ((tag >>> 5) << 8) | (in[position++] & 0xff);
+                        break;
+                    case 2:
+                        length = (tag >>> 2) + 1;
+                        offset = (in[position] & 0xff) | (in[position + 1] & 0xff) << 8;
+                        position += 2;
+                        break;
+                    default:
+                        length = (tag >>> 2) + 1;
+                        offset = ByteBuffer.wrap(in, position, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+                        position += 4;
+                        break;
+                }
+                if (offset <= 0 || offset > written) {
+                    throw new EOFException("Invalid compressed copy offset " + offset);
+                }
+                // copies can overlap their own output, so go byte by byte
+                for (int i = 0; i < length; i++) {
+                    out[written] = out[written - offset];
+                    written++;
+                }
+            }
+        } catch (IndexOutOfBoundsException e) {
+            throw new EOFException("Truncated compressed data");
+        }
+        if (written != size) {
+            throw new EOFException("Compressed data ends after " + written + " of " + size + " bytes");
+        }
+        return out;
+    }
+
+    private static class StringTable {
+
+        static final String PLAYERS = "userinfo";
+
+        private final String name;
+        private final int maxEntries;
+        private final boolean fixedSize;
+        private final int userDataBits;
+        private final List<String> strings = new ArrayList<>();
+        private int stringCount = 0;
+
+        StringTable(String name, int maxEntries, boolean fixedSize, int userDataBits) {
+            this.name = name;
+            this.maxEntries = maxEntries;
+            this.fixedSize = fixedSize;
+            this.userDataBits = userDataBits;
+        }
+
+        boolean isPlayers() {
+            return name.equals(PLAYERS);
+        }
+    }
+
+    private static class EventDescriptor {
+
+        private final String name;
+        private final List<Integer> types = new ArrayList<>();
+        private final List<String> keys = new ArrayList<>();
+
+        EventDescriptor(String name) {
+            this.name = name;
+        }
+    }
+}
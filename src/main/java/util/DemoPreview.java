@@ -87,7 +87,8 @@ public class DemoPreview {
         this.tickNumber = tickNumber;
         this.frames = frames;
         this.signOnLength = signOnLength;
-        this.tickRate = Math.round(tickNumber / Math.round(playbackTime));
+        long seconds = Math.round(playbackTime);
+        this.tickRate = seconds > 0 ? (int) (tickNumber / seconds) : 0;
     }
 
     private String formatSeconds(double seconds) {
@@ -1,9 +1,13 @@
 package util;
 
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -12,65 +16,62 @@ public class DemoPreviewFactory {
     private static final Logger log = Logger.getLogger("lawena");
     private static final String n = System.getProperty("line.separator");
 
+    /**
+     * Size of the demo header: stamp, two protocol versions, four strings, the playback time and three counters.
+     */
+    public static final int HEADER_SIZE = 8 + 4 + 4 + 4 * DemoPreview.maxStringLength + 4 + 4 + 4 + 4;
+
     public static DemoPreview getDemoPreview(Path demoPath) throws Exception {
-        try (RandomAccessFile dp = new RandomAccessFile(demoPath.toString(), "r")) {
-            return new DemoPreview(
-                readString(8, dp),
-                readIntBackwards(dp),
-                readIntBackwards(dp),
-                readString(DemoPreview.maxStringLength, dp),
-                readString(DemoPreview.maxStringLength, dp),
-                readString(DemoPreview.maxStringLength, dp),
-                readString(DemoPreview.maxStringLength, dp),
-                readFloatBackwards(dp),
-                readIntBackwards(dp),
-                readIntBackwards(dp),
-                readIntBackwards(dp));
+        try {
+            return readHeader(demoPath);
         } catch (Exception e) {
             log.log(Level.FINE, "Could not retrieve demo details", e);
             throw e;
         }
     }
 
-    private static String readString(int length, RandomAccessFile r) {
-        byte[] aux = new byte[length];
-        try {
-            r.read(aux);
-            String result = new String(aux, Charset.forName("UTF-8"));
-            return result.substring(0, result.indexOf(0));
-        } catch (IOException e) {
-            log.warning("Error while reading demo info: " + e);
-        }
-        return null;
-    }
-
-    private static float readFloatBackwards(RandomAccessFile r) {
-        byte[] aux = new byte[4];
-        try {
-            r.read(aux);
-            int value = 0;
-            for (int i = 0; i < aux.length; i++) {
-                value += (aux[i] & 0xff) << (8 * i);
+    /**
+     * Read the header of a demo file with a single positional read of {@link #HEADER_SIZE} bytes.
+     *
+     * @param demoPath the demo file
+     * @return the details stored in the header
+     * @throws IOException if the file could not be read, is too short or is not a demo
+     */
+    public static DemoPreview readHeader(Path demoPath) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(demoPath, StandardOpenOption.READ)) {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, buffer.position()) < 0) {
+                    throw new EOFException("Demo file is too short: " + demoPath);
+                }
             }
-            return Float.intBitsToFloat(value);
-        } catch (IOException e) {
-            log.warning("Error while reading demo info: " + e);
         }
-        return 0;
+        buffer.flip();
+        String stamp = readString(8, buffer);
+        if (!stamp.equals("HL2DEMO")) {
+            throw new IOException("Not a demo file: " + demoPath);
+        }
+        return new DemoPreview(
+            stamp,
+            buffer.getInt(),
+            buffer.getInt(),
+            readString(DemoPreview.maxStringLength, buffer),
+            readString(DemoPreview.maxStringLength, buffer),
+            readString(DemoPreview.maxStringLength, buffer),
+            readString(DemoPreview.maxStringLength, buffer),
+            buffer.getFloat(),
+            buffer.getInt(),
+            buffer.getInt(),
+            buffer.getInt());
     }
 
-    private static int readIntBackwards(RandomAccessFile r) {
-        byte[] aux = new byte[4];
-        try {
-            r.read(aux);
-            int value = 0;
-            for (int i = 0; i < aux.length; i++) {
-                value += (aux[i] & 0xff) << (8 * i);
-            }
-            return value;
-        } catch (IOException e) {
-            log.warning("Error while reading demo info: " + e);
+    private static String readString(int length, ByteBuffer buffer) {
+        byte[] aux = new byte[length];
+        buffer.get(aux);
+        int end = 0;
+        while (end < length && aux[end] != 0) {
+            end++;
         }
-        return 0;
+        return new String(aux, 0, end, Charset.forName("UTF-8"));
     }
 }
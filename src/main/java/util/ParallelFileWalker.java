@@ -0,0 +1,260 @@
+package util;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.FileVisitor;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
+
+/**
+ * Walks a file tree like {@link Files#walkFileTree(Path, FileVisitor)} but visits it using a limited number of
+ * threads. Each directory is a task that is split among idle threads by work stealing, and the files of a directory
+ * are visited in batches so folders with many files are also shared.
+ * <p>
+ * The visitor must be safe to call from several threads. The contract of {@link FileVisitor} is kept for each
+ * directory: <code>preVisitDirectory</code> is called before anything inside it is visited and
+ * <code>postVisitDirectory</code> after everything inside it was visited, but there is no ordering between siblings.
+ * Symbolic links are not followed. The first exception thrown by the visitor stops the walk and is rethrown once all
+ * running tasks are finished.
+ */
+public class ParallelFileWalker {
+
+    private static final int BATCH_SIZE = 16;
+
+    private final int parallelism;
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong directories = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicReference<IOException> failure = new AtomicReference<>();
+    private volatile boolean terminated;
+    private FileVisitor<? super Path> visitor;
+    private LongConsumer listener;
+
+    /**
+     * @param parallelism the maximum number of files that are visited at the same time
+     */
+    public ParallelFileWalker(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * @param listener receives the size of each file after it's visited, from the thread that visited it
+     * @return this walker
+     */
+    public ParallelFileWalker setProgressListener(LongConsumer listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * Walk a file tree. Only one tree can be walked at a time by each instance.
+     *
+     * @param start   the file or folder to start from
+     * @param visitor the visitor to call for each file
+     * @return the number of files, folders and bytes that were visited
+     * @throws IOException if the visitor threw an exception, or the start file could not be read
+     */
+    public synchronized Stats walk(Path start, FileVisitor<? super Path> visitor) throws IOException {
+        this.visitor = visitor;
+        files.set(0);
+        directories.set(0);
+        bytes.set(0);
+        failure.set(null);
+        terminated = false;
+        long begin = System.nanoTime();
+        BasicFileAttributes attrs = Files.readAttributes(start, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (attrs.isDirectory()) {
+            ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                pool.invoke(new DirectoryTask(start, attrs));
+            } finally {
+                pool.shutdown();
+            }
+        } else {
+            visitFile(start, attrs);
+        }
+        IOException e = failure.get();
+        if (e != null) {
+            throw e;
+        }
+        return new Stats(files.get(), directories.get(), bytes.get(), System.nanoTime() - begin, parallelism);
+    }
+
+    private boolean isStopped() {
+        return terminated || failure.get() != null;
+    }
+
+    private void fail(IOException e) {
+        failure.compareAndSet(null, e);
+    }
+
+    private void handle(FileVisitResult result) {
+        if (result == FileVisitResult.TERMINATE) {
+            terminated = true;
+        }
+    }
+
+    private void visitFile(Path file, BasicFileAttributes attrs) {
+        try {
+            handle(visitor.visitFile(file, attrs));
+            files.incrementAndGet();
+            bytes.addAndGet(attrs.size());
+            if (listener != null) {
+                listener.accept(attrs.size());
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    private void visitFileFailed(Path file, IOException exc) {
+        try {
+            handle(visitor.visitFileFailed(file, exc));
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    public static class Stats {
+
+        private final long files;
+        private final long directories;
+        private final long bytes;
+        private final long nanos;
+        private final int parallelism;
+
+        Stats(long files, long directories, long bytes, long nanos, int parallelism) {
+            this.files = files;
+            this.directories = directories;
+            this.bytes = bytes;
+            this.nanos = nanos;
+            this.parallelism = parallelism;
+        }
+
+        public long getFiles() {
+            return files;
+        }
+
+        public long getDirectories() {
+            return directories;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+
+        @Override
+        public String toString() {
+            double seconds = Math.max(nanos, 1) / 1e9;
+            return String.format("%d files, %d folders, %.1f MB in %d ms (%.1f MB/s, %d files/s, %d threads)", files,
+                directories, bytes / 1048576.0, getMillis(), bytes / 1048576.0 / seconds, (long) (files / seconds),
+                parallelism);
+        }
+    }
+
+    private class DirectoryTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final BasicFileAttributes attrs;
+
+        DirectoryTask(Path dir, BasicFileAttributes attrs) {
+            this.dir = dir;
+            this.attrs = attrs;
+        }
+
+        @Override
+        protected void compute() {
+            if (isStopped()) {
+                return;
+            }
+            try {
+                FileVisitResult result = visitor.preVisitDirectory(dir, attrs);
+                handle(result);
+                if (result != FileVisitResult.CONTINUE) {
+                    return;
+                }
+            } catch (IOException e) {
+                fail(e);
+                return;
+            }
+            directories.incrementAndGet();
+            List<RecursiveAction> tasks = new ArrayList<>();
+            List<Path> batch = new ArrayList<>();
+            List<BasicFileAttributes> batchAttrs = new ArrayList<>();
+            IOException exc = null;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path entry : stream) {
+                    BasicFileAttributes entryAttrs;
+                    try {
+                        entryAttrs = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        visitFileFailed(entry, e);
+                        continue;
+                    }
+                    if (entryAttrs.isDirectory()) {
+                        tasks.add(new DirectoryTask(entry, entryAttrs));
+                    } else {
+                        batch.add(entry);
+                        batchAttrs.add(entryAttrs);
+                        if (batch.size() == BATCH_SIZE) {
+                            tasks.add(new FileBatchTask(batch, batchAttrs));
+                            batch = new ArrayList<>();
+                            batchAttrs = new ArrayList<>();
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                exc = e;
+            }
+            if (!batch.isEmpty()) {
+                tasks.add(new FileBatchTask(batch, batchAttrs));
+            }
+            invokeAll(tasks);
+            if (isStopped()) {
+                return;
+            }
+            try {
+                handle(visitor.postVisitDirectory(dir, exc));
+            } catch (IOException e) {
+                fail(e);
+            }
+        }
+    }
+
+    private class FileBatchTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<Path> files;
+        private final List<BasicFileAttributes> attrs;
+
+        FileBatchTask(List<Path> files, List<BasicFileAttributes> attrs) {
+            this.files = files;
+            this.attrs = attrs;
+        }
+
+        @Override
+        protected void compute() {
+            for (int i = 0; i < files.size() && !isStopped(); i++) {
+                visitFile(files.get(i), attrs.get(i));
+            }
+        }
+    }
+}
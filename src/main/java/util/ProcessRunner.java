@@ -0,0 +1,263 @@
+package util;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs an external command, reading its output and error streams in background threads so it never blocks on a
+ * full pipe, and waiting for it to finish up to a timeout, after which it's destroyed. Commands can run in the calling
+ * thread with {@link #run()} or concurrently with {@link #start()}. Interrupting the waiting thread, or cancelling
+ * the returned future, also destroys the process.
+ * <p>
+ * The exit code and duration of every command are logged and added to per-command metrics, available from {@link
+ * #getMetrics()}.
+ */
+public class ProcessRunner {
+
+    private static final Logger log = Logger.getLogger("lawena");
+    private static final Charset charset = Charset.forName("UTF-8");
+    private static final long DRAIN_MILLIS = 1000;
+    private static final ExecutorService executor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "process-runner");
+        t.setDaemon(true);
+        return t;
+    });
+    private static final Map<String, Metrics> metrics = new ConcurrentHashMap<>();
+
+    private final ProcessBuilder builder;
+    private final String name;
+    private long timeoutMillis;
+    private Consumer<String> outputListener;
+
+    /**
+     * @param builder the command to run, its working directory and environment
+     */
+    public ProcessRunner(ProcessBuilder builder) {
+        this.builder = builder;
+        this.name = nameOf(builder.command());
+    }
+
+    public ProcessRunner(String... command) {
+        this(new ProcessBuilder(command));
+    }
+
+    private static String nameOf(List<String> command) {
+        if (command.isEmpty()) {
+            return "";
+        }
+        String name = command.get(0).replace('\\', '/');
+        name = name.substring(name.lastIndexOf('/') + 1);
+        int dot = name.lastIndexOf('.');
+        return dot > 0 ? name.substring(0, dot) : name;
+    }
+
+    /**
+     * @param timeoutMillis the maximum time the command can run before it's destroyed, or <code>0</code> to wait
+     *                      for it forever
+     * @return this runner
+     */
+    public ProcessRunner timeout(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        return this;
+    }
+
+    /**
+     * @param listener receives each line of the standard output as soon as it's read, from a background thread
+     * @return this runner
+     */
+    public ProcessRunner onOutput(Consumer<String> listener) {
+        this.outputListener = listener;
+        return this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Run the command in the calling thread.
+     *
+     * @return the exit code and output of the command
+     * @throws IOException          if the command could not be started
+     * @throws InterruptedException if the thread was interrupted while waiting, in which case the process is
+     *                              destroyed
+     */
+    public Result run() throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        Process process = builder.start();
+        List<String> output = Collections.synchronizedList(new ArrayList<>());
+        List<String> errors = Collections.synchronizedList(new ArrayList<>());
+        Future<?> out = executor.submit(() -> drain(process.getInputStream(), output, outputListener));
+        Future<?> err = executor.submit(() -> drain(process.getErrorStream(), errors, null));
+        boolean timedOut = false;
+        try {
+            if (timeoutMillis > 0) {
+                timedOut = !process.waitFor(timeoutMillis, TimeUnit.MILLISECONDS);
+            } else {
+                process.waitFor();
+            }
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            log.fine("[" + name + "] Cancelled, process destroyed");
+            record(-1, start, false);
+            throw e;
+        }
+        if (timedOut) {
+            process.destroyForcibly();
+            process.waitFor(DRAIN_MILLIS, TimeUnit.MILLISECONDS);
+            log.warning("[" + name + "] Timed out after " + timeoutMillis + " ms, process destroyed: "
+                + builder.command());
+        }
+        // the streams can stay open if the command left child processes behind
+        await(out);
+        await(err);
+        int code = timedOut ? -1 : process.exitValue();
+        long millis = record(code, start, timedOut);
+        for (String line : errors) {
+            log.fine("[" + name + "] " + line);
+        }
+        log.finer("[" + name + "] Exited with code " + code + " in " + millis + " ms");
+        return new Result(code, millis, timedOut, output, errors);
+    }
+
+    /**
+     * Run the command in a background thread, so independent commands can run at the same time.
+     *
+     * @return a future with the result of the command, which destroys the process if cancelled
+     */
+    public Future<Result> start() {
+        return executor.submit(this::run);
+    }
+
+    private static void drain(InputStream in, List<String> lines, Consumer<String> listener) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, charset))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+                if (listener != null) {
+                    listener.accept(line);
+                }
+            }
+        } catch (IOException e) {
+            log.finest("Process stream closed: " + e);
+        }
+    }
+
+    private static void await(Future<?> future) throws InterruptedException {
+        try {
+            future.get(DRAIN_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException e) {
+            log.log(Level.FINE, "Could not read process output", e.getCause());
+        } catch (TimeoutException e) {
+            future.cancel(true);
+        }
+    }
+
+    private long record(int code, long start, boolean timedOut) {
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        metrics.computeIfAbsent(name, k -> new Metrics()).add(code, millis, timedOut);
+        return millis;
+    }
+
+    /**
+     * @return the metrics of every command run so far, by command name
+     */
+    public static Map<String, Metrics> getMetrics() {
+        return new TreeMap<>(metrics);
+    }
+
+    public static class Result {
+
+        private final int exitCode;
+        private final long millis;
+        private final boolean timedOut;
+        private final List<String> output;
+        private final List<String> errors;
+
+        Result(int exitCode, long millis, boolean timedOut, List<String> output, List<String> errors) {
+            this.exitCode = exitCode;
+            this.millis = millis;
+            this.timedOut = timedOut;
+            this.output = output;
+            this.errors = errors;
+        }
+
+        /**
+         * @return the exit code of the process, or <code>-1</code> if it timed out
+         */
+        public int getExitCode() {
+            return exitCode;
+        }
+
+        public long getMillis() {
+            return millis;
+        }
+
+        public boolean isTimedOut() {
+            return timedOut;
+        }
+
+        public List<String> getOutput() {
+            return output;
+        }
+
+        public List<String> getErrors() {
+            return errors;
+        }
+    }
+
+    public static class Metrics {
+
+        private int count;
+        private int failures;
+        private int timeouts;
+        private long totalMillis;
+        private long maxMillis;
+
+        synchronized void add(int code, long millis, boolean timedOut) {
+            count++;
+            if (code != 0) {
+                failures++;
+            }
+            if (timedOut) {
+                timeouts++;
+            }
+            totalMillis += millis;
+            maxMillis = Math.max(maxMillis, millis);
+        }
+
+        public synchronized int getCount() {
+            return count;
+        }
+
+        public synchronized int getFailures() {
+            return failures;
+        }
+
+        public synchronized int getTimeouts() {
+            return timeouts;
+        }
+
+        public synchronized long getTotalMillis() {
+            return totalMillis;
+        }
+
+        @Override
+        public synchronized String toString() {
+            return count + " runs, " + failures + " failed, " + timeouts + " timed out, " + totalMillis + " ms total, "
+                + maxMillis + " ms max";
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package util;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stores small thumbnails of image files on disk so they don't have to be decoded and scaled again. A thumbnail is
+ * only valid while the size and last modified time of its source file stay the same, since both are part of the name
+ * of the thumbnail file.
+ */
+public class ThumbnailCache {
+
+    private static final Logger log = Logger.getLogger("lawena");
+
+    private final Path dir;
+    private final int size;
+
+    /**
+     * @param dir  the folder where thumbnails are stored, created when the first thumbnail is saved
+     * @param size the width and height of the thumbnails
+     */
+    public ThumbnailCache(Path dir, int size) {
+        this.dir = dir;
+        this.size = size;
+    }
+
+    /**
+     * Downscale an image in successive steps of at most half its size using bilinear interpolation, which is much
+     * faster than {@link Image#getScaledInstance(int, int, int)} while giving comparable quality.
+     *
+     * @param source the image to scale
+     * @param width  the target width
+     * @param height the target height
+     * @return the scaled image, without transparency
+     */
+    public static BufferedImage downscale(BufferedImage source, int width, int height) {
+        BufferedImage image = source;
+        int w = source.getWidth();
+        int h = source.getHeight();
+        do {
+            w = Math.max(width, w / 2);
+            h = Math.max(height, h / 2);
+            BufferedImage step = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = step.createGraphics();
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, w, h, null);
+            g.dispose();
+            image = step;
+        } while (w != width || h != height);
+        return image;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    private String prefixOf(Path source) {
+        return source.getFileName() + "." + size + ".";
+    }
+
+    private Path thumbnailOf(Path source) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(source, BasicFileAttributes.class);
+        return dir.resolve(prefixOf(source) + Long.toHexString(attrs.size()) + "."
+            + Long.toHexString(attrs.lastModifiedTime().toMillis()) + ".png");
+    }
+
+    /**
+     * Retrieve the thumbnail of a file, only if it was stored while the file had its current size and modified time.
+     *
+     * @param source the file the thumbnail was generated from
+     * @return the cached thumbnail or <code>null</code> if there is none for the current version of the file
+     */
+    public BufferedImage get(Path source) {
+        try {
+            Path thumbnail = thumbnailOf(source);
+            if (Files.exists(thumbnail)) {
+                return ImageIO.read(thumbnail.toFile());
+            }
+        } catch (IOException e) {
+            log.log(Level.FINER, "Could not read cached thumbnail of " + source, e);
+        }
+        return null;
+    }
+
+    /**
+     * Store the thumbnail of a file, replacing the thumbnails of previous versions of it.
+     *
+     * @param source    the file the thumbnail was generated from
+     * @param thumbnail the thumbnail to store
+     */
+    public void put(Path source, BufferedImage thumbnail) {
+        try {
+            Files.createDirectories(dir);
+            Path target = thumbnailOf(source);
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, prefixOf(source) + "*.png")) {
+                for (Path old : stream) {
+                    if (!old.equals(target)) {
+                        Files.deleteIfExists(old);
+                    }
+                }
+            }
+            Path temp = Files.createTempFile(dir, prefixOf(source), ".tmp");
+            try {
+                ImageIO.write(thumbnail, "png", temp.toFile());
+                Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+        } catch (IOException e) {
+            log.log(Level.FINE, "Could not save thumbnail of " + source, e);
+        }
+    }
+}
@@ -19,6 +19,10 @@ import java.util.logging.Logger;
 public class Util {
 
     private static final Logger log = Logger.getLogger("lawena");
+    /**
+     * Maximum time a helper command run by {@link #startProcess(List)} can take before it's destroyed.
+     */
+    private static final long PROCESS_TIMEOUT_MILLIS = 30000;
 
     private Util() {
     }
@@ -95,9 +99,7 @@ public class Util {
 
     public static int startProcess(List<String> command) {
         try {
-            ProcessBuilder builder = new ProcessBuilder(command);
-            Process p = builder.start();
-            return p.waitFor();
+            return new ProcessRunner(new ProcessBuilder(command)).timeout(PROCESS_TIMEOUT_MILLIS).run().getExitCode();
         } catch (InterruptedException | IOException e) {
             log.warning("Process could not be completed: " + e.toString());
         }
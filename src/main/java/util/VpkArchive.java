@@ -0,0 +1,379 @@
+package util;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * Reads the directory tree of a VPK (Valve Pak) file without invoking the VPK tool bundled with the game. Both
+ * version 1 and version 2 headers are supported. Only the header and the directory section are read from disk, file
+ * data is left untouched until an entry is actually requested.
+ * <p>
+ * The directory section is read with a single positional read instead of being memory-mapped: on Windows a mapped
+ * file stays locked until the buffer is garbage collected, which would prevent moving the custom folder aside when
+ * launching the game.
+ */
+public class VpkArchive {
+
+    /**
+     * Archive index used by entries whose data is stored in the directory file itself, right after the tree.
+     */
+    public static final int DIR_ARCHIVE_INDEX = 0x7fff;
+
+    private static final Logger log = Logger.getLogger("lawena");
+
+    private static final int SIGNATURE = 0x55aa1234;
+    private static final int HEADER_V1_SIZE = 12;
+    private static final int HEADER_V2_SIZE = 28;
+    private static final int ENTRY_TERMINATOR = 0xffff;
+    private static final Charset charset = Charset.forName("UTF-8");
+
+    private final Path path;
+    private final int version;
+    private final long dataOffset;
+    private final Map<String, Entry> entries;
+
+    private VpkArchive(Path path, int version, long dataOffset, Map<String, Entry> entries) {
+        this.path = path;
+        this.version = version;
+        this.dataOffset = dataOffset;
+        this.entries = entries;
+    }
+
+    /**
+     * Read the directory tree of a VPK file.
+     *
+     * @param path the VPK file to open, for multi-chunk archives this must be the <code>_dir.vpk</code> file
+     * @return the parsed archive, holding all of its entries
+     * @throws IOException if the file could not be read or if it's not a valid VPK file
+     */
+    public static VpkArchive open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_V2_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0, HEADER_V1_SIZE);
+            if (header.getInt(0) != SIGNATURE) {
+                throw new IOException("Not a VPK file: " + path);
+            }
+            int version = header.getInt(4);
+            long treeSize = header.getInt(8) & 0xffffffffL;
+            int headerSize;
+            if (version == 1) {
+                headerSize = HEADER_V1_SIZE;
+            } else if (version == 2) {
+                headerSize = HEADER_V2_SIZE;
+            } else {
+                throw new IOException("Unsupported VPK version " + version + ": " + path);
+            }
+            if (headerSize + treeSize > channel.size()) {
+                throw new IOException("Truncated VPK directory: " + path);
+            }
+            ByteBuffer tree = ByteBuffer.allocate((int) treeSize).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, tree, headerSize, (int) treeSize);
+            return new VpkArchive(path, version, headerSize + treeSize, readTree(tree, path));
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Malformed VPK directory: " + path, e);
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position, int length)
+        throws IOException {
+        buffer.clear().limit(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of VPK file");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static Map<String, Entry> readTree(ByteBuffer tree, Path path) throws IOException {
+        Map<String, Entry> map = new LinkedHashMap<>();
+        for (; ; ) {
+            String extension = readString(tree);
+            if (extension.isEmpty()) {
+                break;
+            }
+            for (; ; ) {
+                String dir = readString(tree);
+                if (dir.isEmpty()) {
+                    break;
+                }
+                for (; ; ) {
+                    String filename = readString(tree);
+                    if (filename.isEmpty()) {
+                        break;
+                    }
+                    int crc = tree.getInt();
+                    int preloadBytes = tree.getShort() & 0xffff;
+                    int archiveIndex = tree.getShort() & 0xffff;
+                    long offset = tree.getInt() & 0xffffffffL;
+                    long length = tree.getInt() & 0xffffffffL;
+                    int terminator = tree.getShort() & 0xffff;
+                    if (terminator != ENTRY_TERMINATOR) {
+                        throw new IOException("Malformed VPK directory entry " + filename + ": " + path);
+                    }
+                    byte[] preload = new byte[preloadBytes];
+                    tree.get(preload);
+                    String name = (dir.equals(" ") ? "" : dir + "/")
+                        + filename + (extension.equals(" ") ? "" : "." + extension);
+                    map.put(name, new Entry(name, crc, preload, archiveIndex, offset, length));
+                }
+            }
+        }
+        return map;
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int start = buffer.position();
+        while (buffer.get() != 0) {
+            // advance until the null terminator
+        }
+        int end = buffer.position() - 1;
+        byte[] bytes = new byte[end - start];
+        buffer.position(start);
+        buffer.get(bytes);
+        buffer.get();
+        return new String(bytes, charset);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the offset in the directory file where the embedded file data begins
+     */
+    public long getDataOffset() {
+        return dataOffset;
+    }
+
+    /**
+     * @return all entries of this archive, in the same order as they appear in the directory tree
+     */
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    /**
+     * @return the names of every file in this archive, using '/' as separator like the VPK tool does
+     */
+    public List<String> getFileNames() {
+        return new ArrayList<>(entries.keySet());
+    }
+
+    public Entry getEntry(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * Resolve the file holding the data of the given archive index. Entries with {@link #DIR_ARCHIVE_INDEX} are
+     * stored in the directory file, otherwise the data lives in a sibling chunk like <code>name_000.vpk</code>.
+     *
+     * @param archiveIndex the index of an entry
+     * @return the <code>Path</code> of the file holding the entry data
+     */
+    public Path getArchivePath(int archiveIndex) {
+        if (archiveIndex == DIR_ARCHIVE_INDEX) {
+            return path;
+        }
+        String filename = path.getFileName().toString();
+        String base = filename.endsWith("_dir.vpk") ? filename.substring(0, filename.length() - 8)
+            : Util.stripFilenameExtension(filename);
+        return path.resolveSibling(String.format("%s_%03d.vpk", base, archiveIndex));
+    }
+
+    /**
+     * Extract the given files into a folder, keeping their relative paths. Entries are extracted in parallel, straight
+     * from the archive (or its chunks) into the destination files, and each one is verified against the CRC32 stored
+     * in the directory tree.
+     *
+     * @param names the names of the files to extract, as returned by {@link #getFileNames()}
+     * @param dest  the folder where the files will be extracted to
+     * @return the <code>Path</code>s of the extracted files
+     * @throws IOException if one or more files could not be extracted, in which case the rest are still processed
+     */
+    public List<Path> extract(Collection<String> names, Path dest) throws IOException {
+        List<Entry> toExtract = new ArrayList<>();
+        for (String name : names) {
+            Entry entry = entries.get(name);
+            if (entry == null) {
+                throw new NoSuchFileException(name, null, "Not found in " + path);
+            }
+            toExtract.add(entry);
+        }
+        if (toExtract.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int threads = Math.min(toExtract.size(), Runtime.getRuntime().availableProcessors());
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<Path>> futures = new ArrayList<>();
+            for (Entry entry : toExtract) {
+                futures.add(executor.submit(() -> extract(entry, dest)));
+            }
+            List<Path> extracted = new ArrayList<>();
+            IOException failure = null;
+            for (Future<Path> future : futures) {
+                try {
+                    extracted.add(future.get());
+                } catch (ExecutionException e) {
+                    IOException cause = e.getCause() instanceof IOException ? (IOException) e.getCause()
+                        : new IOException(e.getCause());
+                    if (failure == null) {
+                        failure = cause;
+                    } else {
+                        failure.addSuppressed(cause);
+                    }
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            return extracted;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while extracting from " + path);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Extract a single file into a folder, keeping its relative path. Data is transferred directly between the archive
+     * and the destination file channels, then the result is checked against the CRC32 of the entry.
+     *
+     * @param entry the entry to extract
+     * @param dest  the folder where the file will be extracted to
+     * @return the <code>Path</code> of the extracted file
+     * @throws IOException if the file could not be extracted or if its checksum does not match
+     */
+    public Path extract(Entry entry, Path dest) throws IOException {
+        Path target = dest.resolve(entry.getName());
+        Path parent = target.getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer preload = ByteBuffer.wrap(entry.getPreload());
+            while (preload.hasRemaining()) {
+                out.write(preload);
+            }
+            if (entry.getLength() > 0) {
+                long offset = entry.getOffset();
+                if (entry.getArchiveIndex() == DIR_ARCHIVE_INDEX) {
+                    offset += dataOffset;
+                }
+                try (FileChannel in = FileChannel.open(getArchivePath(entry.getArchiveIndex()),
+                    StandardOpenOption.READ)) {
+                    if (offset + entry.getLength() > in.size()) {
+                        throw new EOFException("Data of " + entry + " is out of bounds in "
+                            + getArchivePath(entry.getArchiveIndex()));
+                    }
+                    long transferred = 0;
+                    while (transferred < entry.getLength()) {
+                        long count = in.transferTo(offset + transferred, entry.getLength() - transferred, out);
+                        if (count <= 0) {
+                            throw new EOFException("Unexpected end of data while extracting " + entry);
+                        }
+                        transferred += count;
+                    }
+                }
+            }
+        }
+        int crc = checksum(target);
+        if (crc != entry.getCrc()) {
+            Files.deleteIfExists(target);
+            throw new IOException(String.format("CRC mismatch in %s: expected %08x, got %08x", entry,
+                entry.getCrc(), crc));
+        }
+        log.finer("[" + path.getFileName() + "] Extracted " + entry + " (" + entry.getSize() + " bytes)");
+        return target;
+    }
+
+    private static int checksum(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        ByteBuffer buffer = ByteBuffer.allocateDirect(65536);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                crc.update(buffer);
+                buffer.clear();
+            }
+        }
+        return (int) crc.getValue();
+    }
+
+    public static class Entry {
+
+        private final String name;
+        private final int crc;
+        private final byte[] preload;
+        private final int archiveIndex;
+        private final long offset;
+        private final long length;
+
+        Entry(String name, int crc, byte[] preload, int archiveIndex, long offset, long length) {
+            this.name = name;
+            this.crc = crc;
+            this.preload = preload;
+            this.archiveIndex = archiveIndex;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getCrc() {
+            return crc;
+        }
+
+        public byte[] getPreload() {
+            return preload;
+        }
+
+        public int getArchiveIndex() {
+            return archiveIndex;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public long getLength() {
+            return length;
+        }
+
+        /**
+         * @return the size of the extracted file, including the preload bytes stored in the directory
+         */
+        public long getSize() {
+            return preload.length + length;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+}
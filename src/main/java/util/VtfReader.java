@@ -0,0 +1,413 @@
+package util;
+
+import java.awt.image.BufferedImage;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Decodes VTF (Valve Texture Format) images without invoking VTFCmd. Only the header and the data of a single
+ * mipmap are read from disk, so decoding a reduced version of a large texture is cheap in both time and memory.
+ * <p>
+ * Versions 7.0 to 7.5 are supported, along with the DXT1, DXT3, DXT5 and the common 24 and 32 bit RGB formats. For
+ * multi-frame and environment map textures only the first frame and face are decoded.
+ */
+public class VtfReader {
+
+    public static final int FORMAT_RGBA8888 = 0;
+    public static final int FORMAT_ABGR8888 = 1;
+    public static final int FORMAT_RGB888 = 2;
+    public static final int FORMAT_BGR888 = 3;
+    public static final int FORMAT_BGRA8888 = 12;
+    public static final int FORMAT_DXT1 = 13;
+    public static final int FORMAT_DXT3 = 14;
+    public static final int FORMAT_DXT5 = 15;
+    public static final int FORMAT_BGRX8888 = 16;
+    public static final int FORMAT_DXT1_ONEBITALPHA = 20;
+
+    private static final int SIGNATURE = 0x00465456; // "VTF\0"
+    private static final int FLAG_ENVMAP = 0x4000;
+    private static final int RESOURCE_HIGH_RES = 0x30;
+    private static final int RESOURCE_LOW_RES = 0x01;
+    private static final int MAX_HEADER_SIZE = 4096;
+
+    private final Path path;
+    private final int majorVersion;
+    private final int minorVersion;
+    private final int width;
+    private final int height;
+    private final int depth;
+    private final int format;
+    private final int mipmapCount;
+    private final int frames;
+    private final int faces;
+    private final long dataOffset;
+
+    private VtfReader(Path path, ByteBuffer header, long fileSize) throws IOException {
+        this.path = path;
+        majorVersion = header.getInt(4);
+        minorVersion = header.getInt(8);
+        int headerSize = header.getInt(12);
+        width = header.getShort(16) & 0xffff;
+        height = header.getShort(18) & 0xffff;
+        int flags = header.getInt(20);
+        frames = Math.max(1, header.getShort(24) & 0xffff);
+        int firstFrame = header.getShort(26) & 0xffff;
+        format = header.getInt(52);
+        mipmapCount = Math.max(1, header.get(56) & 0xff);
+        int lowResFormat = header.getInt(57);
+        int lowResWidth = header.get(61) & 0xff;
+        int lowResHeight = header.get(62) & 0xff;
+        depth = minorVersion >= 2 ? Math.max(1, header.getShort(63) & 0xffff) : 1;
+        if ((flags & FLAG_ENVMAP) != 0) {
+            // versions before 7.5 may include a spheremap as a seventh face
+            faces = minorVersion < 5 && firstFrame != 0xffff ? 7 : 6;
+        } else {
+            faces = 1;
+        }
+        if (width == 0 || height == 0) {
+            throw new IOException("Invalid VTF dimensions " + width + "x" + height + ": " + path);
+        }
+        if (minorVersion >= 3) {
+            int resources = header.getInt(68);
+            long offset = -1;
+            for (int i = 0; i < resources && 80 + 8 * i + 8 <= header.limit(); i++) {
+                int tag = header.getInt(80 + 8 * i) & 0xffffff;
+                if (tag == RESOURCE_HIGH_RES) {
+                    offset = header.getInt(80 + 8 * i + 4) & 0xffffffffL;
+                }
+            }
+            if (offset < 0) {
+                throw new IOException("VTF has no image data resource: " + path);
+            }
+            dataOffset = offset;
+        } else {
+            long lowResSize = lowResWidth > 0 && lowResHeight > 0 && lowResFormat >= 0
+                ? imageSize(lowResFormat, lowResWidth, lowResHeight) : 0;
+            dataOffset = headerSize + lowResSize;
+        }
+        if (dataOffset + imageDataSize() > fileSize) {
+            throw new IOException("Truncated VTF file: " + path);
+        }
+    }
+
+    /**
+     * Read the header of a VTF file.
+     *
+     * @param path the VTF file to open
+     * @return the reader for this file
+     * @throws IOException if the file could not be read, if it's not a valid VTF file or if its image format is not
+     *                     supported
+     */
+    public static VtfReader open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(16).order(ByteOrder.LITTLE_ENDIAN);
+            readFully(channel, header, 0);
+            if (header.getInt(0) != SIGNATURE) {
+                throw new IOException("Not a VTF file: " + path);
+            }
+            if (header.getInt(4) != 7 || header.getInt(8) > 5) {
+                throw new IOException("Unsupported VTF version " + header.getInt(4) + "." + header.getInt(8)
+                    + ": " + path);
+            }
+            int headerSize = header.getInt(12);
+            if (headerSize < 64 || headerSize > MAX_HEADER_SIZE) {
+                throw new IOException("Invalid VTF header size " + headerSize + ": " + path);
+            }
+            ByteBuffer full = ByteBuffer.allocate(Math.max(headerSize, 80)).order(ByteOrder.LITTLE_ENDIAN);
+            full.limit(headerSize);
+            readFully(channel, full, 0);
+            full.limit(full.capacity());
+            VtfReader reader = new VtfReader(path, full, channel.size());
+            if (!isSupported(reader.format)) {
+                throw new IOException("Unsupported VTF image format " + reader.format + ": " + path);
+            }
+            return reader;
+        }
+    }
+
+    /**
+     * Decode the smallest mipmap of a VTF file that is at least as large as the given size in both dimensions, or the
+     * full size image if there is no such mipmap.
+     *
+     * @param path    the VTF file to read
+     * @param minSize the minimum width and height wanted
+     * @return the decoded image
+     * @throws IOException if the file could not be read or decoded
+     */
+    public static BufferedImage read(Path path, int minSize) throws IOException {
+        VtfReader reader = open(path);
+        return reader.decode(reader.getMipmapFor(minSize));
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of VTF file");
+            }
+        }
+        buffer.flip();
+    }
+
+    private static boolean isSupported(int format) {
+        switch (format) {
+            case FORMAT_RGBA8888:
+            case FORMAT_ABGR8888:
+            case FORMAT_RGB888:
+            case FORMAT_BGR888:
+            case FORMAT_BGRA8888:
+            case FORMAT_BGRX8888:
+            case FORMAT_DXT1:
+            case FORMAT_DXT1_ONEBITALPHA:
+            case FORMAT_DXT3:
+            case FORMAT_DXT5:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static long imageSize(int format, int width, int height) throws IOException {
+        switch (format) {
+            case FORMAT_DXT1:
+            case FORMAT_DXT1_ONEBITALPHA:
+                return ((width + 3) / 4) * ((height + 3) / 4) * 8L;
+            case FORMAT_DXT3:
+            case FORMAT_DXT5:
+                return ((width + 3) / 4) * ((height + 3) / 4) * 16L;
+            case FORMAT_RGB888:
+            case FORMAT_BGR888:
+                return width * height * 3L;
+            case FORMAT_RGBA8888:
+            case FORMAT_ABGR8888:
+            case FORMAT_BGRA8888:
+            case FORMAT_BGRX8888:
+                return width * height * 4L;
+            default:
+                throw new IOException("Unsupported VTF image format " + format);
+        }
+    }
+
+    private long imageDataSize() throws IOException {
+        long size = 0;
+        for (int mip = 0; mip < mipmapCount; mip++) {
+            size += mipmapSize(mip);
+        }
+        return size;
+    }
+
+    private long mipmapSize(int mip) throws IOException {
+        long slices = Math.max(1, depth >> mip);
+        return imageSize(format, getMipmapWidth(mip), getMipmapHeight(mip)) * slices * faces * frames;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public String getVersion() {
+        return majorVersion + "." + minorVersion;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getFormat() {
+        return format;
+    }
+
+    public int getMipmapCount() {
+        return mipmapCount;
+    }
+
+    public int getMipmapWidth(int mip) {
+        return Math.max(1, width >> mip);
+    }
+
+    public int getMipmapHeight(int mip) {
+        return Math.max(1, height >> mip);
+    }
+
+    /**
+     * Find the smallest mipmap whose dimensions are both at least the given size.
+     *
+     * @param minSize the minimum width and height wanted
+     * @return the mipmap level, 0 being the full size image
+     */
+    public int getMipmapFor(int minSize) {
+        int mip = 0;
+        while (mip + 1 < mipmapCount && getMipmapWidth(mip + 1) >= minSize && getMipmapHeight(mip + 1) >= minSize) {
+            mip++;
+        }
+        return mip;
+    }
+
+    /**
+     * Decode the first frame and face of a mipmap. Mipmaps are stored from the smallest to the largest, so only the
+     * data of the requested level is read.
+     *
+     * @param mip the mipmap level, 0 being the full size image
+     * @return the decoded image
+     * @throws IOException if the file could not be read
+     */
+    public BufferedImage decode(int mip) throws IOException {
+        if (mip < 0 || mip >= mipmapCount) {
+            throw new IllegalArgumentException("Invalid mipmap level " + mip);
+        }
+        long offset = dataOffset;
+        for (int i = mipmapCount - 1; i > mip; i--) {
+            offset += mipmapSize(i);
+        }
+        int w = getMipmapWidth(mip);
+        int h = getMipmapHeight(mip);
+        ByteBuffer data = ByteBuffer.allocate((int) imageSize(format, w, h)).order(ByteOrder.LITTLE_ENDIAN);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            readFully(channel, data, offset);
+        }
+        int[] argb = new int[w * h];
+        switch (format) {
+            case FORMAT_DXT1:
+            case FORMAT_DXT1_ONEBITALPHA:
+            case FORMAT_DXT3:
+            case FORMAT_DXT5:
+                decodeDxt(data, w, h, argb);
+                break;
+            default:
+                decodeRgb(data, argb);
+        }
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_ARGB);
+        image.setRGB(0, 0, w, h, argb, 0, w);
+        return image;
+    }
+
+    private void decodeRgb(ByteBuffer data, int[] argb) {
+        for (int i = 0; i < argb.length; i++) {
+            int a = 0xff, r, g, b;
+            switch (format) {
+                case FORMAT_RGBA8888:
+                    r = data.get() & 0xff;
+                    g = data.get() & 0xff;
+                    b = data.get() & 0xff;
+                    a = data.get() & 0xff;
+                    break;
+                case FORMAT_ABGR8888:
+                    a = data.get() & 0xff;
+                    b = data.get() & 0xff;
+                    g = data.get() & 0xff;
+                    r = data.get() & 0xff;
+                    break;
+                case FORMAT_RGB888:
+                    r = data.get() & 0xff;
+                    g = data.get() & 0xff;
+                    b = data.get() & 0xff;
+                    break;
+                case FORMAT_BGR888:
+                    b = data.get() & 0xff;
+                    g = data.get() & 0xff;
+                    r = data.get() & 0xff;
+                    break;
+                case FORMAT_BGRA8888:
+                    b = data.get() & 0xff;
+                    g = data.get() & 0xff;
+                    r = data.get() & 0xff;
+                    a = data.get() & 0xff;
+                    break;
+                default: // FORMAT_BGRX8888
+                    b = data.get() & 0xff;
+                    g = data.get() & 0xff;
+                    r = data.get() & 0xff;
+                    data.get();
+            }
+            argb[i] = a << 24 | r << 16 | g << 8 | b;
+        }
+    }
+
+    private void decodeDxt(ByteBuffer data, int w, int h, int[] argb) {
+        int[] colors = new int[4];
+        int[] alphas = new int[16];
+        for (int by = 0; by < h; by += 4) {
+            for (int bx = 0; bx < w; bx += 4) {
+                if (format == FORMAT_DXT3) {
+                    long bits = data.getLong();
+                    for (int i = 0; i < 16; i++) {
+                        alphas[i] = (int) ((bits >>> (4 * i)) & 0xf) * 17;
+                    }
+                } else if (format == FORMAT_DXT5) {
+                    int a0 = data.get() & 0xff;
+                    int a1 = data.get() & 0xff;
+                    long bits = (data.getShort() & 0xffffL) | (data.getInt() & 0xffffffffL) << 16;
+                    for (int i = 0; i < 16; i++) {
+                        int code = (int) ((bits >>> (3 * i)) & 0x7);
+                        if (code == 0) {
+                            alphas[i] = a0;
+                        } else if (code == 1) {
+                            alphas[i] = a1;
+                        } else if (a0 > a1) {
+                            alphas[i] = ((8 - code) * a0 + (code - 1) * a1) / 7;
+                        } else if (code < 6) {
+                            alphas[i] = ((6 - code) * a0 + (code - 1) * a1) / 5;
+                        } else {
+                            alphas[i] = code == 6 ? 0 : 0xff;
+                        }
+                    }
+                }
+                int c0 = data.getShort() & 0xffff;
+                int c1 = data.getShort() & 0xffff;
+                int indices = data.getInt();
+                colors[0] = rgb565(c0);
+                colors[1] = rgb565(c1);
+                if (c0 > c1 || format == FORMAT_DXT3 || format == FORMAT_DXT5) {
+                    colors[2] = blend(colors[0], colors[1], 2, 1, 3);
+                    colors[3] = blend(colors[0], colors[1], 1, 2, 3);
+                } else {
+                    colors[2] = blend(colors[0], colors[1], 1, 1, 2);
+                    colors[3] = format == FORMAT_DXT1_ONEBITALPHA ? -1 : 0;
+                }
+                for (int py = 0; py < 4 && by + py < h; py++) {
+                    for (int px = 0; px < 4 && bx + px < w; px++) {
+                        int i = 4 * py + px;
+                        int color = colors[(indices >>> (2 * i)) & 0x3];
+                        int alpha;
+                        if (format == FORMAT_DXT3 || format == FORMAT_DXT5) {
+                            alpha = alphas[i];
+                        } else {
+                            // transparent pixels are only honored by the one bit alpha variant
+                            alpha = color == -1 ? 0 : 0xff;
+                            color = color == -1 ? 0 : color;
+                        }
+                        argb[(by + py) * w + bx + px] = alpha << 24 | color;
+                    }
+                }
+            }
+        }
+    }
+
+    private static int rgb565(int c) {
+        int r = (c >> 11) & 0x1f;
+        int g = (c >> 5) & 0x3f;
+        int b = c & 0x1f;
+        return (r << 3 | r >> 2) << 16 | (g << 2 | g >> 4) << 8 | (b << 3 | b >> 2);
+    }
+
+    private static int blend(int c0, int c1, int w0, int w1, int div) {
+        int r = (((c0 >> 16) & 0xff) * w0 + ((c1 >> 16) & 0xff) * w1) / div;
+        int g = (((c0 >> 8) & 0xff) * w0 + ((c1 >> 8) & 0xff) * w1) / div;
+        int b = ((c0 & 0xff) * w0 + (c1 & 0xff) * w1) / div;
+        return r << 16 | g << 8 | b;
+    }
+
+    @Override
+    public String toString() {
+        return path.getFileName() + " (VTF " + getVersion() + ", " + width + "x" + height + ", format " + format
+            + ", " + mipmapCount + " mipmaps)";
+    }
+}
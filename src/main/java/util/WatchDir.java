@@ -80,21 +80,54 @@ public abstract class WatchDir {
             @Override
             public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
                 throws IOException {
+                if (!dir.equals(start) && !accept(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
                 register(dir);
                 return FileVisitResult.CONTINUE;
             }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                log.finer("[watchdir] Could not watch " + file + ": " + exc);
+                return FileVisitResult.CONTINUE;
+            }
         });
     }
 
     /**
-     * Process all events for keys queued to the watcher
+     * Decide if a sub-directory found while registering recursively must be watched. All of them are watched by
+     * default.
+     */
+    protected boolean accept(Path dir) {
+        return true;
+    }
+
+    /**
+     * Run the handler of an event, by default in the Swing event dispatch thread.
+     */
+    protected void dispatch(Runnable handler) {
+        SwingUtilities.invokeLater(handler);
+    }
+
+    /**
+     * Stop watching, making {@link #processEvents()} return.
+     *
+     * @throws IOException if the watch service could not be closed
+     */
+    public void close() throws IOException {
+        watcher.close();
+    }
+
+    /**
+     * Process all events for keys queued to the watcher, until the watcher is closed or the thread interrupted.
      */
     public void processEvents() {
         for (; ; ) {
             WatchKey key;
             try {
                 key = watcher.take();
-            } catch (InterruptedException x) {
+            } catch (InterruptedException | ClosedWatchServiceException x) {
                 return;
             }
             Path dir = keys.get(key);
@@ -104,13 +137,15 @@ public abstract class WatchDir {
             for (WatchEvent<?> event : key.pollEvents()) {
                 final Kind<?> kind = event.kind();
                 if (kind == OVERFLOW) {
+                    log.finer("[watchdir] Events lost in " + dir);
+                    dispatch(() -> entriesLost(dir));
                     continue;
                 }
                 WatchEvent<Path> ev = cast(event);
                 Path name = ev.context();
                 final Path child = dir.resolve(name);
                 log.finer("[watchdir] " + event.kind().name() + ": " + child);
-                SwingUtilities.invokeLater(() -> {
+                dispatch(() -> {
                     if (kind == ENTRY_CREATE) {
                         entryCreated(child);
                     } else if (kind == ENTRY_MODIFY) {
@@ -121,10 +156,10 @@ public abstract class WatchDir {
                 });
                 if (recursive && (kind == ENTRY_CREATE)) {
                     try {
-                        if (Files.isDirectory(child, NOFOLLOW_LINKS)) {
+                        if (Files.isDirectory(child, NOFOLLOW_LINKS) && accept(child)) {
                             registerAll(child);
                         }
-                    } catch (IOException ignored) {
+                    } catch (IOException | ClosedWatchServiceException ignored) {
                     }
                 }
             }
@@ -138,6 +173,13 @@ public abstract class WatchDir {
         }
     }
 
+    /**
+     * Called when too many events happened at once and some of them were lost, so the directory contents must be
+     * checked again. Ignored by default.
+     */
+    public void entriesLost(Path dir) {
+    }
+
     public abstract void entryDeleted(Path child);
 
     public abstract void entryModified(Path child);
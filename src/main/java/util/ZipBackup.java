@@ -0,0 +1,553 @@
+package util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes zip backups of whole folders. Files are compressed in parallel and written in order as soon as they are
+ * ready, keeping the small entries being compressed within a share of the maximum heap size, while larger files are
+ * streamed straight from disk. Files that are already compressed, like VPK, VTF, TTF or WAV files, are stored without
+ * compression. A file that can't be read fails the whole backup, so a backup never silently lacks files.
+ * <p>
+ * Archives larger than 4 GB or with more than 65535 entries use the Zip64 extensions.
+ */
+public class ZipBackup {
+
+    private static final Logger log = Logger.getLogger("lawena");
+    private static final Charset charset = Charset.forName("UTF-8");
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_OF_CENTRAL_DIR = 0x06054b50;
+    private static final int ZIP64_END_OF_CENTRAL_DIR = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int FLAG_UTF8 = 0x0800;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final long MAX_32 = 0xffffffffL;
+    private static final int MAX_16 = 0xffff;
+    // entries that could grow past this size once compressed use Zip64 headers
+    private static final long ZIP64_THRESHOLD = 0xf0000000L;
+    // files up to this size are read and compressed in parallel, larger ones are streamed by the writer
+    private static final long MEMORY_ENTRY_LIMIT = 8 * 1024 * 1024;
+    // part of the maximum heap size used by the entries being compressed
+    private static final int MEMORY_SHARE = 4;
+    // an entry in memory is held as read, as compressed and while copying the compressed bytes
+    private static final int MEMORY_COPIES = 3;
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Set<String> storedExtensions = new HashSet<>(Arrays.asList(
+        "vpk", "vtf", "ttf", "otf", "wav", "mp3", "ogg", "zip", "7z", "rar", "bz2", "gz", "jpg", "png"));
+
+    private final List<Item> items;
+    private final long totalSize;
+    private ProgressListener listener;
+
+    private ZipBackup(List<Item> items) {
+        this.items = items;
+        long size = 0;
+        for (Item item : items) {
+            size += item.size;
+        }
+        this.totalSize = size;
+    }
+
+    /**
+     * Collect the contents of the folders to back up. Each folder is stored in the archive under its own name, the
+     * same way as adding a folder with an archiving tool.
+     *
+     * @param folders the folders to back up, the ones that don't exist are ignored
+     * @return the backup ready to be written
+     * @throws IOException if the folders could not be listed
+     */
+    public static ZipBackup scan(List<Path> folders) throws IOException {
+        final List<Item> items = new ArrayList<>();
+        for (Path folder : folders) {
+            if (!Files.exists(folder)) {
+                continue;
+            }
+            final Path base = folder.toAbsolutePath().getParent();
+            Files.walkFileTree(folder, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                    items.add(new Item(dir, nameOf(base, dir) + "/", true, 0, attrs.lastModifiedTime().toMillis()));
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    if (attrs.isRegularFile()) {
+                        items.add(new Item(file, nameOf(base, file), false, attrs.size(),
+                            attrs.lastModifiedTime().toMillis()));
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+            });
+        }
+        return new ZipBackup(items);
+    }
+
+    private static String nameOf(Path base, Path path) {
+        String name = base == null ? path.toString() : base.relativize(path.toAbsolutePath()).toString();
+        return name.replace('\\', '/');
+    }
+
+    private static boolean isStored(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && storedExtensions.contains(name.substring(dot + 1).toLowerCase());
+    }
+
+    private static int dosTime(long millis) {
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(millis);
+        int year = c.get(Calendar.YEAR);
+        if (year < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (year - 1980) << 25 | (c.get(Calendar.MONTH) + 1) << 21 | c.get(Calendar.DAY_OF_MONTH) << 16
+            | c.get(Calendar.HOUR_OF_DAY) << 11 | c.get(Calendar.MINUTE) << 5 | c.get(Calendar.SECOND) >> 1;
+    }
+
+    public void setProgressListener(ProgressListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return the number of files and folders to back up
+     */
+    public int getEntryCount() {
+        return items.size();
+    }
+
+    /**
+     * @return the total size of the files to back up, in bytes
+     */
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * Compute a fingerprint of the backed up folders from the name, size and modified time of every file and folder,
+     * which changes whenever something is added, removed or modified, without having to read any file contents.
+     *
+     * @return a hex string identifying the current state of the folders
+     */
+    public String getFingerprint() {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            List<Item> sorted = new ArrayList<>(items);
+            sorted.sort(Comparator.comparing(item -> item.name));
+            for (Item item : sorted) {
+                digest.update(item.name.getBytes(charset));
+                digest.update(ByteBuffer.allocate(17).putLong(item.size).putLong(item.lastModified).put((byte) 0)
+                    .array());
+            }
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    }
+
+    /**
+     * Write the backup to a zip file. If the backup can't be completed, including when a file can no longer be read,
+     * the partial file is deleted.
+     *
+     * @param zip     the zip file to create
+     * @param threads the number of threads compressing files in parallel
+     * @throws IOException if the zip file could not be written or a file could not be read
+     */
+    public void write(Path zip, int threads) throws IOException {
+        long start = System.nanoTime();
+        threads = Math.max(1, threads);
+        long budget = Runtime.getRuntime().maxMemory() / MEMORY_SHARE;
+        long memoryLimit = Math.min(MEMORY_ENTRY_LIMIT, budget / MEMORY_COPIES / threads);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        boolean completed = false;
+        try (FileChannel out = FileChannel.open(zip, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            Writer writer = new Writer(out);
+            Deque<Future<Prepared>> pending = new ArrayDeque<>();
+            int window = threads * 4;
+            int next = 0;
+            long pendingMemory = 0;
+            long done = 0;
+            for (Item item : items) {
+                // keep a bounded number of entries being prepared ahead of the one being written
+                while (next < items.size() && pending.size() < window) {
+                    Item ahead = items.get(next);
+                    long memory = ahead.getMemory(memoryLimit);
+                    if (!pending.isEmpty() && pendingMemory + memory > budget) {
+                        break;
+                    }
+                    next++;
+                    pendingMemory += memory;
+                    pending.add(memory > 0 ? executor.submit(() -> prepare(ahead))
+                        : CompletableFuture.completedFuture(null));
+                }
+                Prepared prepared;
+                try {
+                    prepared = pending.remove().get();
+                } catch (ExecutionException e) {
+                    throw new IOException("Could not back up " + item.path + ": " + e.getCause(), e.getCause());
+                }
+                pendingMemory -= item.getMemory(memoryLimit);
+                if (prepared != null) {
+                    writer.write(prepared);
+                } else {
+                    writer.stream(item);
+                }
+                done += item.size;
+                if (listener != null) {
+                    listener.progress(done, totalSize);
+                }
+            }
+            writer.finish();
+            completed = true;
+            log.fine("Backup of " + items.size() + " entries (" + Util.humanReadableByteCount(totalSize, true)
+                + ") written to " + zip + " in " + (System.nanoTime() - start) / 1000000 + " ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while writing " + zip);
+        } finally {
+            executor.shutdownNow();
+            if (!completed) {
+                Files.deleteIfExists(zip);
+            }
+        }
+    }
+
+    private Prepared prepare(Item item) throws IOException {
+        byte[] data = Files.readAllBytes(item.path);
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        if (!isStored(item.name) && data.length > 0) {
+            Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            try {
+                deflater.setInput(data);
+                deflater.finish();
+                ByteArrayOutputStream compressed = new ByteArrayOutputStream(data.length / 2 + 64);
+                byte[] buffer = new byte[BUFFER_SIZE];
+                while (!deflater.finished()) {
+                    int count = deflater.deflate(buffer);
+                    compressed.write(buffer, 0, count);
+                }
+                // keep the original data if compression didn't help
+                if (compressed.size() < data.length) {
+                    return new Prepared(item, DEFLATED, crc.getValue(), data.length, compressed.toByteArray());
+                }
+            } finally {
+                deflater.end();
+            }
+        }
+        return new Prepared(item, STORED, crc.getValue(), data.length, data);
+    }
+
+    /**
+     * Receives the progress of a backup after each entry is written.
+     */
+    public interface ProgressListener {
+
+        /**
+         * @param done  the number of bytes of the original files already written
+         * @param total the total number of bytes to write
+         */
+        void progress(long done, long total);
+    }
+
+    private static class Item {
+
+        private final Path path;
+        private final String name;
+        private final boolean directory;
+        private final long size;
+        private final long lastModified;
+
+        Item(Path path, String name, boolean directory, long size, long lastModified) {
+            this.path = path;
+            this.name = name;
+            this.directory = directory;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @return the memory needed to compress this entry in parallel, or <code>0</code> if it's streamed instead
+         */
+        long getMemory(long memoryLimit) {
+            return directory || size > memoryLimit ? 0 : Math.max(1, size * MEMORY_COPIES);
+        }
+    }
+
+    private static class Prepared {
+
+        private final Item item;
+        private final int method;
+        private final long crc;
+        private final long size;
+        private final byte[] data;
+
+        Prepared(Item item, int method, long crc, long size, byte[] data) {
+            this.item = item;
+            this.method = method;
+            this.crc = crc;
+            this.size = size;
+            this.data = data;
+        }
+    }
+
+    private static class CentralEntry {
+
+        private byte[] name;
+        private int method;
+        private int time;
+        private long crc;
+        private long compressedSize;
+        private long size;
+        private long offset;
+        private boolean directory;
+    }
+
+    private static class Writer {
+
+        private final FileChannel out;
+        private final List<CentralEntry> entries = new ArrayList<>();
+        private final ByteBuffer header = ByteBuffer.allocate(MAX_16 + 128).order(ByteOrder.LITTLE_ENDIAN);
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private long position = 0;
+
+        Writer(FileChannel out) {
+            this.out = out;
+        }
+
+        private void flush(ByteBuffer data) throws IOException {
+            data.flip();
+            while (data.hasRemaining()) {
+                position += out.write(data);
+            }
+        }
+
+        private CentralEntry startEntry(Item item, int method, boolean zip64) throws IOException {
+            CentralEntry entry = new CentralEntry();
+            entry.name = item.name.getBytes(charset);
+            entry.method = method;
+            entry.time = dosTime(item.lastModified);
+            entry.offset = position;
+            entry.directory = item.directory;
+            if (entry.name.length > MAX_16) {
+                throw new IOException("Entry name too long: " + item.name);
+            }
+            header.clear();
+            header.putInt(LOCAL_HEADER);
+            header.putShort((short) (zip64 ? 45 : 20));
+            header.putShort((short) FLAG_UTF8);
+            header.putShort((short) method);
+            header.putInt(entry.time);
+            header.putInt(0); // crc
+            header.putInt(zip64 ? (int) MAX_32 : 0); // compressed size
+            header.putInt(zip64 ? (int) MAX_32 : 0); // size
+            header.putShort((short) entry.name.length);
+            header.putShort((short) (zip64 ? 20 : 0));
+            header.put(entry.name);
+            if (zip64) {
+                header.putShort((short) 1);
+                header.putShort((short) 16);
+                header.putLong(0);
+                header.putLong(0);
+            }
+            flush(header);
+            return entry;
+        }
+
+        private void endEntry(CentralEntry entry, boolean zip64) throws IOException {
+            header.clear();
+            header.putInt((int) entry.crc);
+            if (zip64) {
+                header.flip();
+                out.write(header, entry.offset + 14);
+                header.clear();
+                header.putLong(entry.size);
+                header.putLong(entry.compressedSize);
+                header.flip();
+                out.write(header, entry.offset + 30 + entry.name.length + 4);
+            } else {
+                header.putInt((int) entry.compressedSize);
+                header.putInt((int) entry.size);
+                header.flip();
+                out.write(header, entry.offset + 14);
+            }
+            entries.add(entry);
+        }
+
+        void write(Prepared prepared) throws IOException {
+            CentralEntry entry = startEntry(prepared.item, prepared.method, false);
+            ByteBuffer data = ByteBuffer.wrap(prepared.data);
+            while (data.hasRemaining()) {
+                position += out.write(data);
+            }
+            entry.crc = prepared.crc;
+            entry.size = prepared.size;
+            entry.compressedSize = prepared.data.length;
+            endEntry(entry, false);
+        }
+
+        void stream(Item item) throws IOException {
+            if (item.directory) {
+                endEntry(startEntry(item, STORED, false), false);
+                return;
+            }
+            FileChannel in = FileChannel.open(item.path, StandardOpenOption.READ);
+            try {
+                boolean stored = isStored(item.name);
+                boolean zip64 = item.size >= ZIP64_THRESHOLD;
+                CentralEntry entry = startEntry(item, stored ? STORED : DEFLATED, zip64);
+                long dataStart = position;
+                CRC32 crc = new CRC32();
+                Deflater deflater = stored ? null : new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+                byte[] input = new byte[BUFFER_SIZE];
+                byte[] output = new byte[BUFFER_SIZE];
+                long size = 0;
+                try {
+                    buffer.clear();
+                    int read;
+                    while ((read = in.read(buffer)) >= 0) {
+                        buffer.flip();
+                        buffer.get(input, 0, read);
+                        buffer.clear();
+                        crc.update(input, 0, read);
+                        size += read;
+                        if (deflater == null) {
+                            ByteBuffer chunk = ByteBuffer.wrap(input, 0, read);
+                            while (chunk.hasRemaining()) {
+                                position += out.write(chunk);
+                            }
+                        } else {
+                            deflater.setInput(input, 0, read);
+                            while (!deflater.needsInput()) {
+                                writeDeflated(deflater, output);
+                            }
+                        }
+                    }
+                    if (deflater != null) {
+                        deflater.finish();
+                        while (!deflater.finished()) {
+                            writeDeflated(deflater, output);
+                        }
+                    }
+                } finally {
+                    if (deflater != null) {
+                        deflater.end();
+                    }
+                }
+                entry.crc = crc.getValue();
+                entry.size = size;
+                entry.compressedSize = position - dataStart;
+                if (!zip64 && (entry.size >= MAX_32 || entry.compressedSize >= MAX_32)) {
+                    throw new IOException("File changed size while being backed up: " + item.path);
+                }
+                endEntry(entry, zip64);
+            } finally {
+                in.close();
+            }
+        }
+
+        private void writeDeflated(Deflater deflater, byte[] output) throws IOException {
+            int count = deflater.deflate(output);
+            ByteBuffer chunk = ByteBuffer.wrap(output, 0, count);
+            while (chunk.hasRemaining()) {
+                position += out.write(chunk);
+            }
+        }
+
+        void finish() throws IOException {
+            long centralStart = position;
+            ByteBuffer data = ByteBuffer.allocate(BUFFER_SIZE + MAX_16 + 128).order(ByteOrder.LITTLE_ENDIAN);
+            for (CentralEntry entry : entries) {
+                boolean bigSize = entry.size >= MAX_32 || entry.compressedSize >= MAX_32;
+                boolean bigOffset = entry.offset >= MAX_32;
+                int extra = (bigSize ? 16 : 0) + (bigOffset ? 8 : 0);
+                if (data.remaining() < 46 + entry.name.length + 4 + extra) {
+                    flush(data);
+                    data.clear();
+                }
+                data.putInt(CENTRAL_HEADER);
+                data.putShort((short) 45);
+                data.putShort((short) (extra > 0 ? 45 : 20));
+                data.putShort((short) FLAG_UTF8);
+                data.putShort((short) entry.method);
+                data.putInt(entry.time);
+                data.putInt((int) entry.crc);
+                data.putInt(bigSize ? (int) MAX_32 : (int) entry.compressedSize);
+                data.putInt(bigSize ? (int) MAX_32 : (int) entry.size);
+                data.putShort((short) entry.name.length);
+                data.putShort((short) (extra > 0 ? extra + 4 : 0));
+                data.putShort((short) 0); // comment
+                data.putShort((short) 0); // disk
+                data.putShort((short) 0); // internal attributes
+                data.putInt(entry.directory ? 0x10 : 0);
+                data.putInt(bigOffset ? (int) MAX_32 : (int) entry.offset);
+                data.put(entry.name);
+                if (extra > 0) {
+                    data.putShort((short) 1);
+                    data.putShort((short) extra);
+                    if (bigSize) {
+                        data.putLong(entry.size);
+                        data.putLong(entry.compressedSize);
+                    }
+                    if (bigOffset) {
+                        data.putLong(entry.offset);
+                    }
+                }
+            }
+            long centralEnd = position + data.position();
+            long centralSize = centralEnd - centralStart;
+            boolean zip64 = entries.size() >= MAX_16 || centralStart >= MAX_32 || centralSize >= MAX_32;
+            if (data.remaining() < 56 + 20 + 22) {
+                flush(data);
+                data.clear();
+            }
+            if (zip64) {
+                data.putInt(ZIP64_END_OF_CENTRAL_DIR);
+                data.putLong(44);
+                data.putShort((short) 45);
+                data.putShort((short) 45);
+                data.putInt(0);
+                data.putInt(0);
+                data.putLong(entries.size());
+                data.putLong(entries.size());
+                data.putLong(centralSize);
+                data.putLong(centralStart);
+                data.putInt(ZIP64_LOCATOR);
+                data.putInt(0);
+                data.putLong(centralEnd);
+                data.putInt(1);
+            }
+            data.putInt(END_OF_CENTRAL_DIR);
+            data.putShort((short) 0);
+            data.putShort((short) 0);
+            data.putShort((short) Math.min(entries.size(), MAX_16));
+            data.putShort((short) Math.min(entries.size(), MAX_16));
+            data.putInt((int) Math.min(centralSize, MAX_32));
+            data.putInt((int) Math.min(centralStart, MAX_32));
+            data.putShort((short) 0);
+            flush(data);
+        }
+    }
+}
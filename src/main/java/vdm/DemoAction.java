@@ -0,0 +1,45 @@
+package vdm;
+
+import java.io.IOException;
+
+/**
+ * An entry of the <code>demoactions</code> block of a VDM file, run by the game when the demo reaches its start
+ * tick.
+ */
+public abstract class DemoAction {
+
+    private final String name;
+    private final int startTick;
+
+    /**
+     * @param name      the name shown in the game demo editor
+     * @param startTick the tick the action runs at, or <code>-1</code> if it has no <code>starttick</code>
+     */
+    protected DemoAction(String name, int startTick) {
+        this.name = name;
+        this.startTick = startTick;
+    }
+
+    /**
+     * @return the name of the game factory creating this action, like <code>PlayCommands</code>
+     */
+    public abstract String getFactory();
+
+    public String getName() {
+        return name;
+    }
+
+    public int getStartTick() {
+        return startTick;
+    }
+
+    /**
+     * Write the properties of this action after <code>factory</code>, <code>name</code> and <code>starttick</code>.
+     */
+    abstract void writeProperties(VdmWriter out) throws IOException;
+
+    @Override
+    public String toString() {
+        return getFactory() + " " + name + ": " + startTick;
+    }
+}
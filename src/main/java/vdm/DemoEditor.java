@@ -4,23 +4,37 @@ import lwrt.CommandLine;
 import lwrt.SettingsManager;
 import lwrt.SettingsManager.Key;
 import ui.DemoEditorView;
+import ui.DemoLibraryDialog;
+import ui.HighlightsDialog;
+import util.DemoEvent;
+import util.DemoIndex;
+import util.DemoIndexWatcher;
 import util.DemoPreview;
 import util.DemoPreviewFactory;
 import vdm.Tick.*;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.table.TableColumn;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.io.File;
 import java.io.IOException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -36,6 +50,13 @@ public class DemoEditor {
     private CommandLine cl;
     private File currentDemoFile;
     private DemoPreview demoPreview;
+    private DemoIndex demoIndex = new DemoIndex(Paths.get("demoindex.txt"));
+    private DemoLibraryDialog library;
+    private DemoTableModel libraryModel;
+    private DemoScanTask demoScanTask;
+    private DemoIndexWatcher demoWatcher;
+    private HighlightsDialog highlights;
+    private List<Path> highlightDemos = new ArrayList<>();
 
     public DemoEditor(SettingsManager settings, CommandLine cl) {
         this.settings = settings;
@@ -99,6 +120,8 @@ public class DemoEditor {
         view.getBtnAddExec().addActionListener(
             new VdmAddTick(Exec.Segment));
         view.getBtnBrowse().addActionListener(new VdmBrowseDemo());
+        view.getBtnLibrary().addActionListener(e -> showLibrary());
+        view.getBtnHighlights().addActionListener(e -> showHighlights());
         view.getBtnClearTickList().addActionListener(new VdmClearTicks());
         view.getBtnCreateVdmFiles().addActionListener(new VdmCreateFile());
         view.getBtnDeleteVdmFiles().addActionListener(e -> {
@@ -113,6 +136,7 @@ public class DemoEditor {
                 new ClearVdmFilesTask().execute();
             }
         });
+        view.getBtnImportVdmFiles().addActionListener(e -> importVdmFiles());
         view.getBtnDeleteSelectedTick().addActionListener(e -> {
             if (view.getTableTicks().isEditing()) {
                 view.getTableTicks().getCellEditor().stopCellEditing();
@@ -134,9 +158,313 @@ public class DemoEditor {
         view.getCmbSkipMode().addActionListener(e -> settings.setString(Key.VdmSkipMode,
             ((SkipMode) view.getCmbSkipMode().getSelectedItem()).name()));
 
+        String rawPolicy = settings.getString(Key.VdmOverlapPolicy);
+        OverlapPolicy policy = OverlapPolicy.MERGE;
+        try {
+            policy = OverlapPolicy.valueOf(rawPolicy);
+        } catch (IllegalArgumentException e) {
+            log.warning("Invalid value detected for overlap policy: " + rawPolicy);
+        }
+        view.getCmbOverlapPolicy().setSelectedItem(policy);
+        view.getCmbOverlapPolicy().addActionListener(e -> settings.setString(Key.VdmOverlapPolicy,
+            ((OverlapPolicy) view.getCmbOverlapPolicy().getSelectedItem()).name()));
+
         return view;
     }
 
+    private void selectDemo(File demoFile) {
+        currentDemoFile = demoFile;
+        log.info("Selected demo file: " + currentDemoFile);
+        view.getTxtDemofile().setText(currentDemoFile.getName());
+        updateDemoDetails();
+    }
+
+    /**
+     * @return the folders scanned for the demo library: the game folder and the ones set by the user
+     */
+    private List<Path> getDemoFolders() {
+        List<Path> folders = new ArrayList<>();
+        folders.add(settings.getTfPath());
+        for (String folder : settings.getString(Key.DemoFolders).split(File.pathSeparator)) {
+            if (!folder.trim().isEmpty()) {
+                folders.add(Paths.get(folder.trim()));
+            }
+        }
+        return folders;
+    }
+
+    private void showLibrary() {
+        if (library == null) {
+            library = new DemoLibraryDialog();
+            libraryModel = new DemoTableModel();
+            library.getTableDemos().setModel(libraryModel);
+            library.getTxtSearch().getDocument().addDocumentListener(new DocumentListener() {
+                @Override
+                public void insertUpdate(DocumentEvent e) {
+                    filterLibrary();
+                }
+
+                @Override
+                public void removeUpdate(DocumentEvent e) {
+                    filterLibrary();
+                }
+
+                @Override
+                public void changedUpdate(DocumentEvent e) {
+                    filterLibrary();
+                }
+            });
+            library.getSpinMinMinutes().addChangeListener(e -> filterLibrary());
+            library.getSpinMaxMinutes().addChangeListener(e -> filterLibrary());
+            library.getTableDemos().addMouseListener(new MouseAdapter() {
+                @Override
+                public void mouseClicked(MouseEvent e) {
+                    if (e.getClickCount() == 2) {
+                        openSelectedDemo();
+                    }
+                }
+            });
+            library.getOkButton().addActionListener(e -> openSelectedDemo());
+            library.getBtnRescan().addActionListener(e -> scanDemos());
+            scanDemos();
+        }
+        library.setLocationRelativeTo(view);
+        library.setVisible(true);
+    }
+
+    private void scanDemos() {
+        if (demoScanTask == null) {
+            demoScanTask = new DemoScanTask();
+            demoScanTask.execute();
+        }
+    }
+
+    private void filterLibrary() {
+        String text = library.getTxtSearch().getText().trim();
+        int min = (Integer) library.getSpinMinMinutes().getValue();
+        int max = (Integer) library.getSpinMaxMinutes().getValue();
+        List<DemoIndex.Entry> found = demoIndex.search(text, min * 60, max > 0 ? (max + 1) * 60 : 0);
+        libraryModel.setEntries(found);
+        library.getLblStatus().setText(found.size() + " of " + demoIndex.getEntries().size() + " demos");
+    }
+
+    private void openSelectedDemo() {
+        int row = library.getTableDemos().getSelectedRow();
+        if (row >= 0) {
+            DemoIndex.Entry entry = libraryModel.getEntry(library.getTableDemos().convertRowIndexToModel(row));
+            library.setVisible(false);
+            if (Files.exists(entry.getPath())) {
+                selectDemo(entry.getPath().toFile());
+            } else {
+                JOptionPane.showMessageDialog(view, "The selected file does not exist.", "Demo Library",
+                    JOptionPane.INFORMATION_MESSAGE);
+            }
+        }
+    }
+
+    private void importVdmFiles() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Choose the folder of the VDM files");
+        chooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
+        chooser.setSelectedFile(settings.getTfPath().toFile());
+        if (chooser.showOpenDialog(view) == JFileChooser.APPROVE_OPTION) {
+            Path dir = chooser.getSelectedFile().toPath();
+            view.getBtnImportVdmFiles().setEnabled(false);
+            status.info("Importing VDM files from " + dir);
+            new VdmImportTask(dir).execute();
+        }
+    }
+
+    private void showHighlights() {
+        if (highlights == null) {
+            highlights = new HighlightsDialog();
+            highlights.getBtnChooseDemos().addActionListener(e -> chooseHighlightDemos());
+            highlights.getOkButton().addActionListener(e -> generateHighlights());
+        }
+        if (highlightDemos.isEmpty() && currentDemoFile != null) {
+            highlightDemos.add(currentDemoFile.toPath());
+        }
+        updateHighlightDemos();
+        highlights.setLocationRelativeTo(view);
+        highlights.setVisible(true);
+    }
+
+    private void chooseHighlightDemos() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Choose one or more demo files");
+        chooser.setFileSelectionMode(JFileChooser.FILES_ONLY);
+        chooser.setMultiSelectionEnabled(true);
+        chooser.setFileFilter(new FileNameExtensionFilter("Demo files", "DEM"));
+        chooser.setCurrentDirectory(choosedemo.getCurrentDirectory());
+        if (chooser.showOpenDialog(highlights) == JFileChooser.APPROVE_OPTION) {
+            highlightDemos.clear();
+            for (File file : chooser.getSelectedFiles()) {
+                highlightDemos.add(file.toPath());
+            }
+            updateHighlightDemos();
+        }
+    }
+
+    private void updateHighlightDemos() {
+        if (highlightDemos.size() == 1) {
+            highlights.getLblDemos().setText(highlightDemos.get(0).getFileName().toString());
+        } else {
+            highlights.getLblDemos().setText(highlightDemos.isEmpty() ? "No demos selected"
+                : highlightDemos.size() + " demos");
+        }
+    }
+
+    private void generateHighlights() {
+        Set<DemoEvent.Type> types = EnumSet.noneOf(DemoEvent.Type.class);
+        if (highlights.getChckbxKills().isSelected()) {
+            types.add(DemoEvent.Type.DEATH);
+        }
+        if (highlights.getChckbxKillstreaks().isSelected()) {
+            types.add(DemoEvent.Type.KILLSTREAK);
+        }
+        if (highlights.getChckbxChat().isSelected()) {
+            types.add(DemoEvent.Type.CHAT);
+        }
+        if (highlightDemos.isEmpty() || types.isEmpty()) {
+            JOptionPane.showMessageDialog(highlights, "Please choose the demos and at least one kind of event",
+                "Highlights", JOptionPane.INFORMATION_MESSAGE);
+            return;
+        }
+        HighlightGenerator generator = new HighlightGenerator(settings.getTfPath());
+        generator.setTypes(types);
+        generator.setPlayer(highlights.getTxtPlayer().getText());
+        generator.setSecondsBefore((Integer) highlights.getSpinSecondsBefore().getValue());
+        generator.setSecondsAfter((Integer) highlights.getSpinSecondsAfter().getValue());
+        generator.setSecondsMergeGap((Integer) highlights.getSpinSecondsMerge().getValue());
+        highlights.setVisible(false);
+        List<Path> demos = new ArrayList<>(highlightDemos);
+        view.getBtnHighlights().setEnabled(false);
+        highlights.getOkButton().setEnabled(false);
+        status.info("Finding highlights in " + demos.size() + (demos.size() == 1 ? " demo" : " demos"));
+        new HighlightTask(generator, demos).execute();
+    }
+
+    /**
+     * Finds the highlights of the chosen demos in parallel and adds them to the tick list in one batch.
+     */
+    public class HighlightTask extends SwingWorker<List<Tick>, Void> {
+
+        private final HighlightGenerator generator;
+        private final List<Path> demos;
+
+        public HighlightTask(HighlightGenerator generator, List<Path> demos) {
+            this.generator = generator;
+            this.demos = demos;
+        }
+
+        @Override
+        protected List<Tick> doInBackground() throws Exception {
+            return generator.generate(demos, Runtime.getRuntime().availableProcessors());
+        }
+
+        @Override
+        protected void done() {
+            view.getBtnHighlights().setEnabled(true);
+            highlights.getOkButton().setEnabled(true);
+            try {
+                List<Tick> ticks = get();
+                model.addTicks(ticks);
+                status.info("Added " + ticks.size() + (ticks.size() == 1 ? " segment" : " segments") + " from "
+                    + demos.size() + (demos.size() == 1 ? " demo" : " demos"));
+            } catch (InterruptedException | ExecutionException e) {
+                log.log(Level.INFO, "Could not find highlights", e);
+                status.info("Could not find highlights");
+            }
+        }
+    }
+
+    /**
+     * Reads the VDM files of a folder in parallel and adds their segments to the tick list in one batch, skipping the
+     * ones already in it.
+     */
+    public class VdmImportTask extends SwingWorker<List<Tick>, Void> {
+
+        private final Path dir;
+
+        public VdmImportTask(Path dir) {
+            this.dir = dir;
+        }
+
+        @Override
+        protected List<Tick> doInBackground() throws Exception {
+            return new VdmImporter(settings.getTfPath()).read(dir, Runtime.getRuntime().availableProcessors());
+        }
+
+        @Override
+        protected void done() {
+            view.getBtnImportVdmFiles().setEnabled(true);
+            try {
+                // importing the same folder again must not add its segments twice
+                Set<Tick> known = new HashSet<>(model.getTickList());
+                List<Tick> ticks = new ArrayList<>();
+                int skipped = 0;
+                for (Tick tick : get()) {
+                    if (known.add(tick)) {
+                        ticks.add(tick);
+                    } else {
+                        skipped++;
+                    }
+                }
+                model.addTicks(ticks);
+                status.info("Imported " + ticks.size() + (ticks.size() == 1 ? " segment" : " segments")
+                    + " from " + dir + (skipped > 0 ? ", skipped " + skipped + " already in the list" : ""));
+            } catch (InterruptedException | ExecutionException e) {
+                log.log(Level.INFO, "Could not import VDM files", e);
+                status.info("Could not import VDM files");
+            }
+        }
+    }
+
+    /**
+     * Updates the demo library, reading only the headers of new and changed demos. Scanning also starts watching the
+     * demo folders, or the new ones if they changed, so later changes are picked up without scanning again.
+     */
+    public class DemoScanTask extends SwingWorker<Integer, Void> {
+
+        @Override
+        protected Integer doInBackground() throws Exception {
+            SwingUtilities.invokeLater(() -> {
+                library.getBtnRescan().setEnabled(false);
+                library.getLblStatus().setText("Scanning demos...");
+            });
+            if (demoIndex.getEntries().isEmpty()) {
+                demoIndex.load();
+            }
+            if (demoWatcher == null) {
+                demoWatcher = new DemoIndexWatcher(demoIndex, settings.getInt(Key.IoParallelism));
+                demoWatcher.setChangeListener(() -> SwingUtilities.invokeLater(DemoEditor.this::filterLibrary));
+            }
+            // watches the folders again if they changed since the last scan
+            demoWatcher.start(getDemoFolders());
+            long start = System.nanoTime();
+            int read = demoIndex.scan(getDemoFolders(), settings.getInt(Key.IoParallelism));
+            log.fine("Demo library scan took " + (System.nanoTime() - start) / 1000000 + " ms");
+            try {
+                demoIndex.save();
+            } catch (IOException e) {
+                log.info("Could not save demo index: " + e);
+            }
+            return read;
+        }
+
+        @Override
+        protected void done() {
+            demoScanTask = null;
+            library.getBtnRescan().setEnabled(true);
+            filterLibrary();
+            try {
+                log.fine("Demo library updated, " + get() + " demo headers read");
+            } catch (InterruptedException | ExecutionException e) {
+                log.log(Level.INFO, "Could not scan demos", e);
+            }
+        }
+    }
+
     public class VdmAddTick implements ActionListener {
 
         private final String segment;
@@ -192,11 +520,9 @@ public class DemoEditor {
         public void actionPerformed(ActionEvent e) {
             int returnVal = choosedemo.showOpenDialog(view);
             if (returnVal == JFileChooser.APPROVE_OPTION) {
-                currentDemoFile = choosedemo.getSelectedFile();
-                if (Files.exists(currentDemoFile.toPath())) {
-                    log.info("Selected demo file: " + currentDemoFile);
-                    view.getTxtDemofile().setText(currentDemoFile.getName());
-                    updateDemoDetails();
+                File selected = choosedemo.getSelectedFile();
+                if (Files.exists(selected.toPath())) {
+                    selectDemo(selected);
                 } else {
                     JOptionPane.showMessageDialog(view, "The selected file does not exist.", "Browse",
                         JOptionPane.INFORMATION_MESSAGE);
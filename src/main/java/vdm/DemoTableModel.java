@@ -0,0 +1,84 @@
+package vdm;
+
+import util.DemoIndex;
+import util.DemoPreview;
+
+import javax.swing.table.AbstractTableModel;
+import java.util.ArrayList;
+import java.util.List;
+
+public class DemoTableModel extends AbstractTableModel {
+
+    private static final long serialVersionUID = 1L;
+    private List<DemoIndex.Entry> list = new ArrayList<>();
+
+    @Override
+    public int getRowCount() {
+        return list.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return Column.values().length;
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int columnIndex) {
+        DemoIndex.Entry entry = list.get(rowIndex);
+        DemoPreview preview = entry.getPreview();
+        Column c = Column.values()[columnIndex];
+        switch (c) {
+            case DEMO:
+                return entry.getPath().getFileName().toString();
+            case MAP:
+                return preview.getMapName();
+            case PLAYER:
+                return preview.getPlayerName();
+            case SERVER:
+                return preview.getServerName();
+            case DURATION:
+                return (int) (preview.getPlaybackTime() / 60);
+            case TICKS:
+                return preview.getTickNumber();
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return Column.values()[column].columnName;
+    }
+
+    @Override
+    public Class<?> getColumnClass(int columnIndex) {
+        Column c = Column.values()[columnIndex];
+        switch (c) {
+            case DURATION:
+            case TICKS:
+                return Integer.class;
+            default:
+                return String.class;
+        }
+    }
+
+    public void setEntries(List<DemoIndex.Entry> entries) {
+        list = new ArrayList<>(entries);
+        fireTableDataChanged();
+    }
+
+    public DemoIndex.Entry getEntry(int rowIndex) {
+        return list.get(rowIndex);
+    }
+
+    public enum Column {
+        DEMO("Demo name"), MAP("Map"), PLAYER("Player"), SERVER("Server"), DURATION("Minutes"), TICKS("Ticks");
+
+        private String columnName;
+
+        Column(String columnName) {
+            this.columnName = columnName;
+        }
+    }
+
+}
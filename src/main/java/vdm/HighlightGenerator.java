@@ -0,0 +1,158 @@
+package vdm;
+
+import util.DemoEvent;
+import util.DemoParser;
+import util.DemoPreview;
+import util.DemoPreviewFactory;
+import vdm.Tick.Record;
+import vdm.Tick.Tick;
+import vdm.Tick.TickFactory;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Logger;
+
+/**
+ * Creates record segments around the events of demos, like every kill of a player with a few seconds before and
+ * after, instead of finding and typing each tick by hand. Segments that overlap are merged into one. Each demo is
+ * parsed by {@link DemoParser} and many demos can be processed in parallel.
+ */
+public class HighlightGenerator {
+
+    private static final Logger log = Logger.getLogger("lawena");
+    /**
+     * First tick that can be recorded, the same limit used when adding segments by hand.
+     */
+    private static final int FIRST_TICK = 3;
+    private static final int DEFAULT_TICK_RATE = 66;
+
+    private final Path tfPath;
+    private Set<DemoEvent.Type> types = EnumSet.of(DemoEvent.Type.DEATH);
+    private String player = "";
+    private double secondsBefore = 5;
+    private double secondsAfter = 2;
+    private double secondsMergeGap = 0;
+
+    /**
+     * @param tfPath the game folder, demo names of the segments are relative to it
+     */
+    public HighlightGenerator(Path tfPath) {
+        this.tfPath = tfPath;
+    }
+
+    /**
+     * @param types the kind of events to create segments for, kills by default
+     */
+    public void setTypes(Set<DemoEvent.Type> types) {
+        this.types = EnumSet.copyOf(types);
+    }
+
+    /**
+     * @param player only create segments for events caused by players whose name contains this text, ignoring case,
+     *               or an empty string for all players
+     */
+    public void setPlayer(String player) {
+        this.player = player.trim().toLowerCase();
+    }
+
+    /**
+     * @param secondsBefore the time to record before each event
+     */
+    public void setSecondsBefore(double secondsBefore) {
+        this.secondsBefore = secondsBefore;
+    }
+
+    /**
+     * @param secondsAfter the time to record after each event
+     */
+    public void setSecondsAfter(double secondsAfter) {
+        this.secondsAfter = secondsAfter;
+    }
+
+    /**
+     * @param secondsMergeGap segments separated by this time or less are merged into one
+     */
+    public void setSecondsMergeGap(double secondsMergeGap) {
+        this.secondsMergeGap = secondsMergeGap;
+    }
+
+    /**
+     * Create the segments of many demos, parsing up to <code>parallelism</code> of them at the same time. Demos that
+     * can't be read are logged and skipped.
+     *
+     * @return the segments of all demos, in the order of the demos and then by start tick
+     */
+    public List<Tick> generate(List<Path> demos, int parallelism) throws InterruptedException {
+        if (demos.isEmpty()) {
+            return new ArrayList<>();
+        }
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, demos.size())));
+        try {
+            List<Future<List<Tick>>> futures = new ArrayList<>();
+            for (Path demo : demos) {
+                futures.add(executor.submit(() -> generate(demo)));
+            }
+            List<Tick> ticks = new ArrayList<>();
+            for (int i = 0; i < demos.size(); i++) {
+                try {
+                    ticks.addAll(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    log.info("Could not find highlights in " + demos.get(i) + ": " + e.getCause());
+                }
+            }
+            log.fine("Found " + ticks.size() + " highlights in " + demos.size() + " demos in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+            return ticks;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Create the segments of a single demo, using its tick rate to convert the time before and after each event and
+     * the merge gap.
+     *
+     * @return the segments sorted by start tick
+     * @throws IOException if the demo could not be read
+     */
+    public List<Tick> generate(Path demo) throws IOException {
+        DemoPreview preview = DemoPreviewFactory.readHeader(demo);
+        int tickRate = preview.getTickRate() > 0 ? preview.getTickRate() : DEFAULT_TICK_RATE;
+        // demos still being recorded have no tick count yet
+        int lastTick = preview.getTickNumber() > 0 ? preview.getTickNumber() - 1 : Integer.MAX_VALUE;
+        int before = (int) Math.round(secondsBefore * tickRate);
+        int after = (int) Math.round(secondsAfter * tickRate);
+        int mergeGap = (int) Math.round(secondsMergeGap * tickRate);
+        List<int[]> segments = new ArrayList<>();
+        new DemoParser(demo).parse(event -> {
+            if (matches(event)) {
+                int start = Math.max(FIRST_TICK, event.getTick() - before);
+                int end = Math.min(lastTick, event.getTick() + after);
+                int[] last = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+                // events come in tick order, so only the last segment can overlap
+                if (last != null && start <= last[1] + mergeGap) {
+                    last[1] = Math.max(last[1], end);
+                } else {
+                    segments.add(new int[]{start, end});
+                }
+            }
+        });
+        String demoName = TickFactory.getDemoName(tfPath, demo);
+        List<Tick> ticks = new ArrayList<>();
+        for (int[] segment : segments) {
+            Tick tick = TickFactory.makeTick(demo.toFile(), demoName, segment[0], segment[1], Record.Segment);
+            if (tick.isValid()) {
+                ticks.add(tick);
+            }
+        }
+        return ticks;
+    }
+
+    private boolean matches(DemoEvent event) {
+        return types.contains(event.getType()) && (player.isEmpty()
+            || (event.getPlayer() != null && event.getPlayer().toLowerCase().contains(player)));
+    }
+}
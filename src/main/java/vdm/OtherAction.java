@@ -0,0 +1,43 @@
+package vdm;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * An action of a factory Lawena doesn't create, like a screen fade or a text message, read from an existing VDM
+ * file. Its properties are kept as they were so it can be written back.
+ */
+public class OtherAction extends DemoAction {
+
+    private final String factory;
+    private final Map<String, String> properties;
+
+    /**
+     * @param properties the properties other than <code>factory</code>, <code>name</code> and
+     *                   <code>starttick</code>, in file order
+     */
+    public OtherAction(String factory, String name, int startTick, Map<String, String> properties) {
+        super(name, startTick);
+        this.factory = factory;
+        this.properties = Collections.unmodifiableMap(new LinkedHashMap<>(properties));
+    }
+
+    @Override
+    public String getFactory() {
+        return factory;
+    }
+
+    public Map<String, String> getProperties() {
+        return properties;
+    }
+
+    @Override
+    void writeProperties(VdmWriter out) throws IOException {
+        for (Entry<String, String> e : properties.entrySet()) {
+            out.property(e.getKey(), e.getValue());
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package vdm;
+
+/**
+ * How the VDM generator handles segments of a demo that overlap or are nested in one another.
+ */
+public enum OverlapPolicy {
+
+    MERGE("Merge overlapping segments"),
+    MERGE_CLOSE("Merge overlapping segments and the ones closer than the tick padding"),
+    SPLIT("Split overlapping segments into consecutive ones");
+
+    private String description;
+
+    OverlapPolicy(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    @Override
+    public String toString() {
+        return description;
+    }
+
+}
@@ -0,0 +1,37 @@
+package vdm;
+
+import java.io.IOException;
+
+/**
+ * Runs console commands, like <code>startrecording</code> or <code>playdemo</code>, at a tick.
+ */
+public class PlayCommands extends DemoAction {
+
+    public static final String Factory = "PlayCommands";
+
+    private final String commands;
+
+    public PlayCommands(String name, int startTick, String commands) {
+        super(name, startTick);
+        this.commands = commands;
+    }
+
+    @Override
+    public String getFactory() {
+        return Factory;
+    }
+
+    public String getCommands() {
+        return commands;
+    }
+
+    @Override
+    void writeProperties(VdmWriter out) throws IOException {
+        out.property("commands", commands);
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + " " + commands;
+    }
+}
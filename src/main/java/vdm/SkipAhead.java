@@ -0,0 +1,37 @@
+package vdm;
+
+import java.io.IOException;
+
+/**
+ * Jumps from its start tick to a later tick without playing the ticks in between.
+ */
+public class SkipAhead extends DemoAction {
+
+    public static final String Factory = "SkipAhead";
+
+    private final int skipToTick;
+
+    public SkipAhead(String name, int startTick, int skipToTick) {
+        super(name, startTick);
+        this.skipToTick = skipToTick;
+    }
+
+    @Override
+    public String getFactory() {
+        return Factory;
+    }
+
+    public int getSkipToTick() {
+        return skipToTick;
+    }
+
+    @Override
+    void writeProperties(VdmWriter out) throws IOException {
+        out.property("skiptotick", skipToTick);
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + "-" + skipToTick;
+    }
+}
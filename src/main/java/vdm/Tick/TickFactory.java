@@ -1,6 +1,7 @@
 package vdm.Tick;
 
 import java.io.File;
+import java.nio.file.Path;
 
 public class TickFactory {
 
@@ -29,4 +30,15 @@ public class TickFactory {
         }
         return t;
     }
+
+    /**
+     * @return the name of a demo as used by the game, relative to the game folder when possible
+     */
+    public static String getDemoName(Path tfPath, Path demo) {
+        try {
+            return tfPath.toAbsolutePath().relativize(demo.toAbsolutePath()).toString();
+        } catch (IllegalArgumentException e) {
+            return demo.toString();
+        }
+    }
 }
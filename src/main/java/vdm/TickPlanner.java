@@ -0,0 +1,111 @@
+package vdm;
+
+import vdm.Tick.Exec;
+import vdm.Tick.Record;
+import vdm.Tick.Tick;
+import vdm.Tick.TickFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.logging.Logger;
+
+/**
+ * Turns the segments of a demo into recordings that don't overlap, so the generated VDM never stops a recording
+ * before starting it. Recording segments are swept in start tick order, and each one is compared only with the
+ * recording before it:
+ * <ul>
+ * <li>{@link OverlapPolicy#MERGE} joins overlapping and nested segments into one, keeping the type and template of
+ * the first.</li>
+ * <li>{@link OverlapPolicy#MERGE_CLOSE} also joins segments separated by less than the tick padding, which would be
+ * played through anyway.</li>
+ * <li>{@link OverlapPolicy#SPLIT} ends a segment where the next one starts, and records the rest of it after the
+ * next one ends as a plain record segment, since its CFG file already ran.</li>
+ * </ul>
+ * Exec segments are kept as they are, before any recording starting at the same tick.
+ */
+class TickPlanner {
+
+    private static final Logger log = Logger.getLogger("lawena");
+    private static final Comparator<Tick> BY_START = Comparator.comparingInt(Tick::getStart);
+
+    private final OverlapPolicy policy;
+    private final int padding;
+
+    /**
+     * @param policy  how to handle overlapping segments
+     * @param padding the ticks played before each segment
+     */
+    TickPlanner(OverlapPolicy policy, int padding) {
+        this.policy = policy;
+        this.padding = padding;
+    }
+
+    /**
+     * @param ticks the segments of a single demo, in any order
+     * @return the segments to generate, sorted by start tick, with no recordings overlapping
+     */
+    List<Tick> plan(Collection<Tick> ticks) {
+        List<Tick> plan = new ArrayList<>();
+        // longest first when two segments start together, so the others are nested in it
+        PriorityQueue<Tick> queue = new PriorityQueue<>(BY_START.thenComparing(Tick::getEnd,
+            Comparator.reverseOrder()));
+        for (Tick tick : ticks) {
+            if (tick.getSegment().equals(Exec.Segment)) {
+                plan.add(tick);
+            } else {
+                queue.add(tick);
+            }
+        }
+        int execs = plan.size();
+        Tick current = queue.poll();
+        while (current != null) {
+            Tick next = queue.poll();
+            if (next == null || !overlaps(current, next)) {
+                plan.add(current);
+                current = next;
+            } else if (policy == OverlapPolicy.SPLIT) {
+                if (next.getEnd() < current.getEnd()) {
+                    queue.add(TickFactory.makeTick(current.getDemoFile(), current.getDemoName(), next.getEnd(),
+                        current.getEnd(), Record.Segment));
+                }
+                Tick cut = withEnd(current, next.getStart());
+                if (cut.isValid()) {
+                    plan.add(cut);
+                } else {
+                    log.info("Segment " + current + " starts with " + next + ", recording only the other one");
+                }
+                log.fine("Split segment " + current + " overlapping " + next);
+                current = next;
+            } else {
+                if (!next.getSegment().equals(Record.Segment) && !next.getTemplate().equals(current.getTemplate())) {
+                    log.info("Segment " + next + " merged into " + current + ", its template won't be used");
+                }
+                log.fine("Merged segment " + next + " into " + current);
+                current = withEnd(current, Math.max(current.getEnd(), next.getEnd()));
+            }
+        }
+        if (plan.size() != ticks.size()) {
+            log.fine("Planned " + (plan.size() - execs) + " recordings from " + (ticks.size() - execs)
+                + " segments of " + plan.get(0).getDemoName());
+        }
+        // stable, so exec segments stay before recordings starting at the same tick
+        plan.sort(BY_START);
+        return plan;
+    }
+
+    private boolean overlaps(Tick current, Tick next) {
+        if (policy == OverlapPolicy.MERGE_CLOSE) {
+            // same condition the generator uses to leave out a skip
+            return next.getStart() - padding <= current.getEnd() + 1;
+        }
+        return next.getStart() < current.getEnd();
+    }
+
+    private static Tick withEnd(Tick tick, int end) {
+        return TickFactory.makeTick(tick.getDemoFile(), tick.getDemoName(), tick.getStart(), end, tick.getSegment(),
+            tick.getTemplate());
+    }
+}
@@ -161,6 +161,17 @@ public class TickTableModel extends AbstractTableModel {
         fireTableRowsInserted(row, row);
     }
 
+    /**
+     * Add many ticks at once, notifying the table a single time.
+     */
+    public void addTicks(List<Tick> ticks) {
+        if (!ticks.isEmpty()) {
+            int row = getRowCount();
+            list.addAll(ticks);
+            fireTableRowsInserted(row, row + ticks.size() - 1);
+        }
+    }
+
     public void removeTick(int index) {
         list.remove(index);
         fireTableRowsDeleted(index, index);
@@ -5,6 +5,8 @@ import com.github.mustachejava.Mustache;
 import com.github.mustachejava.MustacheFactory;
 import lwrt.SettingsManager;
 import lwrt.SettingsManager.Key;
+import util.DemoPreview;
+import util.DemoPreviewFactory;
 import util.Util;
 import vdm.Tick.AbstractExec;
 import vdm.Tick.Exec;
@@ -12,6 +14,7 @@ import vdm.Tick.Record;
 import vdm.Tick.Tick;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.StringReader;
 import java.io.Writer;
 import java.nio.charset.Charset;
@@ -19,46 +22,71 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.Map.Entry;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 class VDMGenerator {
 
     private static final Logger log = Logger.getLogger("lawena");
     private static final String n = System.getProperty("line.separator");
+    private static final Charset utf8 = Charset.forName("UTF-8");
+    /**
+     * Maximum number of compiled templates kept between generations.
+     */
+    private static final int MAX_TEMPLATES = 256;
+    private static final int DEFAULT_TICK_RATE = 66;
+    /**
+     * Estimated time the game takes to run a SkipAhead, used to choose between skipping and a faster timescale.
+     */
+    private static final double SKIP_AHEAD_SECONDS = 1.0;
+    private static final Pattern TIMESCALE = Pattern.compile("demo_timescale\\s+\"?([0-9]*\\.?[0-9]+)");
+    private static final MustacheFactory mustacheFactory = new DefaultMustacheFactory();
+    /**
+     * Compiled templates by their text, since most exec segments share a few templates.
+     */
+    private static final ConcurrentMap<String, Mustache> templates = new ConcurrentHashMap<>();
 
     private List<Tick> ticklist;
     private SettingsManager cfg;
+    private int padding;
+    private String skipStart;
+    private String skipStop;
+    private SkipMode skipMode;
+    private double timescale;
+    private Map<String, Object> commonScopes;
 
     public VDMGenerator(List<Tick> ticklist, SettingsManager cfg) {
         this.ticklist = ticklist;
         this.cfg = cfg;
     }
 
-    private static String segment(int count, String factory, String name, String... args) {
-        StringBuilder sb = new StringBuilder();
-        sb.append("\t\"").append(count).append("\"").append(n);
-        sb.append("\t{").append(n);
-        sb.append("\t\tfactory \"").append(factory).append("\"").append(n);
-        sb.append("\t\tname \"").append(name).append("\"").append(n);
-        for (String arg : args) {
-            sb.append("\t\t").append(arg).append(n);
-        }
-        sb.append("\t}");
-        return sb.toString();
+    public List<Path> generate() throws IOException {
+        return generate(1);
     }
 
-    public List<Path> generate() throws IOException {
-        List<Path> paths = new ArrayList<>();
-        Map<String, Set<Tick>> demomap = new LinkedHashMap<>();
+    /**
+     * Write the VDM file of each demo, and the CFG files of its exec segments, generating up to
+     * <code>parallelism</code> demos at the same time. The files are numbered as if the demos were generated one after
+     * the other.
+     *
+     * @return the paths of the generated files, in the order of the demos
+     */
+    public List<Path> generate(int parallelism) throws IOException {
+        long start = System.nanoTime();
+        Map<String, List<Tick>> demomap = new LinkedHashMap<>();
         Map<String, String> peeknext = new LinkedHashMap<>();
         String previous = null;
         for (Tick tick : ticklist) {
-            Set<Tick> ticks = demomap.computeIfAbsent(tick.getDemoName(),
-                k -> new TreeSet<>(Comparator.comparing(Tick::getDemoName)
-                    .thenComparingInt(Tick::getStart)));
-            ticks.add(tick);
+            demomap.computeIfAbsent(tick.getDemoName(), k -> new ArrayList<>()).add(tick);
             if (previous != null) {
                 if (!peeknext.containsKey(previous) && !previous.equals(tick.getDemoName())) {
                     peeknext.put(previous, tick.getDemoName());
@@ -67,44 +95,171 @@ class VDMGenerator {
             previous = tick.getDemoName();
         }
 
-        int cfgCount = 1;
-
-        int padding = cfg.getInt(Key.VdmTickPadding);
-        String skipStart = cfg.getString(Key.VdmSkipStartCommand);
-        String skipStop = cfg.getString(Key.VdmSkipStopCommand);
+        padding = cfg.getInt(Key.VdmTickPadding);
+        skipStart = cfg.getString(Key.VdmSkipStartCommand);
+        skipStop = cfg.getString(Key.VdmSkipStopCommand);
         String rawSkipMode = cfg.getString(Key.VdmSkipMode);
-        SkipMode skipMode = SkipMode.SKIP_AHEAD;
+        skipMode = SkipMode.SKIP_AHEAD;
         try {
             skipMode = SkipMode.valueOf(rawSkipMode);
         } catch (IllegalArgumentException ex) {
             log.warning("Invalid value detected for skip mode: " + rawSkipMode);
         }
+        Matcher matcher = TIMESCALE.matcher(skipStart);
+        timescale = matcher.find() ? Double.parseDouble(matcher.group(1)) : 1;
+        if (timescale <= 0) {
+            timescale = 1;
+        }
+        String rawPolicy = cfg.getString(Key.VdmOverlapPolicy);
+        OverlapPolicy policy = OverlapPolicy.MERGE;
+        try {
+            policy = OverlapPolicy.valueOf(rawPolicy);
+        } catch (IllegalArgumentException ex) {
+            log.warning("Invalid value detected for overlap policy: " + rawPolicy);
+        }
+        TickPlanner planner = new TickPlanner(policy, padding);
+        demomap.replaceAll((demo, ticks) -> planner.plan(ticks));
+        commonScopes = new HashMap<>();
+        commonScopes.put("TF_PATH", cfg.getTfPath().toAbsolutePath());
+        commonScopes.put("MOVIE_PATH", cfg.getMoviePath().toAbsolutePath());
+        commonScopes.put("LAWENA_PATH", Paths.get("").toAbsolutePath());
+        commonScopes.put("NEW_LINE", n);
 
-        for (Entry<String, Set<Tick>> e : demomap.entrySet()) {
-            String demo = e.getKey();
-            log.finer("Creating VDM file for demo: " + demo);
-            List<String> lines = new ArrayList<>();
-            lines.add("demoactions" + n + "{");
-            int count = 1;
-            int previousEndTick = 0;
+        // number the CFG files of each demo after the ones of the previous demos
+        Map<String, Integer> firstCfg = new HashMap<>();
+        int cfgCount = 1;
+        for (Entry<String, List<Tick>> e : demomap.entrySet()) {
+            firstCfg.put(e.getKey(), cfgCount);
             for (Tick tick : e.getValue()) {
-                int safeStart = Math.max(0, tick.getStart() - padding);
-                // no need to skip if the next segment is closer than the padding length
-                boolean needsSkip = previousEndTick + 1 < safeStart;
-                if (needsSkip) {
-                    if (skipMode == SkipMode.DEMO_TIMESCALE) {
-                        lines.add(segment(count++, "PlayCommands", "startskip", "starttick \""
-                            + (previousEndTick + 1) + "\"", "commands \"" + skipStart + "\""));
-                        lines.add(segment(count++, "PlayCommands", "stopskip", "starttick \"" + safeStart + "\"",
-                            "commands \"" + skipStop + "\""));
-                    } else if (skipMode == SkipMode.SKIP_AHEAD) {
-                        lines.add(segment(count++, "SkipAhead", "skip", "starttick \"" + (previousEndTick + 1)
-                            + "\"", "skiptotick \"" + safeStart + "\""));
-                    }
+                if (hasCfgTemplate(tick)) {
+                    cfgCount++;
                 }
-                String command = "startrecording";
-                if (tick.getSegment().startsWith("exec")) {
-                    command = ((AbstractExec) tick).getCommand(cfgCount);
+            }
+        }
+
+        List<Path> paths = new ArrayList<>();
+        if (parallelism <= 1 || demomap.size() <= 1) {
+            for (Entry<String, List<Tick>> e : demomap.entrySet()) {
+                paths.addAll(generate(e.getKey(), e.getValue(), peeknext.get(e.getKey()), firstCfg.get(e.getKey())));
+            }
+        } else {
+            paths.addAll(generate(demomap, peeknext, firstCfg, parallelism));
+        }
+        log.fine("Generated " + paths.size() + " files for " + ticklist.size() + " ticks in " + demomap.size()
+            + " demos in " + (System.nanoTime() - start) / 1000000 + " ms, " + templates.size()
+            + " compiled templates cached");
+        return paths;
+    }
+
+    private List<Path> generate(Map<String, List<Tick>> demomap, Map<String, String> peeknext,
+                                Map<String, Integer> firstCfg, int parallelism) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, demomap.size()));
+        try {
+            List<Future<List<Path>>> futures = new ArrayList<>();
+            for (Entry<String, List<Tick>> e : demomap.entrySet()) {
+                futures.add(executor.submit(() -> generate(e.getKey(), e.getValue(), peeknext.get(e.getKey()),
+                    firstCfg.get(e.getKey()))));
+            }
+            for (Future<List<Path>> future : futures) {
+                paths.addAll(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while generating VDM files");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Could not generate VDM files", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+        return paths;
+    }
+
+    /**
+     * @return the compiled template, reusing the one compiled before for the same text
+     */
+    private static Mustache getTemplate(String template) {
+        Mustache mustache = templates.get(template);
+        if (mustache == null) {
+            if (templates.size() >= MAX_TEMPLATES) {
+                templates.clear();
+            }
+            mustache = templates.computeIfAbsent(template,
+                k -> mustacheFactory.compile(new StringReader(k), "template"));
+        }
+        return mustache;
+    }
+
+    /**
+     * @return <code>true</code> if a CFG file is generated from the template of this tick
+     */
+    private static boolean hasCfgTemplate(Tick tick) {
+        return tick.getSegment().startsWith("exec")
+            && !tick.getTemplate().equals(Record.Template)
+            && !tick.getTemplate().isEmpty()
+            && !tick.getTemplate().toLowerCase().startsWith("exec ");
+    }
+
+    /**
+     * Write the VDM file of a single demo and the CFG files of its exec segments.
+     *
+     * @param demo     the demo name
+     * @param ticks    the segments of the demo, sorted by start tick and not overlapping
+     * @param nextdemo the demo to play after this one, or <code>null</code> to stop
+     * @param cfgCount the number of the first CFG file of this demo
+     * @return the paths of the generated files
+     */
+    private List<Path> generate(String demo, List<Tick> ticks, String nextdemo, int cfgCount) throws IOException {
+        List<Path> paths = new ArrayList<>();
+        log.finer("Creating VDM file for demo: " + demo);
+        // TODO: check for potential bugs for demos located in folders other than TF dir
+        Path vdmPath = cfg.getTfPath().resolve(Util.stripFilenameExtension(demo) + ".vdm");
+        try (VdmWriter out = new VdmWriter(vdmPath)) {
+            generate(out, ticks, nextdemo, cfgCount, paths);
+        }
+        paths.add(vdmPath);
+        log.fine("VDM file written to " + vdmPath);
+        return paths;
+    }
+
+    /**
+     * Write the actions of a single demo and the CFG files of its exec segments, adding the CFG files to
+     * <code>paths</code>. The estimated playback time of the demo is logged, to compare skip modes.
+     */
+    private void generate(VdmWriter out, List<Tick> ticks, String nextdemo, int cfgCount, List<Path> paths)
+        throws IOException {
+        int tickRate = getTickRate(ticks.get(0).getDemoFile().toPath());
+        // playback time saved by skipping, compared to playing every tick at normal speed
+        double savedSeconds = 0;
+        int previousEndTick = 0;
+        // template variables are the same for all segments of the demo
+        Map<String, Object> scopes = null;
+        for (Tick tick : ticks) {
+            int safeStart = Math.max(0, tick.getStart() - padding);
+            // no need to skip if the next segment is closer than the padding length
+            boolean needsSkip = previousEndTick + 1 < safeStart;
+            if (needsSkip) {
+                double gapSeconds = (double) (safeStart - previousEndTick - 1) / tickRate;
+                SkipMode mode = skipMode;
+                if (mode == SkipMode.FASTEST) {
+                    mode = timescale > 1 && gapSeconds / timescale < SKIP_AHEAD_SECONDS ? SkipMode.DEMO_TIMESCALE
+                        : SkipMode.SKIP_AHEAD;
+                }
+                if (mode == SkipMode.DEMO_TIMESCALE) {
+                    out.write(new PlayCommands("startskip", previousEndTick + 1, skipStart));
+                    out.write(new PlayCommands("stopskip", safeStart, skipStop));
+                    savedSeconds += gapSeconds - gapSeconds / timescale;
+                } else if (mode == SkipMode.SKIP_AHEAD) {
+                    out.write(new SkipAhead("skip", previousEndTick + 1, safeStart));
+                    savedSeconds += gapSeconds - SKIP_AHEAD_SECONDS;
+                }
+            }
+            String command = "startrecording";
+            if (tick.getSegment().startsWith("exec")) {
+                command = ((AbstractExec) tick).getCommand(cfgCount);
 
 					/*
                         CFG file generation from Exec and ExecRecord segments
@@ -128,66 +283,59 @@ class VDMGenerator {
 					    - {{LAWENA_PATH}} resolves into the absolute location of the Lawena folder.
 						- {{NEW_LINE}} resolves into a new line.
 					 */
-                    String demoCfgName = Util.stripFilenameExtension(tick.getDemoFile().getName());
-                    if (!tick.getTemplate().equals(Record.Template)
-                        && !tick.getTemplate().isEmpty()
-                        && !tick.getTemplate().toLowerCase().startsWith("exec ")) {
-
-                        log.info("Generating template #" + cfgCount + " for Tick " + tick);
-                        Map<String, Object> scopes = new HashMap<>();
-                        scopes.put("TF_PATH", cfg.getTfPath().toAbsolutePath());
-                        scopes.put("MOVIE_PATH", cfg.getMoviePath().toAbsolutePath());
+                String demoCfgName = Util.stripFilenameExtension(tick.getDemoFile().getName());
+                if (hasCfgTemplate(tick)) {
+                    log.info("Generating template #" + cfgCount + " for Tick " + tick);
+                    if (scopes == null) {
+                        scopes = new HashMap<>(commonScopes);
                         scopes.put("DEMO_NAME", demoCfgName);
                         scopes.put("DEMO_PATH", tick.getDemoFile().getAbsoluteFile());
                         scopes.put("DEMO_PATH_NOEXT", cfg.getTfPath().toAbsolutePath().resolve(demoCfgName));
                         scopes.put("BVH_PATH", cfg.getTfPath().toAbsolutePath().resolve(demoCfgName + ".bvh"));
-                        scopes.put("LAWENA_PATH", Paths.get("").toAbsolutePath());
-                        scopes.put("NEW_LINE", n);
-                        Path outputPath = Paths.get("cfg", demoCfgName + "_" + cfgCount + ".cfg");
-                        Files.deleteIfExists(outputPath);
-                        try (Writer writer = Files.newBufferedWriter(outputPath, Charset.forName("UTF-8"))) {
-                            MustacheFactory mf = new DefaultMustacheFactory();
-                            Mustache mustache = mf.compile(new StringReader(tick.getTemplate()), demoCfgName);
-                            mustache.execute(writer, scopes);
-                            writer.flush();
-                            paths.add(outputPath);
-                            cfgCount++;
-                        } catch (IOException ex) {
-                            log.log(Level.WARNING, "Could not generate template", ex);
-                        }
                     }
+                    Path outputPath = Paths.get("cfg", demoCfgName + "_" + cfgCount + ".cfg");
+                    Files.deleteIfExists(outputPath);
+                    try (Writer writer = Files.newBufferedWriter(outputPath, utf8)) {
+                        getTemplate(tick.getTemplate()).execute(writer, scopes);
+                        writer.flush();
+                        paths.add(outputPath);
+                    } catch (IOException ex) {
+                        log.log(Level.WARNING, "Could not generate template", ex);
+                    }
+                    cfgCount++;
                 }
-                if (tick.getSegment().equals(Exec.Segment)) {
-                    lines.add(segment(count++, "PlayCommands", tick.getSegment(), "starttick \"" + tick.getStart()
-                        + "\"", "commands \"" + command + "\""));
-                } else {
-                    lines.add(segment(count++, "PlayCommands", "startrec", "starttick \"" + tick.getStart()
-                        + "\"", "commands \"" + command + "\""));
-                    lines.add(segment(count++, "PlayCommands", "stoprec",
-                        "starttick \"" + tick.getEnd() + "\"", "commands \"stoprecording\""));
-                }
-                previousEndTick = tick.getEnd();
             }
-            String nextdemo = peeknext.get(demo);
-            if (nextdemo != null) {
-                lines.add(segment(count, "PlayCommands", "nextdem", "starttick \""
-                    + (previousEndTick + 1) + "\"", "commands \"playdemo " + nextdemo + "\""));
+            if (tick.getSegment().equals(Exec.Segment)) {
+                out.write(new PlayCommands(tick.getSegment(), tick.getStart(), command));
             } else {
-                lines.add(segment(count, "PlayCommands", "stopdem", "starttick \""
-                    + (previousEndTick + 1) + "\"", "commands \"stopdemo\""));
+                out.write(new PlayCommands("startrec", tick.getStart(), command));
+                out.write(new PlayCommands("stoprec", tick.getEnd(), "stoprecording"));
             }
-            lines.add("}\n");
-
-            // TODO: check for potential bugs for demos located in folders other than TF dir
-            Path added =
-                Files.write(
-                    cfg.getTfPath()
-                        .resolve(Util.stripFilenameExtension(demo) + ".vdm"), lines,
-                    Charset.defaultCharset());
-            paths.add(added);
-            log.fine("VDM file written to " + added);
+            // exec segments can be inside a recording
+            previousEndTick = Math.max(previousEndTick, tick.getEnd());
+        }
+        if (nextdemo != null) {
+            out.write(new PlayCommands("nextdem", previousEndTick + 1, "playdemo " + nextdemo));
+        } else {
+            out.write(new PlayCommands("stopdem", previousEndTick + 1, "stopdemo"));
+        }
+        double seconds = (double) (previousEndTick + 1) / tickRate;
+        log.info(String.format("Estimated playback of %s: %.1f seconds, %.1f without skipping",
+            ticks.get(0).getDemoName(), seconds - savedSeconds, seconds));
+    }
 
+    /**
+     * @return the tick rate of a demo, or the usual one if the demo can't be read
+     */
+    private static int getTickRate(Path demo) {
+        try {
+            DemoPreview preview = DemoPreviewFactory.readHeader(demo);
+            if (preview.getTickRate() > 0) {
+                return preview.getTickRate();
+            }
+        } catch (IOException e) {
+            log.fine("Could not read the tick rate of " + demo + ": " + e);
         }
-        return paths;
+        return DEFAULT_TICK_RATE;
     }
 }
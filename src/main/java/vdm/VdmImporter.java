@@ -0,0 +1,179 @@
+package vdm;
+
+import util.Util;
+import vdm.Tick.Exec;
+import vdm.Tick.ExecRecord;
+import vdm.Tick.Record;
+import vdm.Tick.Tick;
+import vdm.Tick.TickFactory;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * Reads the segments back from existing VDM files, so a session can be changed and generated again without typing
+ * every tick. Each VDM file belongs to the demo with the same name in the same folder. Recording actions become
+ * record segments, or exec + record segments when they run a CFG file first, and <code>exec</code> actions become
+ * exec segments. Skips and the actions that play the next demo are left out since they are generated again.
+ */
+public class VdmImporter {
+
+    private static final Logger log = Logger.getLogger("lawena");
+    private static final String START = "startrecording";
+    private static final String STOP = "stoprecording";
+
+    private final Path tfPath;
+
+    /**
+     * @param tfPath the game folder, demo names of the segments are relative to it
+     */
+    public VdmImporter(Path tfPath) {
+        this.tfPath = tfPath;
+    }
+
+    /**
+     * Read the VDM files of a folder, up to <code>parallelism</code> of them at the same time. Files that can't be
+     * read or have no demo next to them are logged and skipped.
+     *
+     * @return the segments of all files, in the order of the file names and then by start tick
+     * @throws IOException if the folder could not be listed
+     */
+    public List<Tick> read(Path dir, int parallelism) throws IOException, InterruptedException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.vdm")) {
+            stream.forEach(files::add);
+        }
+        files.sort(Comparator.comparing(Path::getFileName));
+        return read(files, parallelism);
+    }
+
+    /**
+     * Read many VDM files, up to <code>parallelism</code> of them at the same time.
+     *
+     * @return the segments of all files, in the order of the files and then by start tick
+     */
+    public List<Tick> read(List<Path> files, int parallelism) throws InterruptedException {
+        if (files.isEmpty()) {
+            return new ArrayList<>();
+        }
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, files.size())));
+        try {
+            List<Future<List<Tick>>> futures = new ArrayList<>();
+            for (Path file : files) {
+                futures.add(executor.submit(() -> read(file)));
+            }
+            List<Tick> ticks = new ArrayList<>();
+            for (int i = 0; i < files.size(); i++) {
+                try {
+                    ticks.addAll(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    log.info("Could not import " + files.get(i) + ": " + e.getCause());
+                }
+            }
+            log.fine("Imported " + ticks.size() + " segments from " + files.size() + " VDM files in "
+                + (System.nanoTime() - start) / 1000000 + " ms");
+            return ticks;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Read the segments of a single VDM file.
+     *
+     * @return the segments sorted by start tick
+     * @throws IOException if the file could not be read or its demo doesn't exist
+     */
+    public List<Tick> read(Path file) throws IOException {
+        String stem = Util.stripFilenameExtension(file.getFileName().toString());
+        Path demo = file.resolveSibling(stem + ".dem");
+        if (!Files.isRegularFile(demo)) {
+            throw new IOException("Demo not found: " + demo);
+        }
+        String demoName = TickFactory.getDemoName(tfPath, demo);
+        List<DemoAction> actions = new ArrayList<>(new VdmParser(file).parse());
+        actions.sort(Comparator.comparingInt(DemoAction::getStartTick));
+        List<Tick> ticks = new ArrayList<>();
+        PlayCommands recording = null;
+        for (DemoAction action : actions) {
+            if (!(action instanceof PlayCommands)) {
+                continue;
+            }
+            PlayCommands commands = (PlayCommands) action;
+            String text = commands.getCommands().trim();
+            Tick tick = null;
+            if (commands.getName().equals(Exec.Segment)) {
+                tick = TickFactory.makeTick(demo.toFile(), demoName, commands.getStartTick(),
+                    commands.getStartTick(), Exec.Segment, text);
+            } else if (text.endsWith(START)) {
+                if (recording != null) {
+                    log.info(file.getFileName() + ": Recording at tick " + recording.getStartTick()
+                        + " is never stopped");
+                }
+                recording = commands;
+            } else if (text.endsWith(STOP) && recording != null) {
+                tick = makeRecordTick(demo, demoName, recording, commands.getStartTick());
+                recording = null;
+            }
+            if (tick != null) {
+                if (tick.isValid()) {
+                    ticks.add(tick);
+                } else {
+                    log.info(file.getFileName() + ": Skipping segment " + tick + ": " + tick.getReason());
+                }
+            }
+        }
+        if (recording != null) {
+            log.info(file.getFileName() + ": Recording at tick " + recording.getStartTick() + " is never stopped");
+        }
+        return ticks;
+    }
+
+    /**
+     * @return a record segment, or an exec + record segment if the recording runs commands before starting
+     */
+    private Tick makeRecordTick(Path demo, String demoName, PlayCommands recording, int end) {
+        String text = recording.getCommands().trim();
+        String before = text.substring(0, text.length() - START.length()).trim();
+        if (before.endsWith(";")) {
+            before = before.substring(0, before.length() - 1).trim();
+        }
+        if (before.isEmpty()) {
+            return TickFactory.makeTick(demo.toFile(), demoName, recording.getStartTick(), end, Record.Segment);
+        }
+        return TickFactory.makeTick(demo.toFile(), demoName, recording.getStartTick(), end, ExecRecord.Segment,
+            readTemplate(before));
+    }
+
+    /**
+     * @param command the command run before recording, like <code>exec demo_1</code>
+     * @return the contents of the CFG file generated for the segment, or the default template if it's gone
+     */
+    private static String readTemplate(String command) {
+        if (command.toLowerCase().startsWith("exec ")) {
+            Path cfgFile = Paths.get("cfg", command.substring(5).trim() + ".cfg");
+            try {
+                if (Files.isRegularFile(cfgFile)) {
+                    // the template of a segment is a single line
+                    return String.join("{{NEW_LINE}}", Files.readAllLines(cfgFile, Charset.forName("UTF-8")));
+                }
+            } catch (IOException e) {
+                log.fine("Could not read " + cfgFile + ": " + e);
+            }
+        }
+        return ExecRecord.Template;
+    }
+}
@@ -0,0 +1,129 @@
+package vdm;
+
+import lwrt.SettingsManager;
+import lwrt.SettingsManager.Key;
+import vdm.Tick.Exec;
+import vdm.Tick.Tick;
+import vdm.Tick.TickFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.logging.Logger;
+
+/**
+ * Segments of many demos read from text files, to generate their VDM files without the user interface.
+ * <p>
+ * A <code>demo</code> line selects the demo of the segment lines that follow it, either absolute or relative to the
+ * game folder. Each segment line has the segment type, the start tick, the end tick except for exec segments, and an
+ * optional template for exec segments:
+ * <pre>
+ * # lines starting with a hash are ignored
+ * demo demos/match1.dem
+ * record 1200 3400
+ * exec_record 5000 6200 mirv_camimport start "{{BVH_PATH}}"
+ * exec 7000 exec spec_player
+ * </pre>
+ */
+public class VdmJob {
+
+    private static final Logger log = Logger.getLogger("lawena");
+
+    private final SettingsManager settings;
+    private final List<Tick> ticks = new ArrayList<>();
+    private final Set<String> demos = new LinkedHashSet<>();
+    private final List<String> errors = new ArrayList<>();
+
+    public VdmJob(SettingsManager settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Add the segments of a job file. Lines with errors are skipped and kept in {@link #getErrors()}.
+     *
+     * @throws IOException if the file could not be read or the game folder is not set
+     */
+    public void read(Path file) throws IOException {
+        // an empty game folder would resolve demos and write the VDM files in the working directory
+        if (settings.getString(Key.TfDir).isEmpty() || !Files.isDirectory(settings.getTfPath())) {
+            throw new IOException("Game folder is not set or is not a directory: " + settings.getString(Key.TfDir));
+        }
+        List<String> lines = Files.readAllLines(file, Charset.forName("UTF-8"));
+        Path tfPath = settings.getTfPath().toAbsolutePath();
+        File demoFile = null;
+        String demoName = null;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] fields = line.split("\\s+", 2);
+            String rest = fields.length > 1 ? fields[1] : "";
+            String where = file.getFileName() + ":" + (i + 1) + ": ";
+            if (fields[0].equals("demo")) {
+                Path demo = tfPath.resolve(Paths.get(rest)).normalize();
+                if (Files.isRegularFile(demo)) {
+                    demoFile = demo.toFile();
+                    demoName = TickFactory.getDemoName(tfPath, demo);
+                } else {
+                    errors.add(where + "Demo not found: " + demo);
+                    demoFile = null;
+                }
+            } else if (demoFile == null) {
+                errors.add(where + "Segment without a valid demo line before it");
+            } else {
+                addTick(where, demoFile, demoName, fields[0], rest);
+            }
+        }
+        log.fine("Read " + ticks.size() + " segments of " + demos.size() + " demos from " + file);
+    }
+
+    private void addTick(String where, File demoFile, String demoName, String segment, String rest) {
+        boolean exec = segment.equals(Exec.Segment);
+        String[] fields = rest.split("\\s+", exec ? 2 : 3);
+        try {
+            int start = Integer.parseInt(fields[0]);
+            int end = exec ? start : Integer.parseInt(fields[1]);
+            int templateField = exec ? 1 : 2;
+            String template = fields.length > templateField ? fields[templateField] : null;
+            Tick tick = TickFactory.makeTick(demoFile, demoName, start, end, segment, template);
+            if (tick.isValid()) {
+                ticks.add(tick);
+                demos.add(demoName);
+            } else {
+                errors.add(where + tick.getReason());
+            }
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+            errors.add(where + "Expected <segment> <start tick> [<end tick>] [<template>]");
+        }
+    }
+
+    /**
+     * Write the VDM and CFG files of all the segments read.
+     *
+     * @param parallelism the number of demos generated at the same time
+     * @return the paths of the generated files
+     */
+    public List<Path> generate(int parallelism) throws IOException {
+        return new VDMGenerator(ticks, settings).generate(parallelism);
+    }
+
+    public List<Tick> getTicks() {
+        return ticks;
+    }
+
+    public int getDemoCount() {
+        return demos.size();
+    }
+
+    public List<String> getErrors() {
+        return errors;
+    }
+}
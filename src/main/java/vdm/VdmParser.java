@@ -0,0 +1,164 @@
+package vdm;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the demo actions of a VDM file, written by Lawena, the game demo editor or by hand, in the same
+ * <code>KeyValues</code> format the game uses: quoted or bare keys and values, braces for blocks and
+ * <code>//</code> comments. Actions keep the order they have in the file.
+ */
+public class VdmParser {
+
+    private final Path path;
+    private Reader in;
+    private int next;
+    private int line;
+
+    public VdmParser(Path path) {
+        this.path = path;
+    }
+
+    /**
+     * @return the actions of the file
+     * @throws IOException if the file could not be read or is not a VDM file
+     */
+    public List<DemoAction> parse() throws IOException {
+        List<DemoAction> actions = new ArrayList<>();
+        try (Reader reader = Files.newBufferedReader(path, Charset.defaultCharset())) {
+            in = reader;
+            line = 1;
+            next = in.read();
+            if (nextToken() == null || !"{".equals(nextToken())) {
+                throw error("Expected demoactions block");
+            }
+            String key;
+            while (!"}".equals(key = nextToken())) {
+                if (key == null) {
+                    throw error("Unexpected end of file");
+                }
+                if (!"{".equals(nextToken())) {
+                    throw error("Expected block of action " + key);
+                }
+                actions.add(readAction(key));
+            }
+        } finally {
+            in = null;
+        }
+        return actions;
+    }
+
+    private DemoAction readAction(String key) throws IOException {
+        Map<String, String> properties = new LinkedHashMap<>();
+        String name;
+        while (!"}".equals(name = nextToken())) {
+            String value = nextToken();
+            if (name == null || value == null) {
+                throw error("Unexpected end of file in action " + key);
+            }
+            if (name.equals("{") || value.equals("{") || value.equals("}")) {
+                throw error("Expected property in action " + key);
+            }
+            // the game matches keys ignoring case
+            properties.put(name.toLowerCase(), value);
+        }
+        String factory = properties.remove("factory");
+        if (factory == null) {
+            throw error("Action " + key + " has no factory");
+        }
+        String actionName = properties.remove("name");
+        if (actionName == null) {
+            actionName = "";
+        }
+        Integer startTick = parseInt(properties.get("starttick"));
+        Integer skipToTick = parseInt(properties.get("skiptotick"));
+        if (startTick != null) {
+            if (factory.equalsIgnoreCase(PlayCommands.Factory) && properties.size() == 2
+                && properties.containsKey("commands")) {
+                return new PlayCommands(actionName, startTick, properties.get("commands"));
+            } else if (factory.equalsIgnoreCase(SkipAhead.Factory) && properties.size() == 2 && skipToTick != null) {
+                return new SkipAhead(actionName, startTick, skipToTick);
+            }
+            properties.remove("starttick");
+        }
+        return new OtherAction(factory, actionName, startTick != null ? startTick : -1, properties);
+    }
+
+    private static Integer parseInt(String value) {
+        try {
+            return value == null ? null : Integer.valueOf(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * @return the next key, value or brace, or <code>null</code> at the end of the file
+     */
+    private String nextToken() throws IOException {
+        while (true) {
+            while (next >= 0 && Character.isWhitespace(next)) {
+                read();
+            }
+            if (next != '/') {
+                break;
+            }
+            read();
+            if (next != '/') {
+                return bareToken("/");
+            }
+            while (next >= 0 && next != '\n') {
+                read();
+            }
+        }
+        if (next < 0) {
+            return null;
+        }
+        if (next == '{' || next == '}') {
+            String brace = String.valueOf((char) next);
+            read();
+            return brace;
+        }
+        if (next == '"') {
+            StringBuilder sb = new StringBuilder();
+            read();
+            while (next != '"') {
+                if (next < 0) {
+                    throw error("Unterminated string");
+                }
+                sb.append((char) next);
+                read();
+            }
+            read();
+            return sb.toString();
+        }
+        return bareToken("");
+    }
+
+    private String bareToken(String start) throws IOException {
+        StringBuilder sb = new StringBuilder(start);
+        while (next >= 0 && !Character.isWhitespace(next) && next != '{' && next != '}' && next != '"') {
+            sb.append((char) next);
+            read();
+        }
+        return sb.toString();
+    }
+
+    private void read() throws IOException {
+        if (next == '\n') {
+            line++;
+        }
+        next = in.read();
+    }
+
+    private IOException error(String message) {
+        return new IOException(path.getFileName() + ":" + line + ": " + message);
+    }
+}
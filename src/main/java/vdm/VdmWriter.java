@@ -0,0 +1,117 @@
+package vdm;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the demo actions of a VDM file as they are created, encoding them straight into the buffer of the file
+ * channel instead of building the whole file in memory first. Actions are numbered in the order they are written.
+ * <pre>
+ * try (VdmWriter out = new VdmWriter(path)) {
+ *     out.write(new PlayCommands("startrec", 1200, "startrecording"));
+ * }
+ * </pre>
+ */
+public class VdmWriter implements Closeable {
+
+    private static final String n = System.getProperty("line.separator");
+
+    private final Writer out;
+    private final char[] digits = new char[11];
+    private int count = 0;
+
+    /**
+     * Create or replace a VDM file, using the default charset of the system like the game does.
+     */
+    public VdmWriter(Path path) throws IOException {
+        this(path, Charset.defaultCharset());
+    }
+
+    public VdmWriter(Path path, Charset charset) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING);
+        out = Channels.newWriter(channel, charset.newEncoder(), -1);
+        out.write("demoactions");
+        out.write(n);
+        out.write('{');
+        out.write(n);
+    }
+
+    /**
+     * Append an action to the file.
+     */
+    public void write(DemoAction action) throws IOException {
+        count++;
+        out.write("\t\"");
+        writeInt(count);
+        out.write('"');
+        out.write(n);
+        out.write("\t{");
+        out.write(n);
+        property("factory", action.getFactory());
+        property("name", action.getName());
+        if (action.getStartTick() >= 0) {
+            property("starttick", action.getStartTick());
+        }
+        action.writeProperties(this);
+        out.write("\t}");
+        out.write(n);
+    }
+
+    /**
+     * @return the number of actions written
+     */
+    public int getCount() {
+        return count;
+    }
+
+    void property(String key, String value) throws IOException {
+        out.write("\t\t");
+        out.write(key);
+        out.write(" \"");
+        out.write(value);
+        out.write('"');
+        out.write(n);
+    }
+
+    void property(String key, int value) throws IOException {
+        out.write("\t\t");
+        out.write(key);
+        out.write(" \"");
+        writeInt(value);
+        out.write('"');
+        out.write(n);
+    }
+
+    private void writeInt(int value) throws IOException {
+        if (value < 0) {
+            out.write(Integer.toString(value));
+            return;
+        }
+        int pos = digits.length;
+        do {
+            digits[--pos] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        out.write(digits, pos, digits.length - pos);
+    }
+
+    /**
+     * Close the <code>demoactions</code> block and the file.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            out.write('}');
+            out.write(n);
+        } finally {
+            out.close();
+        }
+    }
+}
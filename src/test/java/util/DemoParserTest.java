@@ -0,0 +1,259 @@
+package util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DemoParserTest {
+
+    private static final Charset charset = Charset.forName("UTF-8");
+
+    @Test
+    public void readsBitsLeastSignificantFirst() throws EOFException {
+        BitReader in = new BitReader(new byte[]{(byte) 0xb4, (byte) 0xff, 'h', 'i', 0}, 5);
+        assertEquals(4, in.readBits(3));
+        assertEquals(22, in.readBits(5));
+        assertEquals(0xff, in.readBits(8));
+        assertEquals("hi", in.readString());
+        assertEquals(0, in.remaining());
+    }
+
+    @Test(expected = EOFException.class)
+    public void readingPastTheEndFails() throws EOFException {
+        BitReader in = new BitReader(new byte[]{1, 2}, 1);
+        in.readBits(9);
+    }
+
+    @Test
+    public void uncompressesLiteralsAndCopies() throws EOFException {
+        // "abcd" as a literal, then an 8 byte copy at offset 4 that overlaps its own output
+        byte[] in = {12, 3 << 2, 'a', 'b', 'c', 'd', (4 << 2) | 1, 4};
+        assertArrayEquals("abcdabcdabcd".getBytes(charset), DemoParser.uncompress(in));
+    }
+
+    @Test
+    public void uncompressesWhatWasCompressed() throws EOFException {
+        byte[] repeated = "player_death player_death player_death userinfo userinfo".getBytes(charset);
+        assertArrayEquals(repeated, DemoParser.uncompress(compress(repeated)));
+        byte[] random = new byte[300];
+        for (int i = 0; i < random.length; i++) {
+            random[i] = (byte) (i * 31 + i / 7);
+        }
+        byte[] mixed = new byte[random.length * 3];
+        for (int i = 0; i < 3; i++) {
+            System.arraycopy(random, 0, mixed, i * random.length, random.length);
+        }
+        assertArrayEquals(mixed, DemoParser.uncompress(compress(mixed)));
+        assertArrayEquals(new byte[0], DemoParser.uncompress(compress(new byte[0])));
+    }
+
+    @Test(expected = EOFException.class)
+    public void truncatedCompressedDataFails() throws EOFException {
+        byte[] in = compress("abcdabcdabcdabcd".getBytes(charset));
+        DemoParser.uncompress(Arrays.copyOf(in, in.length - 1));
+    }
+
+    @Test(expected = EOFException.class)
+    public void copyBeforeTheStartFails() throws EOFException {
+        DemoParser.uncompress(new byte[]{8, 0, 'a', (4 << 2) | 1, 2});
+    }
+
+    @Test
+    public void findsKillsAndKillstreaks() throws Exception {
+        ByteArrayOutputStream demo = new ByteArrayOutputStream();
+        ByteBuffer header = ByteBuffer.allocate(DemoPreviewFactory.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put("HL2DEMO\0".getBytes(charset));
+        demo.write(header.array());
+
+        BitWriter tables = new BitWriter();
+        tables.bits(1, 8);
+        tables.string("userinfo");
+        tables.bits(2, 16);
+        addPlayer(tables, "Alice", 7);
+        addPlayer(tables, "Bob", 9);
+        tables.bits(0, 1);
+        frame(demo, 8, 1, tables.toByteArray());
+
+        BitWriter events = new BitWriter();
+        events.bits(30, 6);
+        events.bits(1, 9);
+        BitWriter descriptor = new BitWriter();
+        descriptor.bits(23, 9);
+        descriptor.string("player_death");
+        descriptor.bits(4, 3);
+        descriptor.string("userid");
+        descriptor.bits(4, 3);
+        descriptor.string("attacker");
+        descriptor.bits(1, 3);
+        descriptor.string("weapon");
+        descriptor.bits(4, 3);
+        descriptor.string("death_flags");
+        descriptor.bits(0, 3);
+        events.bits(descriptor.length(), 20);
+        events.append(descriptor);
+        frame(demo, 2, 10, events.toByteArray());
+
+        for (int tick = 100; tick <= 500; tick += 100) {
+            BitWriter packet = new BitWriter();
+            BitWriter event = new BitWriter();
+            event.bits(23, 9);
+            event.bits(9, 16);
+            event.bits(7, 16);
+            event.string("scattergun");
+            event.bits(0, 16);
+            packet.bits(25, 6);
+            packet.bits(event.length(), 11);
+            packet.append(event);
+            frame(demo, 2, tick, packet.toByteArray());
+        }
+        demo.write(new byte[]{7, 0, 0, 0, 0});
+
+        Path file = Files.createTempFile("lawena", ".dem");
+        try {
+            Files.write(file, demo.toByteArray());
+            List<DemoEvent> found = new DemoParser(file).parse();
+            assertEquals(6, found.size());
+            DemoEvent kill = found.get(0);
+            assertEquals(DemoEvent.Type.DEATH, kill.getType());
+            assertEquals(100, kill.getTick());
+            assertEquals("Alice", kill.getPlayer());
+            assertEquals("Bob", kill.getTarget());
+            assertEquals("scattergun", kill.getText());
+            DemoEvent streak = found.get(5);
+            assertEquals(DemoEvent.Type.KILLSTREAK, streak.getType());
+            assertEquals(500, streak.getTick());
+            assertEquals("Alice", streak.getPlayer());
+            assertEquals(DemoParser.KILLSTREAK_STEP, streak.getCount());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void addPlayer(BitWriter tables, String name, int userId) {
+        ByteBuffer info = ByteBuffer.allocate(40).order(ByteOrder.LITTLE_ENDIAN);
+        info.put(name.getBytes(charset));
+        info.putInt(32, userId);
+        tables.string(Integer.toString(userId));
+        tables.bits(1, 1);
+        tables.bits(info.capacity(), 16);
+        for (byte b : info.array()) {
+            tables.bits(b & 0xff, 8);
+        }
+    }
+
+    /**
+     * Append a frame with data, with the packet info that comes before the data of packets.
+     */
+    private static void frame(ByteArrayOutputStream demo, int command, int tick, byte[] data) {
+        int info = command == 2 ? 84 : 0;
+        ByteBuffer frame = ByteBuffer.allocate(5 + info + 4 + data.length).order(ByteOrder.LITTLE_ENDIAN);
+        frame.put((byte) command).putInt(tick).position(5 + info);
+        frame.putInt(data.length).put(data);
+        demo.write(frame.array(), 0, frame.capacity());
+    }
+
+    /**
+     * Compress with literals and copies of up to 64 bytes at 2 byte offsets, which is enough to exercise every tag
+     * the parser reads from the string tables.
+     */
+    private static byte[] compress(byte[] in) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int size = in.length; ; size >>>= 7) {
+            if (size < 0x80) {
+                out.write(size);
+                break;
+            }
+            out.write(size & 0x7f | 0x80);
+        }
+        int literal = 0;
+        int position = 0;
+        while (position < in.length) {
+            int bestLength = 0;
+            int bestOffset = 0;
+            for (int from = Math.max(0, position - 0xffff); from < position; from++) {
+                int length = 0;
+                while (length < 64 && position + length < in.length && in[from + length] == in[position + length]) {
+                    length++;
+                }
+                if (length > bestLength) {
+                    bestLength = length;
+                    bestOffset = position - from;
+                }
+            }
+            if (bestLength >= 4) {
+                writeLiteral(out, in, literal, position - literal);
+                out.write((bestLength - 1) << 2 | 2);
+                out.write(bestOffset & 0xff);
+                out.write(bestOffset >>> 8);
+                position += bestLength;
+                literal = position;
+            } else {
+                position++;
+            }
+        }
+        writeLiteral(out, in, literal, in.length - literal);
+        return out.toByteArray();
+    }
+
+    private static void writeLiteral(ByteArrayOutputStream out, byte[] in, int start, int length) {
+        if (length == 0) {
+            return;
+        }
+        if (length <= 60) {
+            out.write((length - 1) << 2);
+        } else {
+            out.write(61 << 2);
+            out.write((length - 1) & 0xff);
+            out.write((length - 1) >>> 8);
+        }
+        out.write(in, start, length);
+    }
+
+    private static class BitWriter {
+
+        private byte[] data = new byte[64];
+        private int position;
+
+        void bits(int value, int count) {
+            for (int i = 0; i < count; i++, position++) {
+                if (position >>> 3 == data.length) {
+                    data = Arrays.copyOf(data, data.length * 2);
+                }
+                if ((value >>> i & 1) != 0) {
+                    data[position >>> 3] |= 1 << (position & 7);
+                }
+            }
+        }
+
+        void string(String text) {
+            for (byte b : text.getBytes(charset)) {
+                bits(b & 0xff, 8);
+            }
+            bits(0, 8);
+        }
+
+        void append(BitWriter other) {
+            for (int i = 0; i < other.position; i++) {
+                bits(other.data[i >>> 3] >>> (i & 7), 1);
+            }
+        }
+
+        int length() {
+            return position;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(data, (position + 7) >>> 3);
+        }
+    }
+}
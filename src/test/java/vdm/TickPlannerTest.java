@@ -0,0 +1,93 @@
+package vdm;
+
+import org.junit.Test;
+import vdm.Tick.Exec;
+import vdm.Tick.ExecRecord;
+import vdm.Tick.Record;
+import vdm.Tick.Tick;
+import vdm.Tick.TickFactory;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TickPlannerTest {
+
+    private static final File demo = new File("demo.dem");
+    private static final int PADDING = 500;
+
+    @Test
+    public void separateSegmentsAreUnchanged() {
+        for (OverlapPolicy policy : OverlapPolicy.values()) {
+            assertEquals(policy.name(), "[100-300, 2000-2500]",
+                plan(policy, record(2000, 2500), record(100, 300)));
+        }
+    }
+
+    @Test
+    public void mergeJoinsNestedIdenticalAndSameStartSegments() {
+        assertEquals("[100-1000]", plan(OverlapPolicy.MERGE, record(100, 1000), record(300, 500)));
+        assertEquals("[100-300]", plan(OverlapPolicy.MERGE, record(100, 300), record(100, 300)));
+        assertEquals("[100-500]", plan(OverlapPolicy.MERGE, record(100, 300), record(100, 500)));
+        assertEquals("[100-700]", plan(OverlapPolicy.MERGE, record(100, 400), record(300, 700)));
+    }
+
+    @Test
+    public void mergeKeepsTheTypeAndTemplateOfTheFirstSegment() {
+        List<Tick> planned = new TickPlanner(OverlapPolicy.MERGE, PADDING).plan(Arrays.asList(
+            record(300, 900), TickFactory.makeTick(demo, "demo.dem", 100, 500, ExecRecord.Segment, "echo a")));
+        assertEquals(1, planned.size());
+        assertEquals(ExecRecord.Segment, planned.get(0).getSegment());
+        assertEquals("echo a", planned.get(0).getTemplate());
+        assertEquals(900, planned.get(0).getEnd());
+    }
+
+    @Test
+    public void mergeCloseAlsoJoinsSegmentsWithinThePadding() {
+        assertEquals("[100-200, 600-700]", plan(OverlapPolicy.MERGE, record(100, 200), record(600, 700)));
+        assertEquals("[100-700]", plan(OverlapPolicy.MERGE_CLOSE, record(100, 200), record(600, 700)));
+        assertEquals("[100-200, 900-1000]", plan(OverlapPolicy.MERGE_CLOSE, record(100, 200), record(900, 1000)));
+        assertEquals("[100-1000]", plan(OverlapPolicy.MERGE_CLOSE, record(100, 1000), record(300, 500)));
+        assertEquals("[100-300]", plan(OverlapPolicy.MERGE_CLOSE, record(100, 300), record(100, 300)));
+    }
+
+    @Test
+    public void splitRecordsOverlappingSegmentsInTurn() {
+        assertEquals("[100-300, 300-500, 500-1000]",
+            plan(OverlapPolicy.SPLIT, record(100, 1000), record(300, 500)));
+        assertEquals("[100-300, 300-700]", plan(OverlapPolicy.SPLIT, record(100, 400), record(300, 700)));
+    }
+
+    @Test
+    public void splitKeepsOneOfIdenticalAndSameStartSegments() {
+        assertEquals("[100-300]", plan(OverlapPolicy.SPLIT, record(100, 300), record(100, 300)));
+        assertEquals("[100-300, 300-500]", plan(OverlapPolicy.SPLIT, record(100, 500), record(100, 300)));
+    }
+
+    @Test
+    public void execSegmentsStayBeforeRecordingsAtTheSameTick() {
+        Tick exec = TickFactory.makeTick(demo, "demo.dem", 100, 100, Exec.Segment, "exec spec_player");
+        for (OverlapPolicy policy : OverlapPolicy.values()) {
+            List<Tick> planned = new TickPlanner(policy, PADDING).plan(Arrays.asList(record(100, 500), exec,
+                record(200, 300)));
+            assertSame(exec, planned.get(0));
+            assertEquals(Record.Segment, planned.get(1).getSegment());
+        }
+    }
+
+    private static Tick record(int start, int end) {
+        return TickFactory.makeTick(demo, "demo.dem", start, end, Record.Segment);
+    }
+
+    private static String plan(OverlapPolicy policy, Tick... ticks) {
+        List<String> ranges = new ArrayList<>();
+        for (Tick tick : new TickPlanner(policy, PADDING).plan(Arrays.asList(ticks))) {
+            assertTrue(tick.isValid());
+            ranges.add(tick.getStart() + "-" + tick.getEnd());
+        }
+        return ranges.toString();
+    }
+}
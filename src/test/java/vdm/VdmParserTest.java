@@ -0,0 +1,89 @@
+package vdm;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class VdmParserTest {
+
+    @Test
+    public void writtenFilesAreParsedAndWrittenBackIdentically() throws IOException {
+        Map<String, String> fade = new LinkedHashMap<>();
+        fade.put("duration", "1.500");
+        fade.put("holdtime", "0.000");
+        fade.put("r", "0");
+        List<DemoAction> actions = Arrays.asList(
+            new PlayCommands("startrec", 1200, "startrecording"),
+            new SkipAhead("skip", 3, 700),
+            new OtherAction("ScreenFadeStart", "fade", 1300, fade),
+            new PlayCommands("stoprec", 3400, "stoprecording; playdemo demos/next.dem"),
+            new OtherAction("TextMessageStart", "message", -1, new LinkedHashMap<>()));
+        Path first = Files.createTempFile("lawena", ".vdm");
+        Path second = Files.createTempFile("lawena", ".vdm");
+        try {
+            write(first, actions);
+            List<DemoAction> parsed = new VdmParser(first).parse();
+            assertEquals(actions.size(), parsed.size());
+            assertTrue(parsed.get(0) instanceof PlayCommands);
+            assertEquals("startrecording", ((PlayCommands) parsed.get(0)).getCommands());
+            assertTrue(parsed.get(1) instanceof SkipAhead);
+            assertEquals(700, ((SkipAhead) parsed.get(1)).getSkipToTick());
+            assertTrue(parsed.get(2) instanceof OtherAction);
+            assertEquals(fade, ((OtherAction) parsed.get(2)).getProperties());
+            assertEquals(-1, parsed.get(4).getStartTick());
+            write(second, parsed);
+            assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(second));
+        } finally {
+            Files.delete(first);
+            Files.delete(second);
+        }
+    }
+
+    @Test
+    public void readsFilesWrittenByHand() throws IOException {
+        String vdm = "// made by hand\ndemoactions\n{\n  1 { factory PlayCommands name \"a b\" starttick 10 "
+            + "commands \"echo hi\" }\n  \"2\"\n  {\n    FACTORY \"SkipAhead\" // skip\n    name s\n"
+            + "    starttick \"20\"\n    skiptotick \"90\"\n  }\n}\n";
+        Path file = Files.createTempFile("lawena", ".vdm");
+        try {
+            Files.write(file, vdm.getBytes(Charset.defaultCharset()));
+            List<DemoAction> parsed = new VdmParser(file).parse();
+            assertEquals(2, parsed.size());
+            assertEquals("a b", parsed.get(0).getName());
+            assertEquals("echo hi", ((PlayCommands) parsed.get(0)).getCommands());
+            assertEquals(20, parsed.get(1).getStartTick());
+            assertEquals(90, ((SkipAhead) parsed.get(1)).getSkipToTick());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedFileFails() throws IOException {
+        Path file = Files.createTempFile("lawena", ".vdm");
+        try {
+            Files.write(file, "demoactions\n{\n\t\"1\"\n\t{\n\t\tfactory \"PlayCommands\"\n".getBytes(
+                Charset.defaultCharset()));
+            new VdmParser(file).parse();
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private static void write(Path path, List<DemoAction> actions) throws IOException {
+        try (VdmWriter out = new VdmWriter(path)) {
+            for (DemoAction action : actions) {
+                out.write(action);
+            }
+        }
+    }
+}